@@ -1,47 +1,63 @@
 package org.vlad.awsresourcemonitor;
 
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.AmazonEC2Async;
+import com.amazonaws.services.ec2.AmazonEC2AsyncClient;
 import com.amazonaws.services.ec2.AmazonEC2Client;
 import com.amazonaws.services.rds.AmazonRDS;
+import com.amazonaws.services.rds.AmazonRDSAsync;
+import com.amazonaws.services.rds.AmazonRDSAsyncClient;
 import com.amazonaws.services.rds.AmazonRDSClient;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClient;
-import com.amazonaws.services.securitytoken.model.GetCallerIdentityRequest;
-import com.amazonaws.services.securitytoken.model.GetCallerIdentityResult;
+
+import java.io.File;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 
 /**
- * Singleton with AWS Session info
+ * Singleton with AWS Session info.
+ * Clients are created on first use, each on its own, and the account id is looked
+ * up only when needed, so touching one part of the session never waits on another.
  */
 public enum  AWSInfo {
   INSTANCE;
 
   private final DefaultAWSCredentialsProviderChain credProvider;
-  private final AmazonEC2Client ec2;
-  private final AmazonRDSClient rds;
-  private final AWSSecurityTokenService sts;
-  private final String acc;
+  private File accountCache;
+  private long accountCacheTtl;
+  private AccountIdLookup account;
 
 
   AWSInfo() {
     credProvider = new DefaultAWSCredentialsProviderChain();
-    sts = new AWSSecurityTokenServiceClient(credProvider);
-    ec2 = new AmazonEC2Client(credProvider);
-    rds = new AmazonRDSClient(credProvider);
-
-    GetCallerIdentityRequest getCallIdRq = new GetCallerIdentityRequest();
-    GetCallerIdentityResult callIdRes = sts.getCallerIdentity(getCallIdRq);
+  }
 
-    acc = callIdRes.getAccount();
+  /** EC2 client, created when first requested. */
+  private static final class Ec2Holder {
+    private static final AmazonEC2Client EC2 = new AmazonEC2Client(INSTANCE.credProvider);
+  }
 
+  /** RDS client, created when first requested. */
+  private static final class RdsHolder {
+    private static final AmazonRDSClient RDS = new AmazonRDSClient(INSTANCE.credProvider);
+  }
 
+  /** STS client, created when first requested. */
+  private static final class StsHolder {
+    private static final AWSSecurityTokenService STS =
+      new AWSSecurityTokenServiceClient(INSTANCE.credProvider);
   }
 
   public static AmazonRDSClient getRds() {
-    return INSTANCE.rds;
+    return RdsHolder.RDS;
   }
 
   public static AWSSecurityTokenService getSts() {
-    return INSTANCE.sts;
+    return StsHolder.STS;
   }
 
   public DefaultAWSCredentialsProviderChain getCredProvider() {
@@ -49,10 +65,140 @@ public enum  AWSInfo {
   }
 
   public static AmazonEC2Client getEc2() {
-    return INSTANCE.ec2;
+    return Ec2Holder.EC2;
+  }
+
+  /** Per region EC2 clients, kept for the life of the process. */
+  private static final class Ec2ClientsHolder {
+    private static final RegionClientCache<AmazonEC2> EC2_CLIENTS =
+      new RegionClientCache<AmazonEC2>() {
+        @Override
+        protected AmazonEC2 create(Regions region) {
+          final AmazonEC2Client client = new AmazonEC2Client(INSTANCE.credProvider);
+          client.setRegion(Region.getRegion(region));
+          return client;
+        }
+
+        @Override
+        protected void shutdown(AmazonEC2 client) {
+          client.shutdown();
+        }
+      };
+  }
+
+  /**
+   * Get factory producing an EC2 client for every region.
+   * Clients are created once per region and reused by later runs.
+   *
+   * @return EC2 client factory
+   */
+  public static RegionClientFactory<AmazonEC2> getEc2Clients() {
+    return Ec2ClientsHolder.EC2_CLIENTS;
+  }
+
+  /**
+   * Get session of another account through a role the default credentials may assume.
+   *
+   * @param roleArn role ARN
+   * @return account session
+   */
+  public static AccountSession assumeRole(String roleArn) {
+    return AccountSession.assumeRole(INSTANCE.credProvider, roleArn, "AWSResourceMonitor");
   }
 
+  /**
+   * Keep the account id on disk between runs.
+   * Must be called before the account id is first needed. The id already looked up is
+   * kept unless the cache file or TTL changes.
+   *
+   * @param cacheFile file to keep the account id in, null to disable disk cache
+   * @param ttlMillis how long cached account id stays valid
+   */
+  public static void setAccountCache(File cacheFile, long ttlMillis) {
+    synchronized (INSTANCE) {
+      if (Objects.equals(cacheFile, INSTANCE.accountCache)
+          && ttlMillis == INSTANCE.accountCacheTtl) {
+        return;
+      }
+      INSTANCE.accountCache = cacheFile;
+      INSTANCE.accountCacheTtl = ttlMillis;
+      INSTANCE.account = null;
+    }
+  }
+
+  private static AccountIdLookup getAccountLookup() {
+    synchronized (INSTANCE) {
+      if (INSTANCE.account == null) {
+        INSTANCE.account = new AccountIdLookup(getSts(), INSTANCE.credProvider,
+          INSTANCE.accountCache, INSTANCE.accountCacheTtl);
+      }
+      return INSTANCE.account;
+    }
+  }
+
+  /**
+   * Start looking up the account id in the background.
+   */
+  public static void prefetchAcc() {
+    getAccountLookup().prefetch();
+  }
+
+  /**
+   * Get account id of the default credentials, waiting for the lookup if needed.
+   *
+   * @return account id
+   */
   public static String getAcc() {
-    return INSTANCE.acc;
+    return getAccountLookup().get();
+  }
+
+  /**
+   * Get factory producing an async EC2 client for every region.
+   * The caller closes the factory to shut the clients down.
+   *
+   * @param executor executor running the calls, shared by all clients
+   * @return async EC2 client factory
+   */
+  public static RegionClientCache<AmazonEC2Async> getEc2AsyncClients(
+    final ExecutorService executor) {
+    return new RegionClientCache<AmazonEC2Async>() {
+      @Override
+      protected AmazonEC2Async create(Regions region) {
+        final AmazonEC2AsyncClient client =
+          new AmazonEC2AsyncClient(INSTANCE.credProvider, executor);
+        client.setRegion(Region.getRegion(region));
+        return client;
+      }
+
+      @Override
+      protected void shutdown(AmazonEC2Async client) {
+        client.shutdown();
+      }
+    };
+  }
+
+  /**
+   * Get factory producing an async RDS client for every region.
+   * The caller closes the factory to shut the clients down.
+   *
+   * @param executor executor running the calls, shared by all clients
+   * @return async RDS client factory
+   */
+  public static RegionClientCache<AmazonRDSAsync> getRdsAsyncClients(
+    final ExecutorService executor) {
+    return new RegionClientCache<AmazonRDSAsync>() {
+      @Override
+      protected AmazonRDSAsync create(Regions region) {
+        final AmazonRDSAsyncClient client =
+          new AmazonRDSAsyncClient(INSTANCE.credProvider, executor);
+        client.setRegion(Region.getRegion(region));
+        return client;
+      }
+
+      @Override
+      protected void shutdown(AmazonRDSAsync client) {
+        client.shutdown();
+      }
+    };
   }
 }
@@ -10,9 +10,12 @@
 package org.vlad.awsresourcemonitor;
 
 import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.regions.Regions;
 import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.AmazonEC2Async;
 import com.amazonaws.services.ec2.AmazonEC2Client;
 import com.amazonaws.services.rds.AmazonRDS;
+import com.amazonaws.services.rds.AmazonRDSAsync;
 import com.amazonaws.services.rds.AmazonRDSClient;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
 import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClient;
@@ -22,8 +25,6 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 import com.jaxb.junit.Testcase;
-import org.joda.time.DateTime;
-import org.joda.time.Period;
 import org.vlad.awsresourcemonitor.exception.XmlException;
 
 import java.io.File;
@@ -32,8 +33,14 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -47,6 +54,13 @@ import java.util.Set;
  */
 public class AWSResourceMonitor {
 
+  private static final int THROTTLE_RETRIES = 5;
+  // MaxResults and MaxRecords limits of DescribeInstances and DescribeDBInstances
+  private static final int EC2_MIN_PAGE = 5;
+  private static final int EC2_MAX_PAGE = 1000;
+  private static final int RDS_MIN_PAGE = 20;
+  private static final int RDS_MAX_PAGE = 100;
+
   @Parameter(names = "--help", description = "Print help and exit", help = true)
   private boolean help;
 
@@ -59,20 +73,140 @@ public class AWSResourceMonitor {
   @Parameter(names = "--namePattern", description = "Name pattern to filter")
   private String namePattern = ".*";
 
+  @Parameter(names = "--include",
+    description = "Name pattern or tag selector like Project=Zebra to assess")
+  private List<String> includes = new ArrayList<>();
+
+  @Parameter(names = "--exclude",
+    description = "Name pattern or tag selector like Environment!=Prod to skip")
+  private List<String> excludes = new ArrayList<>();
+
   @Parameter(names = {"--reportPath"}, description = "Junit report path", required = true)
   public String jUnitFormatReportPath;
 
-  @Parameter(names = {"--maxTime"}, description = "Max allowed time in hours")
-  private Period maxAllowedHoursToRun = new Period(12, 0, 0, 0);
+  @Parameter(names = {"--maxTime"},
+    description = "Max allowed time in hours for instances no MaxRuntime rule applies to")
+  private int maxAllowedHoursToRun = 12;
 
   @Parameter(names = {"--policyFile"}, description = "Policy file name", required = true)
   private File policyFile;
 
+  @Parameter(names = {"--regionThreads"}, description = "Number of regions to collect concurrently")
+  private int regionThreads = 1;
+
+  @Parameter(names = {"--pageSize"}, description = "Number of records requested per describe call")
+  private int pageSize;
+
+  @Parameter(names = {"--rdsPageSize"},
+    description = "Number of records requested per RDS describe call")
+  private int rdsPageSize;
+
+  @Parameter(names = {"--tagThreads"}, description = "Number of concurrent RDS tag lookups")
+  private int tagThreads = 1;
+
+  @Parameter(names = {"--runningOnly"}, description = "Collect only running EC2 instances")
+  private boolean runningOnly;
+
+  @Parameter(names = {"--discoverRegions"},
+    description = "Collect only regions enabled for the account")
+  private boolean discoverRegions;
+
+  @Parameter(names = {"--regionCache"}, description = "File to cache enabled regions in")
+  private File regionCache = new File(System.getProperty("user.home"), ".awsmon-regions");
+
+  @Parameter(names = {"--regionCacheTtl"},
+    description = "Hours the enabled region cache stays valid")
+  private int regionCacheTtl = 24;
+
+  @Parameter(names = {"--accountCache"}, description = "File to cache the account id in")
+  private File accountCache = new File(System.getProperty("user.home"), ".awsmon-account");
+
+  @Parameter(names = {"--accountCacheTtl"},
+    description = "Hours the cached account id stays valid")
+  private int accountCacheTtl = 24;
+
+  @Parameter(names = {"--rateLimit"},
+    description = "Max AWS calls per second per region and API, 0 for no limit")
+  private double rateLimit;
+
+  @Parameter(names = {"--pipelineQueue"}, description = "Assess while collecting, queue size")
+  private int pipelineQueue;
+
+  @Parameter(names = {"--evalThreads"},
+    description = "Number of assessment workers in pipelined mode")
+  private int evalThreads = 1;
+
+  @Parameter(names = {"--assessThreads"},
+    description = "Number of fork/join workers assessing collected instances")
+  private int assessThreads = 1;
+
+  @Parameter(names = {"--async"}, description = "Collect with non-blocking SDK clients")
+  private boolean async;
+
+  @Parameter(names = {"--asyncThreads"},
+    description = "Size of the thread pool serving async clients, bounds the AWS calls in flight")
+  private int asyncThreads = 8;
 
-  public List<Testcase> testResults = new ArrayList<>();
+  @Parameter(names = {"--regionTimeout"},
+    description = "Seconds allowed for collecting one region, 0 for no limit")
+  private int regionTimeout;
+
+  @Parameter(names = {"--runTimeout"},
+    description = "Seconds allowed for collecting all regions, 0 for no limit")
+  private int runTimeout;
+
+  @Parameter(names = {"--assumeRoles"},
+    description = "Comma separated role ARNs, sweeps each account in one run")
+  private List<String> assumeRoles = new ArrayList<>();
+
+  @Parameter(names = {"--accountThreads"},
+    description = "Number of accounts swept concurrently")
+  private int accountThreads = 4;
+
+  @Parameter(names = {"--repeatEvery"},
+    description = "Minutes between runs, reloading a changed policy file, 0 to run once")
+  private int repeatEvery;
+
+  @Parameter(names = {"--showTimings"},
+    description = "Print AWS call latencies at the end of the run")
+  private boolean showTimings;
+
+  @Parameter(names = {"--reportValidation"},
+    description = "Check the report against the JUnit schema: OFF, INLINE or BACKGROUND")
+  private PolicyReport.Validation reportValidation = PolicyReport.Validation.OFF;
+
+  @Parameter(names = {"--reportFormats"},
+    description = "Formats written next to the JUnit report: jsonl, csv, prometheus")
+  private List<String> reportFormats = new ArrayList<>();
+
+  @Parameter(names = {"--shardReportBy"},
+    description = "Split the JUnit report into a file per account, region or both")
+  private List<String> shardReportBy = new ArrayList<>();
+
+  @Parameter(names = {"--deltaState"},
+    description = "File keeping failures between runs, enables the delta report")
+  private File deltaState;
+
+  @Parameter(names = {"--gzipReport"}, description = "Gzip the JUnit report or its shards")
+  private boolean gzipReport;
+
+
+  public ResultLog testResults = new ResultLog();
   public int numFailing;
   private PolicyReport pReport;
   private Policy pol;
+  private RuntimeCutoffs runtimeCutoffs;
+  // shared by every collector and inventory of a run, accounts included
+  private TagDictionary dictionary = new TagDictionary();
+  private InstanceSelector selector;
+  private List<Regions> regions;
+  // runs of the default session look up the account id early for RDS ARNs
+  private boolean prefetchAccount;
+  private RateLimiter rateLimiter = RateLimiter.unlimited();
+  private CollectionDeadline deadline = CollectionDeadline.none();
+  private final Map<String, RateLimiter> accountLimiters = new LinkedHashMap<>();
+  private final Map<String, CollectionDeadline> accountDeadlines = new LinkedHashMap<>();
+  private RDSInstanceCollection rdsInstances;
 
 
   /**
@@ -116,8 +250,13 @@ public class AWSResourceMonitor {
 
     try {
 
-      Policy.load(mon.policyFile);
-      mon.run(AWSInfo.getEc2(), AWSInfo.getRds());
+      if (mon.repeatEvery > 0) {
+        mon.runResident();
+      } else {
+        mon.setPolicy(Policy.load(mon.policyFile));
+        mon.runOnce();
+      }
+      mon.pReport.awaitValidation();
     } catch (ParseException | IOException | XmlException e) {
       System.out.println(e.getLocalizedMessage());
       e.printStackTrace();
@@ -127,6 +266,81 @@ public class AWSResourceMonitor {
 
   }
 
+  private void runOnce() throws IOException, XmlException {
+    if (!assumeRoles.isEmpty()) {
+      final List<AccountSession> accounts = new ArrayList<>(assumeRoles.size());
+      for (String roleArn : assumeRoles) {
+        accounts.add(AWSInfo.assumeRole(roleArn));
+      }
+      try {
+        runAccounts(accounts);
+      } finally {
+        // sessions are per run, their clients must not outlive it
+        for (AccountSession account : accounts) {
+          account.close();
+        }
+      }
+    } else {
+      // async collection resolves the id itself before its first RDS call
+      prefetchAccount = !async;
+      runDefaultAccount();
+    }
+  }
+
+  /**
+   * Run again and again, picking up policy file changes between runs.
+   * A failed run is logged and the next one still starts on schedule.
+   */
+  private void runResident() throws IOException, ParseException, XmlException {
+    try (PolicyWatcher watcher = new PolicyWatcher(policyFile)) {
+      while (true) {
+        // a run evaluates against one snapshot, a reload applies from the next run
+        setPolicy(watcher.current());
+        testResults = new ResultLog();
+        numFailing = 0;
+        try {
+          runOnce();
+          pReport.awaitValidation();
+        } catch (IOException | XmlException | RuntimeException e) {
+          // a transient AWS or disk error only costs this run, try again next time
+          //CHECKSTYLE:OFF
+          System.out.println("Run failed: " + e.getLocalizedMessage());
+          e.printStackTrace();
+          //CHECKSTYLE:ON
+        }
+        if (showTimings) {
+          printSummary(watcher.getSummary());
+        }
+
+        try {
+          Thread.sleep(TimeUnit.MINUTES.toMillis(repeatEvery));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private void runDefaultAccount() throws IOException, XmlException {
+    if (async) {
+      final ExecutorService executor = Executors.newFixedThreadPool(asyncThreads);
+      final RegionClientCache<AmazonEC2Async> ec2Clients = AWSInfo.getEc2AsyncClients(executor);
+      final RegionClientCache<AmazonRDSAsync> rdsClients = AWSInfo.getRdsAsyncClients(executor);
+      try {
+        runAsync(ec2Clients, rdsClients);
+      } finally {
+        ec2Clients.close();
+        rdsClients.close();
+        executor.shutdownNow();
+      }
+    } else if (regionThreads > 1) {
+      run(AWSInfo.getEc2Clients(), AWSInfo.getRds());
+    } else {
+      run(AWSInfo.getEc2(), AWSInfo.getRds());
+    }
+  }
+
   private int exitCode() {
     return numFailing == 0 ? 0 : 1;
   }
@@ -142,6 +356,57 @@ public class AWSResourceMonitor {
     }
   }
 
+  /**
+   * Split the JUnit report into a file per account and/or region.
+   *
+   * @param shardBy - account, region or both
+   */
+  public void setShardReportBy(List<String> shardBy) {
+    if (shardBy != null) {
+      this.shardReportBy = new ArrayList<>(shardBy);
+    }
+  }
+
+  /**
+   * Set file failures are kept in between runs for the delta report.
+   *
+   * @param stateFile - fingerprint file, null for no delta report
+   */
+  public void setDeltaState(File stateFile) {
+    this.deltaState = stateFile;
+  }
+
+  /**
+   * Gzip the JUnit report or its shards.
+   *
+   * @param gzip - true to gzip
+   */
+  public void setGzipReport(boolean gzip) {
+    this.gzipReport = gzip;
+  }
+
+  /**
+   * Set formats written next to the JUnit report.
+   *
+   * @param formats - format names, e.g. csv
+   */
+  public void setReportFormats(List<String> formats) {
+    if (formats != null) {
+      this.reportFormats = new ArrayList<>(formats);
+    }
+  }
+
+  /**
+   * Set when the written report is checked against the JUnit schema.
+   *
+   * @param validation - validation mode
+   */
+  public void setReportValidation(PolicyReport.Validation validation) {
+    if (validation != null) {
+      this.reportValidation = validation;
+    }
+  }
+
   /**
    * Set maximum allowed time to run.
    *
@@ -149,7 +414,7 @@ public class AWSResourceMonitor {
    */
   public void setMaxAllowedHoursToRun(String maxTime) {
     if (maxTime != null) {
-      maxAllowedHoursToRun = new Period(Integer.parseInt(maxTime), 0, 0, 0);
+      maxAllowedHoursToRun = Integer.parseInt(maxTime);
     }
   }
 
@@ -164,112 +429,544 @@ public class AWSResourceMonitor {
     }
   }
 
+  /**
+   * Set selectors of instances to assess.
+   *
+   * @param includes - name patterns or tag selectors of which one must match
+   * @param excludes - name patterns or tag selectors of which none may match
+   */
+  public void setSelectors(List<String> includes, List<String> excludes) {
+    this.includes = new ArrayList<>(includes);
+    this.excludes = new ArrayList<>(excludes);
+  }
+
+  /**
+   * Set number of regions collected concurrently.
+   *
+   * @param regionThreads - number of region workers
+   */
+  public void setRegionThreads(int regionThreads) {
+    this.regionThreads = regionThreads;
+  }
+
+  /**
+   * Set number of records requested per describe call.
+   *
+   * @param pageSize - page size between 5 and 1000, 0 for service default
+   */
+  public void setPageSize(int pageSize) {
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * Set number of records requested per RDS describe call.
+   *
+   * @param rdsPageSize - page size between 20 and 100, 0 for service default
+   */
+  public void setRdsPageSize(int rdsPageSize) {
+    this.rdsPageSize = rdsPageSize;
+  }
+
+  /**
+   * Set number of concurrent RDS tag lookups.
+   *
+   * @param tagThreads - maximum number of tag lookups in flight
+   */
+  public void setTagThreads(int tagThreads) {
+    this.tagThreads = tagThreads;
+  }
+
+  /**
+   * Set whether only running EC2 instances are collected.
+   *
+   * @param runningOnly - true to skip instances in other states on the server
+   */
+  public void setRunningOnly(boolean runningOnly) {
+    this.runningOnly = runningOnly;
+  }
+
+  /**
+   * Set whether only regions enabled for the account are collected.
+   *
+   * @param discoverRegions - true to look up enabled regions with DescribeRegions
+   * @param regionCache     - file to cache enabled regions in, null for no cache
+   */
+  public void setDiscoverRegions(boolean discoverRegions, File regionCache) {
+    this.discoverRegions = discoverRegions;
+    this.regionCache = regionCache;
+  }
+
+  /**
+   * Set max AWS calls per second per region and API.
+   *
+   * @param rateLimit - calls per second, 0 for no limit
+   */
+  public void setRateLimit(double rateLimit) {
+    this.rateLimit = rateLimit;
+  }
+
+  /**
+   * Getter for rate limiter used by the last run.
+   *
+   * @return rate limiter
+   */
+  public RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  /**
+   * Set pipelined run mode where assessment overlaps collection.
+   *
+   * @param queueSize   - maximum number of collected instances waiting for assessment, 0 to disable
+   * @param evalThreads - number of assessment workers
+   */
+  public void setPipeline(int queueSize, int evalThreads) {
+    this.pipelineQueue = queueSize;
+    this.evalThreads = evalThreads;
+  }
+
+  /**
+   * Set number of workers assessing collected instances.
+   *
+   * @param assessThreads - number of fork/join workers, 1 to assess on the collecting thread
+   */
+  public void setAssessThreads(int assessThreads) {
+    this.assessThreads = assessThreads;
+  }
+
+  /**
+   * Set collection deadlines, regions missing them are abandoned and reported.
+   *
+   * @param regionTimeout - seconds allowed for one region, 0 for no limit
+   * @param runTimeout    - seconds allowed for all regions, 0 for no limit
+   */
+  public void setTimeouts(int regionTimeout, int runTimeout) {
+    this.regionTimeout = regionTimeout;
+    this.runTimeout = runTimeout;
+  }
+
+  /**
+   * Set policy instances are checked against.
+   *
+   * @param policy - compiled policy
+   */
+  public void setPolicy(Policy policy) {
+    this.pol = policy;
+  }
+
+  /**
+   * Set number of accounts swept concurrently in multi-account mode.
+   *
+   * @param accountThreads - number of account workers
+   */
+  public void setAccountThreads(int accountThreads) {
+    this.accountThreads = accountThreads;
+  }
+
   /**
    * Run resource monitoring job.
    *
    * @param ec2 reference to EC2 API object
    */
-  public void run(AmazonEC2 ec2, AmazonRDS rds) throws IOException, XmlException {
+  public void run(final AmazonEC2 ec2, AmazonRDS rds) throws IOException, XmlException {
 
     this.initialize();
-    List<InstanceData> instList = new Ec2InstanceCollection(ec2).getObjList();
+    rateLimiter = new RateLimiter(rateLimit, THROTTLE_RETRIES);
+    resolveRegions(ec2);
+
+    final CollectionSettings settings = collectionSettings();
+    process(withRds(new InstanceSource() {
+      @Override
+      public void collect(InstanceConsumer out) {
+        new Ec2InstanceCollection(ec2, settings, out);
+      }
+    }, rds, settings));
 
-    instList.addAll(new RDSInstanceCollection(rds).getObjList());
+  }
 
-    this.assessInstances(instList);
-    pReport.writeJunitReport(this.numFailing, this.testResults);
+  /**
+   * Run resource monitoring job collecting EC2 regions concurrently.
+   *
+   * @param ec2Clients source of region bound EC2 clients
+   * @param rds        reference to RDS API object
+   */
+  public void run(final RegionClientFactory<AmazonEC2> ec2Clients, AmazonRDS rds)
+    throws IOException, XmlException {
+
+    this.initialize();
+    rateLimiter = new RateLimiter(rateLimit, THROTTLE_RETRIES);
+    resolveRegions(ec2Clients.forRegion(Regions.US_EAST_1));
+
+    final CollectionSettings settings = collectionSettings();
+    process(withRds(new InstanceSource() {
+      @Override
+      public void collect(InstanceConsumer out) {
+        if (isPipelined()) {
+          // queue is thread safe, regions can feed it directly
+          new Ec2InstanceCollection(ec2Clients, regionThreads, settings, out);
+          return;
+        }
+
+        for (InstanceData data : new Ec2InstanceCollection(ec2Clients, regionThreads,
+          settings, null).getObjList()) {
+          out.accept(data);
+        }
+      }
+    }, rds, settings));
 
   }
 
   /**
-   * Go through the list of instances and assess that they don't violate the policy.
+   * Run resource monitoring job with non-blocking clients, all regions at once.
    *
-   * @param instList list of instances
+   * @param ec2Clients source of region bound async EC2 clients
+   * @param rdsClients source of region bound async RDS clients
    */
-  public void assessInstances(List<InstanceData> instList) {
+  public void runAsync(final RegionClientFactory<AmazonEC2Async> ec2Clients,
+                       final RegionClientFactory<AmazonRDSAsync> rdsClients)
+    throws IOException, XmlException {
 
+    this.initialize();
+    rateLimiter = new RateLimiter(rateLimit, THROTTLE_RETRIES);
+    resolveRegions(ec2Clients.forRegion(Regions.US_EAST_1));
+
+    final CollectionSettings settings = collectionSettings();
+    process(new InstanceSource() {
+      @Override
+      public void collect(InstanceConsumer out) {
+        final AsyncInstanceCollection collection =
+          new AsyncInstanceCollection(ec2Clients, rdsClients, settings);
+        for (InstanceData data : collection.getObjList()) {
+          out.accept(data);
+        }
+      }
+    });
 
-    for (InstanceData objData : instList) {
+  }
 
-      Policy pol = Policy.getInstance();
+  /**
+   * Run resource monitoring job over several accounts, sweeping them concurrently.
+   * Each account has its own rate limits and deadlines, results are tagged with
+   * the account id and reported in account order.
+   *
+   * @param accounts sessions of the accounts to sweep
+   */
+  public void runAccounts(final List<AccountSession> accounts) throws IOException, XmlException {
 
-      final String instName = objData.name;
+    this.initialize();
+    rateLimiter = RateLimiter.unlimited();
+    deadline = newDeadline();
+    accountLimiters.clear();
+    accountDeadlines.clear();
+
+    final List<Callable<List<InstanceData>>> sweeps = new ArrayList<>(accounts.size());
+    for (final AccountSession account : accounts) {
+      final RateLimiter limiter = new RateLimiter(rateLimit, THROTTLE_RETRIES);
+      final CollectionDeadline accountDeadline = deadline.fork();
+      accountLimiters.put(account.getAccountId(), limiter);
+      accountDeadlines.put(account.getAccountId(), accountDeadline);
+      sweeps.add(new Callable<List<InstanceData>>() {
+        @Override
+        public List<InstanceData> call() {
+          return sweepAccount(account, collectionSettings(limiter, accountDeadline)
+            .withAccountId(account.getAccountId()));
+        }
+      });
+    }
 
-      if (!instName.matches(namePattern)) {
-        continue;
+    process(new InstanceSource() {
+      @Override
+      public void collect(InstanceConsumer out) {
+        for (List<InstanceData> list : ConcurrencyUtil.invokeAll(sweeps, accountThreads)) {
+          for (InstanceData data : list) {
+            out.accept(data);
+          }
+        }
       }
+    });
 
-      boolean failure = false;
+  }
 
+  /**
+   * Collect EC2 and RDS instances of one account.
+   *
+   * @param account  account session
+   * @param settings collection settings of the account
+   * @return instances tagged with the account id
+   */
+  private List<InstanceData> sweepAccount(AccountSession account, CollectionSettings settings) {
 
-      if (objData.isRunning()) {
+    if (discoverRegions) {
+      final File cache = regionCache == null
+        ? null : new File(regionCache.getPath() + "-" + account.getAccountId());
+      final long ttl = TimeUnit.HOURS.toMillis(regionCacheTtl);
+      settings.withRegions(new RegionDiscovery(account.getEc2(), cache, ttl).getRegions());
+    }
 
-        final Date launchTime = objData.getLaunchTime();
+    final List<InstanceData> list = regionThreads > 1
+      ? new Ec2InstanceCollection(account.getEc2Clients(), regionThreads, settings, null).getObjList()
+      : new Ec2InstanceCollection(account.getEc2(), settings, null).getObjList();
+    list.addAll(new RDSInstanceCollection(account.getRds(), settings, null).getObjList());
 
-        if (isSubjectToMaxRuntime(objData) && beenRunningTooLong(launchTime, new Date())) {
-          // been running too long
-          final String errMsg = "has been running longer than the allowable time.";
-          addResult(PolicyReport.getFailingTestCase(instName, "RunningTime", errMsg));
-          failure |= true;
-        }
+    if (list instanceof InstanceInventory) {
+      // tag the rows in place, no InstanceData is built and written back
+      ((InstanceInventory) list).setAccount(account.getAccountId());
+      return list;
+    }
+    for (InstanceData data : list) {
+      data.setAccount(account.getAccountId());
+    }
+    return list;
+  }
+
+  private boolean isPipelined() {
+    return pipelineQueue > 0;
+  }
+
+  private void resolveRegions(AmazonEC2 ec2) {
+    if (discoverRegions) {
+      final long ttl = TimeUnit.HOURS.toMillis(regionCacheTtl);
+      regions = new RegionDiscovery(ec2, regionCache, ttl).getRegions();
+    }
+  }
+
+  private CollectionDeadline newDeadline() {
+    return new CollectionDeadline(TimeUnit.SECONDS.toMillis(regionTimeout),
+      TimeUnit.SECONDS.toMillis(runTimeout));
+  }
 
-        if (!objData.getTagValueErrors().isEmpty()) {
-          String errMsg = composeTagErrorMsg(objData);
-          addResult(PolicyReport.getFailingTestCase(instName, "InvalidTagValue", errMsg));
-          failure |= true;
+  private CollectionSettings collectionSettings() {
+    deadline = newDeadline();
+    return collectionSettings(rateLimiter, deadline);
+  }
+
+  private CollectionSettings collectionSettings(RateLimiter limiter, CollectionDeadline limits) {
+    return new CollectionSettings()
+      .withRegions(regions)
+      .withPolicy(pol)
+      .withRateLimiter(limiter)
+      .withDeadline(limits)
+      .withPageSize(pageSize)
+      .withRdsPageSize(rdsPageSize)
+      .withTagThreads(tagThreads)
+      .withNamePattern(namePattern)
+      .withRunningOnly(runningOnly)
+      .withDictionary(dictionary);
+  }
+
+  /**
+   * Consumer assessing each instance as it arrives, so only one page is held at a time.
+   *
+   * @return assessing consumer
+   */
+  private InstanceConsumer assessor() {
+    return new InstanceConsumer() {
+      @Override
+      public void accept(InstanceData data) {
+        assessInstance(data);
+      }
+    };
+  }
+
+  /**
+   * Follow EC2 source with RDS instances.
+   *
+   * @param ec2Source source of EC2 instances
+   * @param rds       reference to RDS API object
+   * @param settings  collection settings
+   * @return combined source
+   */
+  private InstanceSource withRds(final InstanceSource ec2Source, final AmazonRDS rds,
+                                 final CollectionSettings settings) {
+    return new InstanceSource() {
+      @Override
+      public void collect(InstanceConsumer out) {
+        if (prefetchAccount && settings.getAccountId() == null
+            && !settings.getRegions().isEmpty()) {
+          // account id is only needed for RDS ARNs, look it up while EC2 is described
+          AWSInfo.prefetchAcc();
         }
+        ec2Source.collect(out);
+        rdsInstances = new RDSInstanceCollection(rds, settings, out);
+      }
+    };
+  }
 
-        failure |= checkTag(instName, "Lifecycle", objData.lifecycle.getValue());
-        failure |= checkTag(instName, "Project", objData.project.getValue());
-        failure |= checkTag(instName, "Service", objData.service.getValue());
-        if ( pol.getOwners() != null ) {
-          failure |= checkTag(instName, "Owner", objData.owner.getValue());
+  /**
+   * Collect instances, assess them and write the report.
+   *
+   * @param source source of all instances
+   */
+  private void process(final InstanceSource source) throws IOException, XmlException {
+
+    if (isPipelined()) {
+      final AssessmentPipeline pipeline = new AssessmentPipeline(this, pipelineQueue, evalThreads);
+      addResults(pipeline.run(source));
+    } else if (assessThreads > 1) {
+      final List<InstanceData> collected = new InstanceInventory(dictionary);
+      source.collect(new InstanceConsumer() {
+        @Override
+        public void accept(InstanceData data) {
+          collected.add(data);
         }
-        failure |= checkTag(instName, "ChargeLine", objData.chargeLine.getValue());
-        failure |= checkTag(instName, "Environment", objData.environment.getValue());
+      });
+      assessInstances(collected);
+    } else {
+      source.collect(assessor());
+    }
 
+    reportTimeouts(null, deadline);
+    for (Map.Entry<String, CollectionDeadline> entry : accountDeadlines.entrySet()) {
+      reportTimeouts(entry.getKey(), entry.getValue());
+    }
 
-        final Set<String> allowedRegions = pol.getAllowedRegion();
-        if (!allowedRegions.contains(objData.getRegion())) {
-          final String errMsg = "Found instance outside of " +  allowedRegions + " region";
-          addResult(PolicyReport.getFailingTestCase(instName, "WrongRegion", errMsg));
-          failure |= true;
+    if (showTimings && rdsInstances != null) {
+      printSummary(rdsInstances.getPageStats().getSummary());
+      printSummary(rdsInstances.getTagStats().getSummary());
+    }
+    if (rateLimiter.isEnabled()) {
+      printSummary(rateLimiter.getSummary());
+    }
+    for (Map.Entry<String, RateLimiter> entry : accountLimiters.entrySet()) {
+      if (entry.getValue().isEnabled()) {
+        final List<String> lines = new ArrayList<>();
+        for (String line : entry.getValue().getSummary()) {
+          lines.add(entry.getKey() + " " + line);
         }
-
+        printSummary(lines);
       }
+    }
 
-      if (!failure) {
-        addResult(PolicyReport.getPassingTestCase(instName, "RunningTime"));
-      }
+    pReport.writeJunitReport(this.numFailing, this.testResults);
+    if (deltaState != null) {
+      pReport.writeDeltaReport(deltaState, this.testResults);
+    }
+
+  }
 
+  private void reportTimeouts(String account, CollectionDeadline limits) {
+    final String prefix = account == null ? "" : account + "/";
+    for (Map.Entry<Regions, List<String>> entry : limits.getTimedOut().entrySet()) {
+      final String region = entry.getKey().getName();
+      final Testcase testCase = PolicyReport.getCollectionTimeoutTestCase(prefix + region,
+        entry.getValue());
+      numFailing++;
+      testResults.add(testCase, account, region);
     }
   }
 
-  private String composeTagErrorMsg(InstanceData objData) {
-    String errMsg = "Tag Errors Detected :";
-    for (String msg : objData.getTagValueErrors()) {
-      errMsg += " [" + msg + "] ";
+  private void printSummary(List<String> lines) {
+    //CHECKSTYLE:OFF
+    for (String line : lines) {
+      System.out.println(line);
     }
-    return errMsg;
+    //CHECKSTYLE:ON
   }
 
-  private boolean isSubjectToMaxRuntime(InstanceData objData) {
-    String lifeCycle = objData.lifecycle.getValue();
-    return ! ("Permanent".equals(lifeCycle) || "Spot".equals(lifeCycle));
+  /**
+   * Go through the list of instances and assess that they don't violate the policy.
+   *
+   * @param instList list of instances
+   */
+  public void assessInstances(List<InstanceData> instList) {
+
+    if (assessThreads > 1) {
+      new ParallelAssessment(this, assessThreads).run(instList);
+      return;
+    }
+
+    if (instList instanceof InstanceInventory) {
+      // read rows in place rather than building an InstanceData for each
+      final InstanceInventory inventory = (InstanceInventory) instList;
+      final InstanceInventory.Row row = inventory.row();
+      for (int i = 0; i < inventory.size(); i++) {
+        assessInstance(row.moveTo(i));
+      }
+      return;
+    }
+
+    for (InstanceData objData : instList) {
+      assessInstance(objData);
+    }
   }
 
+  /**
+   * Assess single instance against the policy and record results.
+   *
+   * @param objData instance to assess
+   */
+  public void assessInstance(InstanceView objData) {
+    final int failing = testResults.getFailing();
+    evaluate(objData, testResults);
+    numFailing += testResults.getFailing() - failing;
+  }
 
   /**
-   * Check if instance been running to long.
+   * Assess single instance against the policy.
+   * Only reads shared state, so it may be called from several threads at once.
+   * Nothing is allocated for a passing instance, failures keep what their message
+   * is built from and the message is formatted when the report is written.
+   *
+   * @param objData instance to assess
+   * @param out     log to record results in
+   */
+  public void evaluate(InstanceView objData, ResultLog out) {
+
+    if (!selector.matches(objData)) {
+      return;
+    }
+
+    final String name = objData.getName();
+    final String account = objData.getAccount();
+    final String region = objData.getRegion();
+    final int failing = out.getFailing();
+
+    if (objData.isRunning()) {
+
+      final String lifecycle = objData.getTagValue(Policy.Slot.LIFECYCLE);
+      final String environment = objData.getTagValue(Policy.Slot.ENVIRONMENT);
+      if (runtimeCutoffs.isOverdue(lifecycle, environment, objData.getLaunchMillis())) {
+        // been running too long
+        out.fail(ResultLog.Check.RUNNING_TIME, name, account, region, null);
+      }
+
+      if (objData.hasTagViolations()) {
+        out.fail(ResultLog.Check.INVALID_TAG_VALUE, name, account, region,
+          objData.getTagViolations());
+      }
+
+      checkTag(out, objData, "Lifecycle", lifecycle);
+      checkTag(out, objData, "Project", objData.getTagValue(Policy.Slot.PROJECT));
+      checkTag(out, objData, "Service", objData.getTagValue(Policy.Slot.SERVICE));
+      if ( pol.getOwners() != null ) {
+        checkTag(out, objData, "Owner", objData.getTagValue(Policy.Slot.OWNER));
+      }
+      checkTag(out, objData, "ChargeLine", objData.getTagValue(Policy.Slot.CHARGE_LINE));
+      checkTag(out, objData, "Environment", environment);
+
+
+      final Set<String> allowedRegions = pol.getAllowedRegion();
+      if (!allowedRegions.contains(objData.getRegion())) {
+        out.fail(ResultLog.Check.WRONG_REGION, name, account, region, allowedRegions);
+      }
+
+    }
+
+    if (out.getFailing() == failing) {
+      out.pass(name, account, region);
+    }
+
+  }
+
+  /**
+   * Check if instance been running longer than --maxTime.
    *
    * @param juLaunchTime instance launch time
    * @param now          current time
    * @return true if instance is overdue
    */
   public boolean beenRunningTooLong(Date juLaunchTime, Date now) {
-    // check the time active...
-    DateTime launchTime = new DateTime(juLaunchTime);
-    return launchTime.plus(maxAllowedHoursToRun).isBefore(new DateTime(now));
+    return juLaunchTime.getTime() < now.getTime() - maxRuntimeMillis();
   }
 
   /**
@@ -286,14 +983,23 @@ public class AWSResourceMonitor {
     testResults.add(testCase);
   }
 
+  /**
+   * Add results assessed elsewhere to the list of results.
+   *
+   * @param results results to add
+   */
+  public void addResults(ResultLog results) {
+    numFailing += results.getFailing();
+    testResults.append(results);
+  }
+
 
-  private boolean checkTag(String name, String tagName, Object tagValue) {
+  private static void checkTag(ResultLog out, InstanceView objData, String tagName,
+                               Object tagValue) {
     if (tagValue == null) {
-      String errMsg = "Does not have required tag '" + tagName + "'";
-      addResult(PolicyReport.getFailingTestCase(name, "MissingTag", errMsg));
-      return true;
+      out.fail(ResultLog.Check.MISSING_TAG, objData.getName(), objData.getAccount(),
+        objData.getRegion(), tagName);
     }
-    return false;
   }
 
   /**
@@ -306,18 +1012,53 @@ public class AWSResourceMonitor {
 
   public void initialize() {
 
+    checkPageSize("--pageSize", pageSize, EC2_MIN_PAGE, EC2_MAX_PAGE);
+    checkPageSize("--rdsPageSize", rdsPageSize, RDS_MIN_PAGE, RDS_MAX_PAGE);
+
     setMaxAllowedHoursToRun(System.getenv("MaxRunningTimeInHours"));
 
-    pol = Policy.getInstance();
+    if (pol == null) {
+      pol = Policy.getInstance();
+    }
+    runtimeCutoffs = new RuntimeCutoffs(pol.getRuntimeRules(), maxRuntimeMillis(),
+      System.currentTimeMillis());
+    selector = InstanceSelector.compile(namePattern, includes, excludes);
+    dictionary = new TagDictionary();
+    AWSInfo.setAccountCache(accountCache, TimeUnit.HOURS.toMillis(accountCacheTtl));
     pReport = new PolicyReport(jUnitFormatReportPath);
+    pReport.setValidation(reportValidation);
+    final List<ReportFormat> formats = new ArrayList<>(reportFormats.size());
+    for (String format : reportFormats) {
+      formats.add(ReportFormat.forName(format.trim()));
+    }
+    pReport.setFormats(formats);
+    for (String shard : shardReportBy) {
+      if (!"account".equals(shard) && !"region".equals(shard)) {
+        throw new IllegalArgumentException("Unknown report shard '" + shard + "'");
+      }
+    }
+    pReport.setSharding(shardReportBy.contains("account"), shardReportBy.contains("region"));
+    pReport.setCompress(gzipReport);
+
+  }
+
 
+  private static void checkPageSize(String option, int size, int min, int max) {
+    // 0 leaves the page size to the service
+    if (size != 0 && (size < min || size > max)) {
+      throw new IllegalArgumentException(option + " must be between " + min + " and " + max
+        + ", got " + size);
+    }
   }
 
+  private long maxRuntimeMillis() {
+    return TimeUnit.HOURS.toMillis(maxAllowedHoursToRun);
+  }
 
   public void loadPolicy(String policyFile) throws FileNotFoundException, ParseException {
 
     final File polFile = new File(policyFile);
-    Policy.load(polFile);
+    pol = Policy.load(polFile);
 
   }
 }
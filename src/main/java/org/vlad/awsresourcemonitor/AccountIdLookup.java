@@ -0,0 +1,172 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.model.GetCallerIdentityRequest;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Looks up the account id of the current credentials once, optionally keeping it cached on disk.
+ * The lookup can be started in the background so it overlaps the first describe calls.
+ */
+public class AccountIdLookup {
+
+  private final AWSSecurityTokenService sts;
+  private final AWSCredentialsProvider credentials;
+  private final File cacheFile;
+  private final long ttlMillis;
+  private FutureTask<String> task;
+
+  /**
+   * Create account id lookup.
+   *
+   * @param sts         STS client used for GetCallerIdentity
+   * @param credentials credentials the account id belongs to, the cache is tied to their access key
+   * @param cacheFile   file to keep the account id in, null to disable disk cache
+   * @param ttlMillis   how long cached account id stays valid
+   */
+  public AccountIdLookup(AWSSecurityTokenService sts, AWSCredentialsProvider credentials,
+                         File cacheFile, long ttlMillis) {
+    this.sts = sts;
+    this.credentials = credentials;
+    this.cacheFile = cacheFile;
+    this.ttlMillis = ttlMillis;
+  }
+
+  /**
+   * Start the lookup on a background thread unless it has already started.
+   */
+  public void prefetch() {
+    final FutureTask<String> started;
+    synchronized (this) {
+      if (task != null) {
+        return;
+      }
+      task = newTask();
+      started = task;
+    }
+    final Thread thread = new Thread(started, "account-id-lookup");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Get account id, waiting for a lookup in progress or making it in the calling thread.
+   * A failed lookup is forgotten so the next call tries again.
+   *
+   * @return account id
+   */
+  public String get() {
+    FutureTask<String> current;
+    boolean owner = false;
+    synchronized (this) {
+      if (task == null) {
+        task = newTask();
+        owner = true;
+      }
+      current = task;
+    }
+    if (owner) {
+      current.run();
+    }
+
+    try {
+      return ConcurrencyUtil.getResult(current);
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        if (task == current) {
+          task = null;
+        }
+      }
+      throw e;
+    }
+  }
+
+  private FutureTask<String> newTask() {
+    return new FutureTask<>(new Callable<String>() {
+      @Override
+      public String call() {
+        return lookup();
+      }
+    });
+  }
+
+  private String lookup() {
+    final String key = keyOf(credentials.getCredentials().getAWSAccessKeyId());
+    String account = readCache(key);
+    if (account == null) {
+      account = sts.getCallerIdentity(new GetCallerIdentityRequest()).getAccount();
+      writeCache(key, account);
+    }
+    return account;
+  }
+
+  private String readCache(String key) {
+    if (cacheFile == null || !cacheFile.isFile()
+        || System.currentTimeMillis() - cacheFile.lastModified() > ttlMillis) {
+      return null;
+    }
+
+    try {
+      final List<String> lines = FileUtils.readLines(cacheFile, "UTF-8");
+      if (lines.size() < 2 || !key.equals(lines.get(0).trim())) {
+        return null;
+      }
+      final String account = lines.get(1).trim();
+      return account.isEmpty() ? null : account;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void writeCache(String key, String account) {
+    if (cacheFile == null) {
+      return;
+    }
+
+    try {
+      FileUtils.writeLines(cacheFile, "UTF-8", Arrays.asList(key, account));
+    } catch (IOException e) {
+      // cache is an optimization only, next run will ask again
+      FileUtils.deleteQuietly(cacheFile);
+    }
+  }
+
+  /**
+   * Digest of the access key, so the cache never holds the key itself.
+   *
+   * @param accessKey access key id
+   * @return hex digest
+   */
+  private static String keyOf(String accessKey) {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-256")
+        .digest(accessKey.getBytes(StandardCharsets.UTF_8));
+      final StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
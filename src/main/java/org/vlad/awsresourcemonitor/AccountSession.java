@@ -0,0 +1,149 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.STSAssumeRoleSessionCredentialsProvider;
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.AmazonEC2Client;
+import com.amazonaws.services.rds.AmazonRDS;
+import com.amazonaws.services.rds.AmazonRDSClient;
+
+import java.io.Closeable;
+
+/**
+ * Credentials and clients of one account swept in multi-account mode.
+ * Clients are created on first use and shut down when the session is closed.
+ */
+public class AccountSession implements Closeable {
+
+  private final String accountId;
+  private final AWSCredentialsProvider credentials;
+  private AmazonEC2 ec2;
+  private AmazonRDS rds;
+  private RegionClientCache<AmazonEC2> ec2Clients;
+
+  /**
+   * Create session for account.
+   *
+   * @param accountId   account id results are tagged with
+   * @param credentials credentials of the account
+   */
+  public AccountSession(String accountId, AWSCredentialsProvider credentials) {
+    this.accountId = accountId;
+    this.credentials = credentials;
+  }
+
+  /**
+   * Create session assuming a role.
+   * Temporary credentials are cached and refreshed by the provider before they expire.
+   *
+   * @param base        credentials allowed to assume the role
+   * @param roleArn     role ARN, e.g. arn:aws:iam::123456789012:role/Monitor
+   * @param sessionName role session name shown in CloudTrail
+   * @return session of the account owning the role
+   */
+  public static AccountSession assumeRole(AWSCredentialsProvider base, String roleArn,
+                                          String sessionName) {
+    return new AccountSession(accountOf(roleArn),
+      new STSAssumeRoleSessionCredentialsProvider(base, roleArn, sessionName));
+  }
+
+  /**
+   * Get account id from role ARN.
+   *
+   * @param roleArn role ARN
+   * @return account id
+   */
+  public static String accountOf(String roleArn) {
+    final String[] parts = roleArn.split(":", 6);
+    if (parts.length != 6 || !"arn".equals(parts[0]) || !"iam".equals(parts[2])
+      || parts[4].isEmpty() || !parts[5].startsWith("role/")) {
+      throw new IllegalArgumentException("Not a role ARN: " + roleArn);
+    }
+    return parts[4];
+  }
+
+  public String getAccountId() {
+    return accountId;
+  }
+
+  public AWSCredentialsProvider getCredentials() {
+    return credentials;
+  }
+
+  /**
+   * Get EC2 client re-pointed at each region in turn.
+   *
+   * @return EC2 client
+   */
+  public synchronized AmazonEC2 getEc2() {
+    if (ec2 == null) {
+      ec2 = new AmazonEC2Client(credentials);
+    }
+    return ec2;
+  }
+
+  /**
+   * Get factory producing an EC2 client for every region.
+   *
+   * @return EC2 client factory
+   */
+  public synchronized RegionClientFactory<AmazonEC2> getEc2Clients() {
+    if (ec2Clients == null) {
+      ec2Clients = new RegionClientCache<AmazonEC2>() {
+        @Override
+        protected AmazonEC2 create(Regions region) {
+          final AmazonEC2Client client = new AmazonEC2Client(credentials);
+          client.setRegion(Region.getRegion(region));
+          return client;
+        }
+
+        @Override
+        protected void shutdown(AmazonEC2 client) {
+          client.shutdown();
+        }
+      };
+    }
+    return ec2Clients;
+  }
+
+  /**
+   * Get RDS client re-pointed at each region in turn.
+   *
+   * @return RDS client
+   */
+  public synchronized AmazonRDS getRds() {
+    if (rds == null) {
+      rds = new AmazonRDSClient(credentials);
+    }
+    return rds;
+  }
+
+  /**
+   * Shut down the clients of the session.
+   */
+  @Override
+  public synchronized void close() {
+    if (ec2 != null) {
+      ec2.shutdown();
+      ec2 = null;
+    }
+    if (rds != null) {
+      rds.shutdown();
+      rds = null;
+    }
+    if (ec2Clients != null) {
+      ec2Clients.close();
+      ec2Clients = null;
+    }
+  }
+}
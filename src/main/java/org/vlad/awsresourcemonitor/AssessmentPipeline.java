@@ -0,0 +1,255 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs collection and assessment concurrently with a bounded queue between them.
+ * Collectors block once the queue is full, so instances in flight never exceed its capacity.
+ * Workers record results straight into a log per sequence stream, which comes out ordered
+ * because the queue keeps each stream in order. The logs are merged by sequence number at
+ * the end, so results cost no more than the final log plus one position per instance.
+ */
+public class AssessmentPipeline {
+
+  private static final Item END = new Item(Long.MAX_VALUE, null);
+
+  private final AWSResourceMonitor monitor;
+  private final BlockingQueue<Item> queue;
+  private final int workers;
+
+  /**
+   * Create pipeline.
+   *
+   * @param monitor   monitor evaluating instances
+   * @param queueSize maximum number of collected instances waiting for assessment
+   * @param workers   number of assessment workers
+   */
+  public AssessmentPipeline(AWSResourceMonitor monitor, int queueSize, int workers) {
+    this.monitor = monitor;
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+    this.workers = Math.max(1, workers);
+  }
+
+  /**
+   * Collect and assess all instances of the source.
+   *
+   * @param source instance source
+   * @return results in collection order
+   */
+  public ResultLog run(final InstanceSource source) {
+
+    final ExecutorService pool = Executors.newFixedThreadPool(workers + 1);
+    try {
+      final List<Future<Map<Long, Run>>> evaluators = new ArrayList<>(workers);
+      for (int i = 0; i < workers; i++) {
+        evaluators.add(pool.submit(new Callable<Map<Long, Run>>() {
+          @Override
+          public Map<Long, Run> call() throws InterruptedException {
+            return evaluate();
+          }
+        }));
+      }
+
+      final Future<Void> producer = pool.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws InterruptedException {
+          produce(source);
+          return null;
+        }
+      });
+
+      // runs of every stream, one per worker that saw it
+      final Map<Long, List<Run>> streams = new TreeMap<>();
+      int records = 0;
+      for (Future<Map<Long, Run>> evaluator : evaluators) {
+        for (Run run : ConcurrencyUtil.getResult(evaluator).values()) {
+          List<Run> runs = streams.get(run.stream);
+          if (runs == null) {
+            runs = new ArrayList<>(workers);
+            streams.put(run.stream, runs);
+          }
+          runs.add(run);
+          records += run.log.size();
+        }
+      }
+      ConcurrencyUtil.getResult(producer);
+
+      final ResultLog log = new ResultLog(records);
+      for (List<Run> runs : streams.values()) {
+        merge(runs, log);
+      }
+      return log;
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private void produce(InstanceSource source) throws InterruptedException {
+    try {
+      source.collect(new Sequencer());
+    } finally {
+      queue.put(END);
+    }
+  }
+
+  private void put(long seq, InstanceData data) {
+    try {
+      queue.put(new Item(seq, data));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while queueing instance", e);
+    }
+  }
+
+  /**
+   * Numbers instances in collection order.
+   * A sequence number is a stream number in the high half and a position in the low half.
+   * Groups get streams of their own, so regions collected at once are still ordered by
+   * region and then by arrival within the region.
+   */
+  private final class Sequencer implements GroupedInstanceConsumer {
+
+    private long stream;
+    private long position;
+    // highest stream handed to a group so far
+    private long lastGroupStream = -1;
+    private long groupBase = -1;
+
+    @Override
+    public synchronized void accept(InstanceData data) {
+      if (lastGroupStream >= stream) {
+        // groups are done, continue after them
+        stream = lastGroupStream + 1;
+        position = 0;
+        groupBase = -1;
+      }
+      put((stream << 32) | position++, data);
+    }
+
+    @Override
+    public synchronized InstanceConsumer group(int index) {
+      if (groupBase < 0) {
+        groupBase = stream + 1;
+      }
+      final long groupStream = groupBase + index;
+      lastGroupStream = Math.max(lastGroupStream, groupStream);
+      return new InstanceConsumer() {
+        private long groupPosition;
+
+        @Override
+        public void accept(InstanceData data) {
+          put((groupStream << 32) | groupPosition++, data);
+        }
+      };
+    }
+  }
+
+  private Map<Long, Run> evaluate() throws InterruptedException {
+    final Map<Long, Run> runs = new HashMap<>();
+    Run run = null;
+    while (true) {
+      final Item item = queue.take();
+      if (item == END) {
+        // leave end marker for the other workers
+        queue.put(END);
+        return runs;
+      }
+
+      final long stream = item.seq >>> 32;
+      if (run == null || run.stream != stream) {
+        run = runs.get(stream);
+        if (run == null) {
+          run = new Run(stream);
+          runs.put(stream, run);
+        }
+      }
+      run.add(item.seq, item.data);
+    }
+  }
+
+  /**
+   * Merge the runs of one stream by position.
+   * Each run is ordered already and there are at most as many as workers, so the
+   * lowest head is found by a scan.
+   *
+   * @param runs runs of a stream
+   * @param out  log to append to
+   */
+  private static void merge(List<Run> runs, ResultLog out) {
+    final int[] next = new int[runs.size()];
+    while (true) {
+      int lowest = -1;
+      for (int i = 0; i < runs.size(); i++) {
+        final Run run = runs.get(i);
+        if (next[i] < run.count
+            && (lowest < 0 || run.seqs[next[i]] < runs.get(lowest).seqs[next[lowest]])) {
+          lowest = i;
+        }
+      }
+      if (lowest < 0) {
+        return;
+      }
+      runs.get(lowest).appendTo(out, next[lowest]++);
+    }
+  }
+
+  private static final class Item {
+    private final long seq;
+    private final InstanceData data;
+
+    private Item(long seq, InstanceData data) {
+      this.seq = seq;
+      this.data = data;
+    }
+  }
+
+  /**
+   * Results of one stream assessed by one worker, in sequence order.
+   * Entry i owns the records [ends[i - 1], ends[i]) of the log.
+   */
+  private final class Run {
+    private final long stream;
+    private final ResultLog log = new ResultLog();
+    private long[] seqs = new long[16];
+    private int[] ends = new int[16];
+    private int count;
+
+    private Run(long stream) {
+      this.stream = stream;
+    }
+
+    private void add(long seq, InstanceData data) {
+      if (count == seqs.length) {
+        seqs = Arrays.copyOf(seqs, count * 2);
+        ends = Arrays.copyOf(ends, count * 2);
+      }
+      monitor.evaluate(data, log);
+      seqs[count] = seq;
+      ends[count] = log.size();
+      count++;
+    }
+
+    private void appendTo(ResultLog out, int entry) {
+      out.append(log, entry == 0 ? 0 : ends[entry - 1], ends[entry]);
+    }
+  }
+}
@@ -0,0 +1,431 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.ec2.AmazonEC2Async;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.rds.AmazonRDSAsync;
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DescribeDBInstancesRequest;
+import com.amazonaws.services.rds.model.DescribeDBInstancesResult;
+import com.amazonaws.services.rds.model.ListTagsForResourceRequest;
+import com.amazonaws.services.rds.model.ListTagsForResourceResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Collects EC2 and RDS instances with the SDK async clients.
+ * Describe calls for all regions and tag lookups for a whole page are issued at once,
+ * follow-up pages are requested from the completion callbacks. The SDK runs each call
+ * on the clients' executor, so at most as many calls as it has threads are in flight,
+ * the rest wait in its queue. A call the rate limiter holds back is scheduled for later
+ * rather than slept for and the account id for RDS ARNs is resolved up front, so
+ * callbacks never block the SDK threads. Results are kept per region and merged in the
+ * synchronous collectors order.
+ */
+public class AsyncInstanceCollection {
+
+  private static final String DESCRIBE_INSTANCES = "DescribeInstances";
+  private static final String DESCRIBE_DB_INSTANCES = "DescribeDBInstances";
+  private static final String LIST_TAGS = "ListTagsForResource";
+
+  private final RegionClientFactory<AmazonEC2Async> ec2Clients;
+  private final RegionClientFactory<AmazonRDSAsync> rdsClients;
+  private final CollectionSettings settings;
+  private final AtomicInteger pending = new AtomicInteger(1);
+  private final CountDownLatch done = new CountDownLatch(1);
+  private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+  private final List<InstanceData> objList;
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * Collect instances from all regions.
+   *
+   * @param ec2Clients source of region bound async EC2 clients
+   * @param rdsClients source of region bound async RDS clients, null to skip RDS
+   * @param settings   collection settings
+   */
+  public AsyncInstanceCollection(RegionClientFactory<AmazonEC2Async> ec2Clients,
+                                 RegionClientFactory<AmazonRDSAsync> rdsClients,
+                                 CollectionSettings settings) {
+    this.ec2Clients = ec2Clients;
+    this.rdsClients = rdsClients;
+    this.settings = settings;
+    this.objList = new InstanceInventory(settings.getDictionary());
+
+    getAllInstances();
+  }
+
+  public List<InstanceData> getObjList() {
+    return objList;
+  }
+
+  /**
+   * Start collection in every region and wait until all calls complete.
+   */
+  public final void getAllInstances() {
+
+    final List<Regions> regions = settings.getRegions();
+    final List<List<InstanceData>> ec2Slots = newSlots(regions.size(), settings.getDictionary());
+    final List<List<InstanceData>> rdsSlots = newSlots(regions.size(), settings.getDictionary());
+
+    try {
+      final long[] ends = new long[regions.size()];
+      for (int i = 0; i < regions.size(); i++) {
+        final Regions region = regions.get(i);
+        ends[i] = settings.getDeadline().regionEnd();
+        describeInstances(ec2Clients.forRegion(region), region, ends[i], null, ec2Slots.get(i), 0);
+      }
+      if (rdsClients != null) {
+        if (settings.getAccountId() == null) {
+          // tag lookups need it for ARNs, resolve it while EC2 is described
+          settings.withAccountId(AWSInfo.getAcc());
+        }
+        for (int i = 0; i < regions.size(); i++) {
+          final Regions region = regions.get(i);
+          describeDbInstances(rdsClients.forRegion(region), region, ends[i], null,
+            rdsSlots.get(i), 0);
+        }
+      }
+
+      finish();
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for AWS calls", e);
+    } finally {
+      synchronized (this) {
+        if (scheduler != null) {
+          scheduler.shutdownNow();
+        }
+      }
+    }
+
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+
+    for (List<InstanceData> slot : ec2Slots) {
+      objList.addAll(slot);
+    }
+    for (List<InstanceData> slot : rdsSlots) {
+      objList.addAll(slot);
+    }
+  }
+
+  private static List<List<InstanceData>> newSlots(int size, TagDictionary dictionary) {
+    final List<List<InstanceData>> slots = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      slots.add(Collections.synchronizedList(new InstanceInventory(dictionary)));
+    }
+    return slots;
+  }
+
+  private void describeInstances(final AmazonEC2Async client, final Regions region,
+                                 final long end, final String nextToken,
+                                 final List<InstanceData> slot, final int attempt) {
+
+    final DescribeInstancesRequest request = new DescribeInstancesRequest()
+      .withNextToken(nextToken);
+    if (settings.getPageSize() > 0) {
+      request.setMaxResults(settings.getPageSize());
+    }
+    final List<Filter> filters = Ec2Filters.build(settings);
+    if (!filters.isEmpty()) {
+      request.setFilters(filters);
+    }
+
+    start(region, DESCRIBE_INSTANCES, end, new Runnable() {
+      @Override
+      public void run() {
+        client.describeInstancesAsync(settings.getDeadline().bound(request, end),
+          new Handler<DescribeInstancesRequest, DescribeInstancesResult>(
+            region, DESCRIBE_INSTANCES, attempt) {
+            @Override
+            void onPage(DescribeInstancesResult result) {
+              for (Reservation reservation : result.getReservations()) {
+                for (Instance instance : reservation.getInstances()) {
+                  final InstanceData data = new InstanceData(settings.getPolicy(), instance);
+                  data.setRegion(region.getName());
+                  slot.add(data);
+                }
+              }
+
+              final String next = result.getNextToken();
+              if (next != null && !next.isEmpty()) {
+                describeInstances(client, region, end, next, slot, 0);
+              }
+            }
+
+            @Override
+            void retry() {
+              describeInstances(client, region, end, nextToken, slot, attempt + 1);
+            }
+          });
+      }
+    });
+  }
+
+  private void describeDbInstances(final AmazonRDSAsync client, final Regions region,
+                                   final long end, final String marker,
+                                   final List<InstanceData> slot, final int attempt) {
+
+    final DescribeDBInstancesRequest request = new DescribeDBInstancesRequest().withMarker(marker);
+    if (settings.getRdsPageSize() > 0) {
+      request.setMaxRecords(settings.getRdsPageSize());
+    }
+
+    start(region, DESCRIBE_DB_INSTANCES, end, new Runnable() {
+      @Override
+      public void run() {
+        client.describeDBInstancesAsync(settings.getDeadline().bound(request, end),
+          new Handler<DescribeDBInstancesRequest, DescribeDBInstancesResult>(
+            region, DESCRIBE_DB_INSTANCES, attempt) {
+            @Override
+            void onPage(DescribeDBInstancesResult result) {
+              new TagPage(client, region, end, result.getDBInstances(), result.getMarker(), slot)
+                .fetch();
+            }
+
+            @Override
+            void retry() {
+              describeDbInstances(client, region, end, marker, slot, attempt + 1);
+            }
+          });
+      }
+    });
+  }
+
+  /**
+   * Make a call now or, when the rate limiter holds it back, on the scheduler later.
+   * The call counts as pending from here until its handler completes.
+   *
+   * A call the rate limiter would only allow after the region end fails as timed out.
+   *
+   * @param region region the call goes to
+   * @param api    API name
+   * @param end    nano time the region has to finish by
+   * @param call   issues the async call
+   */
+  private void start(final Regions region, final String api, long end, final Runnable call) {
+    pending.incrementAndGet();
+    final Runnable guarded = new Runnable() {
+      @Override
+      public void run() {
+        try {
+          call.run();
+        } catch (RuntimeException e) {
+          fail(region, api, e);
+          finish();
+        }
+      }
+    };
+
+    final long delay;
+    try {
+      delay = settings.getRateLimiter().reserve(region, api, end);
+    } catch (RuntimeException e) {
+      fail(region, api, e);
+      finish();
+      return;
+    }
+    if (delay <= 0) {
+      guarded.run();
+      return;
+    }
+    try {
+      getScheduler().schedule(guarded, delay, TimeUnit.NANOSECONDS);
+    } catch (RuntimeException e) {
+      // scheduler is shut down once collection has been given up
+      fail(region, api, e);
+      finish();
+    }
+  }
+
+  private synchronized ScheduledExecutorService getScheduler() {
+    if (scheduler == null) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable task) {
+          final Thread thread = new Thread(task, "async-rate-limit");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return scheduler;
+  }
+
+  private void finish() {
+    if (pending.decrementAndGet() == 0) {
+      done.countDown();
+    }
+  }
+
+  /**
+   * Record a failed call, a missed deadline only abandons the region.
+   *
+   * @param region region the call went to
+   * @param api    API name
+   * @param exc    failure
+   */
+  private void fail(Regions region, String api, Exception exc) {
+    if (CollectionDeadline.isTimeout(exc)) {
+      settings.getDeadline().timedOut(region, DESCRIBE_INSTANCES.equals(api) ? "EC2" : "RDS");
+      return;
+    }
+    final RuntimeException unchecked = exc instanceof RuntimeException
+      ? (RuntimeException) exc : new IllegalStateException("AWS call failed", exc);
+    failure.compareAndSet(null, unchecked);
+  }
+
+  /**
+   * Completion handler feeding the rate limiter and keeping track of calls in flight.
+   *
+   * @param <Q> request type
+   * @param <R> result type
+   */
+  private abstract class Handler<Q extends AmazonWebServiceRequest, R>
+    implements AsyncHandler<Q, R> {
+
+    private final Regions region;
+    private final String api;
+    private final int attempt;
+
+    Handler(Regions region, String api, int attempt) {
+      this.region = region;
+      this.api = api;
+      this.attempt = attempt;
+    }
+
+    abstract void onPage(R result);
+
+    abstract void retry();
+
+    @Override
+    public void onSuccess(Q request, R result) {
+      try {
+        settings.getRateLimiter().onResult(region, api, null, attempt);
+        if (failure.get() == null) {
+          onPage(result);
+        }
+      } catch (RuntimeException e) {
+        fail(region, api, e);
+      } finally {
+        finish();
+      }
+    }
+
+    @Override
+    public void onError(Exception exc) {
+      try {
+        if (settings.getRateLimiter().onResult(region, api, exc, attempt)) {
+          retry();
+        } else {
+          fail(region, api, exc);
+        }
+      } finally {
+        finish();
+      }
+    }
+  }
+
+  /**
+   * Tag lookups for one page of database instances, the page is added to the region
+   * in original order once every lookup has completed, then the next page is requested.
+   */
+  private final class TagPage {
+
+    private final AmazonRDSAsync client;
+    private final Regions region;
+    private final long end;
+    private final List<DBInstance> instances;
+    private final String marker;
+    private final List<InstanceData> slot;
+    private final InstanceData[] page;
+    private final AtomicInteger remaining;
+
+    private TagPage(AmazonRDSAsync client, Regions region, long end, List<DBInstance> instances,
+                    String marker, List<InstanceData> slot) {
+      this.client = client;
+      this.region = region;
+      this.end = end;
+      this.instances = instances;
+      this.marker = marker;
+      this.slot = slot;
+      this.page = new InstanceData[instances.size()];
+      this.remaining = new AtomicInteger(instances.size());
+    }
+
+    private void fetch() {
+      if (instances.isEmpty()) {
+        nextPage();
+        return;
+      }
+      for (int i = 0; i < instances.size(); i++) {
+        listTags(i, 0);
+      }
+    }
+
+    private void listTags(final int idx, final int attempt) {
+      final DBInstance instance = instances.get(idx);
+      final ListTagsForResourceRequest request = new ListTagsForResourceRequest()
+        .withResourceName(RDSInstanceCollection.getInstanceARN(settings, region, instance));
+
+      start(region, LIST_TAGS, end, new Runnable() {
+        @Override
+        public void run() {
+          client.listTagsForResourceAsync(settings.getDeadline().bound(request, end),
+            new Handler<ListTagsForResourceRequest, ListTagsForResourceResult>(
+              region, LIST_TAGS, attempt) {
+              @Override
+              void onPage(ListTagsForResourceResult result) {
+                final InstanceData data = new InstanceData(settings.getPolicy(), instance,
+                  result.getTagList());
+                data.setRegion(region.getName());
+                page[idx] = data;
+                if (remaining.decrementAndGet() == 0) {
+                  slot.addAll(Arrays.asList(page));
+                  nextPage();
+                }
+              }
+
+              @Override
+              void retry() {
+                listTags(idx, attempt + 1);
+              }
+            });
+        }
+      });
+    }
+
+    private void nextPage() {
+      if (marker != null && !marker.isEmpty()) {
+        describeDbInstances(client, region, end, marker, slot, 0);
+      }
+    }
+  }
+}
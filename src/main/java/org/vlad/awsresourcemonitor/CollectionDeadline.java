@@ -0,0 +1,158 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
+import com.amazonaws.regions.Regions;
+import org.vlad.awsresourcemonitor.exception.CollectionTimeoutException;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per region and whole run time limits for collection.
+ * The run clock starts when the deadline is created, the region clock when
+ * {@link #regionEnd()} is called. Every request gets the time left as its SDK
+ * execution timeout, so a hung endpoint cannot hold a region past its deadline.
+ * Regions that were abandoned are remembered for the report.
+ */
+public class CollectionDeadline {
+
+  private final long regionTimeoutMillis;
+  private final long runTimeoutMillis;
+  private final long runEnd;
+  private final Map<Regions, Set<String>> timedOut = new EnumMap<>(Regions.class);
+
+  /**
+   * Create deadline starting the run clock now.
+   *
+   * @param regionTimeoutMillis time allowed for each region, 0 for no limit
+   * @param runTimeoutMillis    time allowed for the whole collection, 0 for no limit
+   */
+  public CollectionDeadline(long regionTimeoutMillis, long runTimeoutMillis) {
+    this.regionTimeoutMillis = Math.max(0, regionTimeoutMillis);
+    this.runTimeoutMillis = Math.max(0, runTimeoutMillis);
+    this.runEnd = this.runTimeoutMillis > 0
+      ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.runTimeoutMillis) : Long.MAX_VALUE;
+  }
+
+  private CollectionDeadline(CollectionDeadline run) {
+    this.regionTimeoutMillis = run.regionTimeoutMillis;
+    this.runTimeoutMillis = run.runTimeoutMillis;
+    this.runEnd = run.runEnd;
+  }
+
+  /**
+   * Deadline that never expires.
+   *
+   * @return deadline without limits
+   */
+  public static CollectionDeadline none() {
+    return new CollectionDeadline(0, 0);
+  }
+
+  /**
+   * Deadline with the same limits and run clock but its own record of abandoned regions.
+   *
+   * @return deadline sharing the run end
+   */
+  public CollectionDeadline fork() {
+    return new CollectionDeadline(this);
+  }
+
+  public boolean isEnabled() {
+    return regionTimeoutMillis > 0 || runTimeoutMillis > 0;
+  }
+
+  public long getRegionTimeoutMillis() {
+    return regionTimeoutMillis;
+  }
+
+  public long getRunTimeoutMillis() {
+    return runTimeoutMillis;
+  }
+
+  /**
+   * Start the clock of a region.
+   *
+   * @return nano time the region has to finish by
+   */
+  public long regionEnd() {
+    if (regionTimeoutMillis == 0) {
+      return runEnd;
+    }
+    return Math.min(runEnd, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(regionTimeoutMillis));
+  }
+
+  /**
+   * Check the region still has time and limit the request to the time left.
+   *
+   * @param request request about to be sent
+   * @param end     nano time returned by {@link #regionEnd()}
+   * @param <T>     request type
+   * @return the same request
+   * @throws CollectionTimeoutException when the deadline has passed
+   */
+  public <T extends AmazonWebServiceRequest> T bound(T request, long end) {
+    if (end == Long.MAX_VALUE) {
+      return request;
+    }
+    final long left = TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime());
+    if (left <= 0) {
+      throw new CollectionTimeoutException("Collection deadline passed");
+    }
+    request.setSdkClientExecutionTimeout((int) Math.min(Integer.MAX_VALUE, left));
+    return request;
+  }
+
+  /**
+   * Check whether a failure was caused by a deadline.
+   *
+   * @param exc failure
+   * @return true for deadline failures
+   */
+  public static boolean isTimeout(Throwable exc) {
+    return exc instanceof CollectionTimeoutException
+      || exc instanceof ClientExecutionTimeoutException;
+  }
+
+  /**
+   * Remember that collection in a region was abandoned.
+   *
+   * @param region region
+   * @param source name of the collector, e.g. EC2
+   */
+  public synchronized void timedOut(Regions region, String source) {
+    Set<String> sources = timedOut.get(region);
+    if (sources == null) {
+      sources = new LinkedHashSet<>();
+      timedOut.put(region, sources);
+    }
+    sources.add(source);
+  }
+
+  /**
+   * Getter for abandoned regions.
+   *
+   * @return collectors abandoned in each region, in region order
+   */
+  public synchronized Map<Regions, List<String>> getTimedOut() {
+    final Map<Regions, List<String>> copy = new EnumMap<>(Regions.class);
+    for (Map.Entry<Regions, Set<String>> entry : timedOut.entrySet()) {
+      copy.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+    }
+    return copy;
+  }
+}
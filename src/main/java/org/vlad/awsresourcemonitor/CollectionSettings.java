@@ -0,0 +1,252 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.amazonaws.regions.Regions;
+
+import java.util.List;
+
+/**
+ * Tuning knobs shared by the instance collectors.
+ */
+public class CollectionSettings {
+
+  private int pageSize;
+  private int rdsPageSize;
+  private int tagThreads = 1;
+  private String accountId;
+  private String namePattern;
+  private boolean runningOnly;
+  private List<Regions> regions;
+  private RateLimiter rateLimiter = RateLimiter.unlimited();
+  private CollectionDeadline deadline = CollectionDeadline.none();
+  private Policy policy;
+  private TagDictionary dictionary = new TagDictionary();
+
+  /**
+   * Getter for page size.
+   *
+   * @return number of records requested per describe call, 0 for service default
+   */
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  /**
+   * Setter for page size.
+   *
+   * @param pageSize number of records requested per describe call, 0 for service default
+   * @return this object
+   */
+  public CollectionSettings withPageSize(int pageSize) {
+    this.pageSize = pageSize;
+    return this;
+  }
+
+  /**
+   * Getter for RDS page size.
+   *
+   * @return number of records requested per DescribeDBInstances call, 0 for service default
+   */
+  public int getRdsPageSize() {
+    return rdsPageSize;
+  }
+
+  /**
+   * Setter for RDS page size.
+   *
+   * @param rdsPageSize number of records requested per DescribeDBInstances call,
+   *                    0 for service default
+   * @return this object
+   */
+  public CollectionSettings withRdsPageSize(int rdsPageSize) {
+    this.rdsPageSize = rdsPageSize;
+    return this;
+  }
+
+  /**
+   * Getter for tag fetch concurrency.
+   *
+   * @return maximum number of ListTagsForResource calls in flight at once
+   */
+  public int getTagThreads() {
+    return tagThreads;
+  }
+
+  /**
+   * Setter for tag fetch concurrency.
+   *
+   * @param tagThreads maximum number of ListTagsForResource calls in flight at once
+   * @return this object
+   */
+  public CollectionSettings withTagThreads(int tagThreads) {
+    this.tagThreads = Math.max(1, tagThreads);
+    return this;
+  }
+
+  /**
+   * Getter for account id used to build resource ARNs.
+   *
+   * @return account id, null to use the account of the current session
+   */
+  public String getAccountId() {
+    return accountId;
+  }
+
+  /**
+   * Setter for account id used to build resource ARNs.
+   *
+   * @param accountId account id, null to use the account of the current session
+   * @return this object
+   */
+  public CollectionSettings withAccountId(String accountId) {
+    this.accountId = accountId;
+    return this;
+  }
+
+  /**
+   * Getter for instance name pattern.
+   *
+   * @return regular expression names must match, null when not restricted
+   */
+  public String getNamePattern() {
+    return namePattern;
+  }
+
+  /**
+   * Setter for instance name pattern, used to narrow describe calls on the server.
+   *
+   * @param namePattern regular expression names must match, null when not restricted
+   * @return this object
+   */
+  public CollectionSettings withNamePattern(String namePattern) {
+    this.namePattern = namePattern;
+    return this;
+  }
+
+  /**
+   * Getter for running only flag.
+   *
+   * @return true if only running instances are collected
+   */
+  public boolean isRunningOnly() {
+    return runningOnly;
+  }
+
+  /**
+   * Setter for running only flag.
+   *
+   * @param runningOnly true to collect only running instances
+   * @return this object
+   */
+  public CollectionSettings withRunningOnly(boolean runningOnly) {
+    this.runningOnly = runningOnly;
+    return this;
+  }
+
+  /**
+   * Getter for regions to collect.
+   *
+   * @return regions, all regions known to the SDK when not set
+   */
+  public List<Regions> getRegions() {
+    return regions != null ? regions : RegionDiscovery.getDefaultRegions();
+  }
+
+  /**
+   * Setter for regions to collect.
+   *
+   * @param regions regions, null for all regions known to the SDK
+   * @return this object
+   */
+  public CollectionSettings withRegions(List<Regions> regions) {
+    this.regions = regions;
+    return this;
+  }
+
+  /**
+   * Getter for rate limiter all AWS calls go through.
+   *
+   * @return rate limiter
+   */
+  public RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  /**
+   * Setter for rate limiter all AWS calls go through.
+   *
+   * @param rateLimiter rate limiter, shared by all collectors of the run
+   * @return this object
+   */
+  public CollectionSettings withRateLimiter(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+    return this;
+  }
+
+  /**
+   * Getter for collection deadline.
+   *
+   * @return deadline, also records abandoned regions
+   */
+  public CollectionDeadline getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * Setter for collection deadline.
+   *
+   * @param deadline deadline, shared by all collectors of the run
+   * @return this object
+   */
+  public CollectionSettings withDeadline(CollectionDeadline deadline) {
+    this.deadline = deadline;
+    return this;
+  }
+
+  /**
+   * Getter for policy collected instances are checked against.
+   *
+   * @return policy, the current one if none was set
+   */
+  public Policy getPolicy() {
+    return policy == null ? Policy.getInstance() : policy;
+  }
+
+  /**
+   * Setter for policy collected instances are checked against.
+   *
+   * @param policy compiled policy
+   * @return this object
+   */
+  public CollectionSettings withPolicy(Policy policy) {
+    this.policy = policy;
+    return this;
+  }
+
+  /**
+   * Getter for dictionary the collected instances are encoded with.
+   *
+   * @return dictionary, a new one per settings object unless one was set
+   */
+  public TagDictionary getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * Setter for dictionary the collected instances are encoded with.
+   *
+   * @param dictionary dictionary shared by everything collected in the run
+   * @return this object
+   */
+  public CollectionSettings withDictionary(TagDictionary dictionary) {
+    this.dictionary = dictionary;
+    return this;
+  }
+}
@@ -0,0 +1,108 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Various utility methods for running collection work concurrently.
+ */
+public final class ConcurrencyUtil {
+
+  private ConcurrencyUtil() {
+
+  }
+
+  /**
+   * Run tasks on a bounded pool and return their results in submission order.
+   *
+   * @param tasks       tasks to run
+   * @param parallelism maximum number of tasks running at once
+   * @param <T>         task result type
+   * @return results in the same order as tasks
+   */
+  public static <T> List<T> invokeAll(final List<Callable<T>> tasks, final int parallelism) {
+
+    final List<T> results = new ArrayList<>(tasks.size());
+    if (tasks.isEmpty()) {
+      return results;
+    }
+
+    final ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+    try {
+      results.addAll(invokeAll(pool, tasks));
+    } finally {
+      pool.shutdownNow();
+    }
+
+    return results;
+  }
+
+  /**
+   * Run tasks on existing pool and return their results in submission order.
+   *
+   * @param pool  pool to run tasks on
+   * @param tasks tasks to run
+   * @param <T>   task result type
+   * @return results in the same order as tasks
+   */
+  public static <T> List<T> invokeAll(final ExecutorService pool, final List<Callable<T>> tasks) {
+
+    final List<Future<T>> futures = new ArrayList<>(tasks.size());
+    try {
+      for (Callable<T> task : tasks) {
+        futures.add(pool.submit(task));
+      }
+
+      final List<T> results = new ArrayList<>(tasks.size());
+      for (Future<T> future : futures) {
+        results.add(getResult(future));
+      }
+      return results;
+    } finally {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Wait for the future and rethrow its failure unchecked.
+   *
+   * @param future future to wait for
+   * @param <T>    result type
+   * @return future result
+   */
+  public static <T> T getResult(final Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for collection task", e);
+    } catch (ExecutionException e) {
+      throw unchecked(e.getCause());
+    }
+  }
+
+  private static RuntimeException unchecked(final Throwable cause) {
+    if (cause instanceof RuntimeException) {
+      return (RuntimeException) cause;
+    }
+    if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    return new IllegalStateException("Collection task failed", cause);
+  }
+}
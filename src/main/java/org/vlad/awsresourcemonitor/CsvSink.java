@@ -0,0 +1,69 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+
+package org.vlad.awsresourcemonitor;
+
+import com.jaxb.junit.Testcase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes test cases as RFC 4180 CSV rows.
+ */
+public class CsvSink implements ReportSink {
+
+  private static final String HEADER = "classname,name,status,message\r\n";
+
+  private final Writer out;
+
+  /**
+   * Create sink and write the header row.
+   *
+   * @param file output file
+   */
+  public CsvSink(File file) throws IOException {
+    out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+    out.write(HEADER);
+  }
+
+  @Override
+  public void write(Testcase testCase) throws IOException {
+    cell(testCase.getClassname());
+    out.write(',');
+    cell(testCase.getName());
+    out.write(',');
+    cell(PolicyReport.getOutcome(testCase));
+    out.write(',');
+    cell(PolicyReport.getMessage(testCase));
+    out.write("\r\n");
+  }
+
+  private void cell(String value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+      && value.indexOf('\r') < 0) {
+      out.write(value);
+      return;
+    }
+    out.write('"');
+    out.write(value.replace("\"", "\"\""));
+    out.write('"');
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+
+package org.vlad.awsresourcemonitor;
+
+import com.jaxb.junit.Testcase;
+import org.vlad.awsresourcemonitor.exception.XmlException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Changes in failing results between the previous run and this one.
+ * A failure of this run is new unless the previous run had the same instance, check and
+ * message failing, then it is unchanged. Previous failures missing from this run are
+ * resolved, unless their region timed out this run. Those are not known to be fixed and
+ * are carried over into this run's fingerprints instead.
+ * Every entry is looked up once in the other run's fingerprints.
+ */
+public final class DeltaReport {
+
+  /** Suite name of the JUnit delta report. */
+  public static final String SUITE_NAME = "AwsResourcesDelta";
+
+  private final ResultFingerprints previous;
+  private final ResultFingerprints current;
+  private int[] added = new int[16];
+  private int addedCount;
+  private int[] unchanged = new int[16];
+  private int unchangedCount;
+  private int[] resolved = new int[16];
+  private int resolvedCount;
+  private int carriedCount;
+
+  /**
+   * Compare runs.
+   *
+   * @param previous failing results of the previous run
+   * @param current  failing results of this run, gets failures of timed out regions added
+   */
+  public DeltaReport(ResultFingerprints previous, ResultFingerprints current) {
+    this.previous = previous;
+    this.current = current;
+
+    for (int i = 0; i < current.size(); i++) {
+      if (previous.indexOf(current.getFingerprint(i)) >= 0) {
+        unchanged = append(unchanged, unchangedCount++, i);
+      } else {
+        added = append(added, addedCount++, i);
+      }
+    }
+    for (int i = 0; i < previous.size(); i++) {
+      if (current.indexOf(previous.getFingerprint(i)) >= 0) {
+        continue;
+      }
+      if (current.isTimedOut(previous.getScope(i))) {
+        current.copy(previous, i);
+        carriedCount++;
+      } else {
+        resolved = append(resolved, resolvedCount++, i);
+      }
+    }
+  }
+
+  private static int[] append(int[] values, int count, int value) {
+    final int[] target = count == values.length ? Arrays.copyOf(values, count * 2) : values;
+    target[count] = value;
+    return target;
+  }
+
+  public int getNewCount() {
+    return addedCount;
+  }
+
+  public int getUnchangedCount() {
+    return unchangedCount;
+  }
+
+  public int getResolvedCount() {
+    return resolvedCount;
+  }
+
+  /**
+   * Get number of previous failures in regions that timed out this run.
+   *
+   * @return failures neither reported as resolved nor as unchanged
+   */
+  public int getCarriedCount() {
+    return carriedCount;
+  }
+
+  /**
+   * Write delta as a JUnit suite.
+   * New failures fail, unchanged ones are skipped and resolved ones pass, the status
+   * attribute says which.
+   *
+   * @param file report file
+   */
+  public void writeJunit(File file) throws IOException, XmlException {
+    try (JunitReportWriter writer = new JunitReportWriter(file, SUITE_NAME,
+      addedCount + unchangedCount + resolvedCount, addedCount)) {
+      for (int i = 0; i < addedCount; i++) {
+        final int index = added[i];
+        final Testcase testCase = PolicyReport.getFailingTestCase(current.getClassname(index),
+          current.getName(index), current.getMessage(index));
+        testCase.setStatus("new");
+        writer.write(testCase);
+      }
+      for (int i = 0; i < unchangedCount; i++) {
+        final int index = unchanged[i];
+        final Testcase testCase = PolicyReport.getPassingTestCase(current.getClassname(index),
+          current.getName(index));
+        testCase.setStatus("unchanged");
+        testCase.setSkipped("Failing in the previous run as well");
+        writer.write(testCase);
+      }
+      for (int i = 0; i < resolvedCount; i++) {
+        final int index = resolved[i];
+        final Testcase testCase = PolicyReport.getPassingTestCase(previous.getClassname(index),
+          previous.getName(index));
+        testCase.setStatus("resolved");
+        writer.write(testCase);
+      }
+    }
+  }
+
+  /**
+   * Write delta as JSON.
+   *
+   * @param file JSON file
+   */
+  public void writeJson(File file) throws IOException {
+    try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      final StringBuilder json = new StringBuilder(256);
+      json.append("{\"new\":").append(addedCount).append(",\"unchanged\":")
+        .append(unchangedCount).append(",\"resolved\":").append(resolvedCount).append(",\n");
+      out.append(json);
+      writeEntries(out, "new", current, added, addedCount);
+      out.write(",\n");
+      writeEntries(out, "unchanged", current, unchanged, unchangedCount);
+      out.write(",\n");
+      writeEntries(out, "resolved", previous, resolved, resolvedCount);
+      out.write("}\n");
+    }
+  }
+
+  private static void writeEntries(Writer out, String key, ResultFingerprints set,
+                                   int[] indexes, int count)
+    throws IOException {
+
+    final StringBuilder json = new StringBuilder(256);
+    out.write("\"" + key + "Failures\":[");
+    for (int i = 0; i < count; i++) {
+      final int index = indexes[i];
+      json.setLength(0);
+      json.append(i == 0 ? "\n" : ",\n").append("  {\"classname\":");
+      JsonLinesSink.quote(json, set.getClassname(index)).append(",\"name\":");
+      JsonLinesSink.quote(json, set.getName(index)).append(",\"message\":");
+      JsonLinesSink.quote(json, set.getMessage(index));
+      json.append('}');
+      out.append(json);
+    }
+    out.write(count == 0 ? "]" : "\n]");
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.amazonaws.services.ec2.model.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates instance selection options into server side EC2 filters.
+ * Filters only ever narrow the result to a superset of what the client side
+ * checks accept, so the full regular expression still has the final word.
+ */
+public final class Ec2Filters {
+
+  private static final String REGEX_META = "[](){}|+*?^$";
+
+  private Ec2Filters() {
+
+  }
+
+  /**
+   * Build filters for DescribeInstances.
+   *
+   * @param settings collection settings
+   * @return filters, empty when nothing can be pushed to the server
+   */
+  public static List<Filter> build(CollectionSettings settings) {
+
+    final List<Filter> filters = new ArrayList<>(2);
+
+    final String nameGlob = toNameGlob(settings.getNamePattern());
+    if (nameGlob != null) {
+      filters.add(new Filter("tag:Name").withValues(nameGlob));
+    }
+
+    if (settings.isRunningOnly()) {
+      filters.add(new Filter("instance-state-name").withValues("running"));
+    }
+
+    return filters;
+  }
+
+  /**
+   * Translate name regular expression into EC2 filter wildcard expression.
+   * Instances without a Name tag are reported under their instance id, which the
+   * tag filter would drop, so patterns that could match an id are not translated.
+   *
+   * @param regex name regular expression
+   * @return wildcard expression, null when the pattern can't be narrowed safely
+   */
+  public static String toNameGlob(String regex) {
+
+    if (regex == null || regex.indexOf('|') >= 0) {
+      return null;
+    }
+
+    // anchors are implied, matching always covers the whole name
+    String pattern = regex;
+    if (pattern.startsWith("^")) {
+      pattern = pattern.substring(1);
+    }
+    if (pattern.endsWith("$") && !pattern.endsWith("\\$")) {
+      pattern = pattern.substring(0, pattern.length() - 1);
+    }
+
+    final StringBuilder glob = new StringBuilder(pattern.length());
+    final StringBuilder prefix = new StringBuilder(pattern.length());
+    boolean exact = true;
+    boolean literalPrefix = true;
+
+    int idx = 0;
+    final int len = pattern.length();
+    while (idx < len) {
+      final char chr = pattern.charAt(idx);
+      final char next = idx + 1 < len ? pattern.charAt(idx + 1) : 0;
+
+      if (chr == '.') {
+        if (next == '*') {
+          glob.append('*');
+          idx += 2;
+        } else if (isQuantifier(next)) {
+          exact = false;
+          break;
+        } else {
+          glob.append('?');
+          idx++;
+        }
+        literalPrefix = false;
+        continue;
+      }
+
+      char literal;
+      int width;
+      if (chr == '\\' && next != 0 && !Character.isLetterOrDigit(next)) {
+        literal = next;
+        width = 2;
+      } else if (chr == '\\' || REGEX_META.indexOf(chr) >= 0) {
+        exact = false;
+        break;
+      } else {
+        literal = chr;
+        width = 1;
+      }
+
+      if (isQuantifier(idx + width < len ? pattern.charAt(idx + width) : 0)) {
+        exact = false;
+        break;
+      }
+
+      if (literal == '*' || literal == '?' || literal == '\\') {
+        glob.append('\\');
+      }
+      glob.append(literal);
+      if (literalPrefix) {
+        prefix.append(literal);
+      }
+      idx += width;
+    }
+
+    if (!exact) {
+      glob.append('*');
+    }
+
+    final String lead = prefix.toString();
+    if (lead.isEmpty() || "i-".startsWith(lead) || lead.startsWith("i-")) {
+      return null;
+    }
+
+    return glob.toString();
+  }
+
+  private static boolean isQuantifier(char chr) {
+    return chr == '*' || chr == '+' || chr == '?' || chr == '{';
+  }
+}
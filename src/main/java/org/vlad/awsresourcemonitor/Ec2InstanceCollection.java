@@ -14,13 +14,13 @@ import com.amazonaws.regions.Regions;
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
 import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Filter;
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.Reservation;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Collection class for EC2 instances.
@@ -28,17 +28,79 @@ import java.util.Set;
 public class Ec2InstanceCollection {
 
   private final AmazonEC2 ec2;
+  private final RegionClientFactory<AmazonEC2> clients;
+  private final int parallelism;
+  private final CollectionSettings settings;
+  private final InstanceConsumer consumer;
   private List<InstanceData> objList;
 
   public Ec2InstanceCollection(AmazonEC2 ec2) {
+    this(ec2, new CollectionSettings(), null);
+  }
+
+  /**
+   * Collect instances page by page handing each one to the consumer.
+   *
+   * @param ec2      EC2 client, re-pointed at each region in turn
+   * @param settings collection settings
+   * @param consumer receiver of collected instances, null to keep them in the object list
+   */
+  public Ec2InstanceCollection(AmazonEC2 ec2, CollectionSettings settings, InstanceConsumer consumer) {
 
     this.ec2 = ec2;
-    this.objList = new ArrayList<>(1000);
+    this.clients = null;
+    this.parallelism = 1;
+    this.settings = settings;
+    this.objList = new InstanceInventory(settings.getDictionary());
+    this.consumer = consumer == null ? listConsumer(objList) : consumer;
+
+    getAllInstances();
+
+  }
+
+  /**
+   * Collect instances from several regions at once.
+   *
+   * @param clients     source of region bound clients, one is requested per region
+   * @param parallelism maximum number of regions collected at the same time
+   */
+  public Ec2InstanceCollection(RegionClientFactory<AmazonEC2> clients, int parallelism) {
+    this(clients, parallelism, new CollectionSettings(), null);
+  }
+
+  /**
+   * Collect instances from several regions at once handing each one to the consumer.
+   *
+   * @param clients     source of region bound clients, one is requested per region
+   * @param parallelism maximum number of regions collected at the same time
+   * @param settings    collection settings
+   * @param consumer    thread safe receiver of collected instances, null to keep
+   *                    them in the object list in region order, a grouped consumer
+   *                    gets a group per region
+   */
+  public Ec2InstanceCollection(RegionClientFactory<AmazonEC2> clients, int parallelism,
+                               CollectionSettings settings, InstanceConsumer consumer) {
+
+    this.ec2 = null;
+    this.clients = clients;
+    this.parallelism = Math.max(1, parallelism);
+    this.settings = settings;
+    this.objList = new InstanceInventory(settings.getDictionary());
+    this.consumer = consumer;
 
     getAllInstances();
 
   }
 
+  private static InstanceConsumer listConsumer(final List<InstanceData> list) {
+    return new InstanceConsumer() {
+      @Override
+      public void accept(InstanceData data) {
+        list.add(data);
+      }
+    };
+  }
+
   public List<InstanceData> getObjList() {
     return objList;
   }
@@ -51,19 +113,45 @@ public class Ec2InstanceCollection {
   public final void getAllInstances() {
     // Find all running EC2 instances that match the regular expression
 
-    final Set<String> skipRegions = new HashSet<>();
-    skipRegions.add("us-gov-west-1");
-    skipRegions.add("cn-north-1");
+    final List<Regions> regions = settings.getRegions();
 
-    for (final Regions reg : Regions.values()) {
-      String regName = reg.getName();
-      if (skipRegions.contains(regName)) {
-        continue;
+    if (clients == null) {
+      for (final Regions reg : regions) {
+        collectRegionInstances(reg);
       }
+    } else {
+      collectInParallel(regions);
+    }
+
+  }
 
-      collectRegionInstances(reg);
+  /**
+   * Collect each region on its own worker and merge results in region order.
+   *
+   * @param regions regions to collect
+   */
+  private void collectInParallel(List<Regions> regions) {
+
+    final List<Callable<List<InstanceData>>> tasks = new ArrayList<>(regions.size());
+    for (int i = 0; i < regions.size(); i++) {
+      final Regions reg = regions.get(i);
+      final int index = i;
+      tasks.add(new Callable<List<InstanceData>>() {
+        @Override
+        public List<InstanceData> call() {
+          final List<InstanceData> regionList = new InstanceInventory(settings.getDictionary());
+          final InstanceConsumer out = consumer == null ? listConsumer(regionList)
+            : consumer instanceof GroupedInstanceConsumer
+            ? ((GroupedInstanceConsumer) consumer).group(index) : consumer;
+          collectRegionInstances(clients.forRegion(reg), reg, out);
+          return regionList;
+        }
+      });
     }
 
+    for (List<InstanceData> regionList : ConcurrencyUtil.invokeAll(tasks, parallelism)) {
+      objList.addAll(regionList);
+    }
   }
 
 
@@ -74,21 +162,66 @@ public class Ec2InstanceCollection {
    */
   public final void collectRegionInstances(Regions region) {
     ec2.setRegion(Region.getRegion(region));
-    // Collect a list of running instances
-    final DescribeInstancesRequest request = new DescribeInstancesRequest();
-    final DescribeInstancesResult result = ec2.describeInstances(request);
-    final List<Reservation> reservations = result.getReservations();
-
+    collectRegionInstances(ec2, region, consumer);
+  }
 
-    // loop through each running resource
-    for (Reservation reservation : reservations) {
-      for (Instance instance : reservation.getInstances()) {
-        final InstanceData data = new InstanceData(instance);
-        data.setRegion(region.getName());
-        objList.add(data);
+  /**
+   * Get all instances in the region using a client already bound to it.
+   * Pages are converted and handed to the consumer before the next one is requested.
+   * When the deadline passes the region is abandoned and recorded as timed out.
+   *
+   * @param client  client bound to the region
+   * @param region  region
+   * @param out     receiver of collected instances
+   */
+  private void collectRegionInstances(final AmazonEC2 client, Regions region, InstanceConsumer out) {
+    final CollectionDeadline deadline = settings.getDeadline();
+    try {
+      collectRegionPages(client, region, deadline, deadline.regionEnd(), out);
+    } catch (RuntimeException e) {
+      if (!CollectionDeadline.isTimeout(e)) {
+        throw e;
       }
+      deadline.timedOut(region, "EC2");
     }
   }
 
+  private void collectRegionPages(final AmazonEC2 client, Regions region,
+                                  final CollectionDeadline deadline, final long end,
+                                  InstanceConsumer out) {
+    // Collect a list of running instances
+    final DescribeInstancesRequest request = new DescribeInstancesRequest();
+    if (settings.getPageSize() > 0) {
+      request.setMaxResults(settings.getPageSize());
+    }
+    final List<Filter> filters = Ec2Filters.build(settings);
+    if (!filters.isEmpty()) {
+      request.setFilters(filters);
+    }
+
+    String nextToken;
+    do {
+      final DescribeInstancesResult result = settings.getRateLimiter().call(region, "DescribeInstances",
+        end, new Callable<DescribeInstancesResult>() {
+          @Override
+          public DescribeInstancesResult call() {
+            return client.describeInstances(deadline.bound(request, end));
+          }
+        });
+      final List<Reservation> reservations = result.getReservations();
+
+      // loop through each running resource
+      for (Reservation reservation : reservations) {
+        for (Instance instance : reservation.getInstances()) {
+          final InstanceData data = new InstanceData(settings.getPolicy(), instance);
+          data.setRegion(region.getName());
+          out.accept(data);
+        }
+      }
+
+      nextToken = result.getNextToken();
+      request.setNextToken(nextToken);
+    } while (nextToken != null && !nextToken.isEmpty());
+  }
 
 }
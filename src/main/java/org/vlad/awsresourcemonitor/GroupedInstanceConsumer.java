@@ -0,0 +1,27 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+
+package org.vlad.awsresourcemonitor;
+
+/**
+ * Consumer keeping the order of instances that several collectors produce at once.
+ * Each collector feeds the consumer of its group. Instances of group i are ordered after
+ * those of every lower group, whatever order they arrive in, and instances accepted
+ * directly once the groups are done come after all of them.
+ */
+public interface GroupedInstanceConsumer extends InstanceConsumer {
+
+  /**
+   * Get consumer of a group, used by a single collector thread.
+   *
+   * @param index group index, e.g. position of the region in the region list
+   * @return group consumer
+   */
+  InstanceConsumer group(int index);
+}
@@ -0,0 +1,22 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+/**
+ * Receives instances as collectors produce them, page by page.
+ */
+public interface InstanceConsumer {
+
+  /**
+   * Accept collected instance.
+   *
+   * @param data instance data
+   */
+  void accept(InstanceData data);
+}
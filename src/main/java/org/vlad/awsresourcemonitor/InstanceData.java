@@ -11,24 +11,18 @@ package org.vlad.awsresourcemonitor;
 
 import com.amazonaws.services.ec2.model.Instance;
 import com.amazonaws.services.ec2.model.Tag;
-import com.amazonaws.services.rds.AmazonRDS;
 import com.amazonaws.services.rds.model.DBInstance;
-import com.amazonaws.services.rds.model.ListTagsForResourceRequest;
-import com.amazonaws.services.rds.model.ListTagsForResourceResult;
-import org.vlad.awsresourcemonitor.exception.BadObjectAttributeKey;
-import org.vlad.awsresourcemonitor.exception.BadObjectAttributeValue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Proxy object for EC2 instance data.
  */
-public class InstanceData {
+public class InstanceData implements InstanceView {
 
-  private AmazonRDS rds;
   /** Is instance currently running. */
   public boolean running;
   /** Instance name. */
@@ -47,167 +41,180 @@ public class InstanceData {
   public ObjectAttribute environment;
 
 
-  /** List of errors found while processing instance tags. */
-  private List<String> tagValueErrors = new ArrayList<>();
+  /** Tag problems found while processing instance tags, created with the first one. */
+  private List<TagViolation> violations;
   private Date launchTime;
-
-  private Set<String> allowedTags;
+  private Policy policy;
 
   private String region;
 
+  private String account;
+
   /**
-   * Initialize proxy object.
+   * Initialize proxy object against the current policy.
    * @param inst  - ec2 api instance
    */
   public InstanceData(final Instance inst) {
+    this(Policy.getInstance(), inst);
+  }
 
-    Policy policy = Policy.getInstance();
-    chargeLine = new ObjectAttribute("ChargeLine", policy.getChargeLines());
-    environment = new ObjectAttribute("Environment", policy.getEnvironments());
-    owner = new ObjectAttribute("Owner", policy.getOwners());
-    lifecycle = new ObjectAttribute("Lifecycle", policy.getLifecycle());
-    project = new ObjectAttribute("Project", policy.getProjects());
-    service = new ObjectAttribute("Service", policy.getServices());
-
-    allowedTags = policy.getAllowedTags();
+  /**
+   * Initialize proxy object.
+   * @param policy - policy tags are checked against
+   * @param inst   - ec2 api instance
+   */
+  public InstanceData(Policy policy, final Instance inst) {
 
+    initAttributes(policy);
 
     final String stateName = inst.getState().getName();
     running = "running".equals(stateName);
     launchTime = inst.getLaunchTime();
 
-    processTags(inst);
+    for (final Tag tag : inst.getTags()) {
+      processTag(policy, tag.getKey(), tag.getValue());
+    }
 
     if ("".equals(name) || name == null) {
       name = inst.getInstanceId();
-      tagValueErrors.add("Instance " + name + ": 'Name' tag is missing or empty");
+      addViolation(TagViolation.Kind.MISSING_NAME, "Name", name);
     }
 
   }
 
-  public InstanceData(DBInstance inst) {
-
-    rds = AWSInfo.getRds();
-
-
-    Policy policy = Policy.getInstance();
-    chargeLine = new ObjectAttribute("ChargeLine", policy.getChargeLines());
-    environment = new ObjectAttribute("Environment", policy.getEnvironments());
-    owner = new ObjectAttribute("Owner", policy.getOwners());
-    lifecycle = new ObjectAttribute("Lifecycle", policy.getLifecycle());
-    project = new ObjectAttribute("Project", policy.getProjects());
-    service = new ObjectAttribute("Service", policy.getServices());
-
-    allowedTags = policy.getAllowedTags();
+  /**
+   * Initialize proxy object for database instance against the current policy.
+   * @param inst  - rds api instance
+   * @param tags  - tags of the instance, fetched beforehand by the collector
+   */
+  public InstanceData(DBInstance inst, List<com.amazonaws.services.rds.model.Tag> tags) {
+    this(Policy.getInstance(), inst, tags);
+  }
 
+  /**
+   * Initialize proxy object for database instance.
+   * @param policy - policy tags are checked against
+   * @param inst   - rds api instance
+   * @param tags   - tags of the instance, fetched beforehand by the collector
+   */
+  public InstanceData(Policy policy, DBInstance inst,
+                      List<com.amazonaws.services.rds.model.Tag> tags) {
 
+    initAttributes(policy);
 
     final String stateName = inst.getDBInstanceStatus();
     running = "available".equals(stateName);
     launchTime = inst.getInstanceCreateTime();
 
-    processTags(inst);
+    for (final com.amazonaws.services.rds.model.Tag tag : tags) {
+      processTag(policy, tag.getKey(), tag.getValue());
+    }
 
     if ("".equals(name) || name == null) {
       name = inst.getDBInstanceIdentifier();
-      tagValueErrors.add("Instance " + name + ": 'Name' tag is missing or empty");
+      addViolation(TagViolation.Kind.MISSING_NAME, "Name", name);
     }
   }
 
-  private void processTags(DBInstance inst) {
-
-
-    String arn = getInstanceARN(inst);
-    ListTagsForResourceRequest tagReq = new ListTagsForResourceRequest().withResourceName(arn);
-    ListTagsForResourceResult tagRes = rds.listTagsForResource(tagReq);
+  /**
+   * Restore proxy object from compact storage, attribute values and violations
+   * are added afterwards.
+   * @param policy     - policy tags were checked against
+   * @param name       - instance name
+   * @param running    - running state
+   * @param launchTime - launch time, may be null
+   */
+  InstanceData(Policy policy, String name, boolean running, Date launchTime) {
+    initAttributes(policy);
+    this.name = name;
+    this.running = running;
+    this.launchTime = launchTime;
+  }
 
-    final List<com.amazonaws.services.rds.model.Tag> tags = tagRes.getTagList();
-    for (final com.amazonaws.services.rds.model.Tag tag : tags) {
+  private void initAttributes(Policy policy) {
+    this.policy = policy;
+    chargeLine = newAttribute(policy, Policy.Slot.CHARGE_LINE);
+    environment = newAttribute(policy, Policy.Slot.ENVIRONMENT);
+    owner = newAttribute(policy, Policy.Slot.OWNER);
+    lifecycle = newAttribute(policy, Policy.Slot.LIFECYCLE);
+    project = newAttribute(policy, Policy.Slot.PROJECT);
+    service = newAttribute(policy, Policy.Slot.SERVICE);
+  }
 
-      final String tagKey = tag.getKey();
-      final String tagValue = tag.getValue();
-
-      try {
-
-        checkAllowedTag(tagKey);
-
-        if ("Name".equals(tagKey)) {
-          this.name = tagValue;
-        } else if ("Lifecycle".equals(tagKey)) {
-          lifecycle.setValue(tagValue);
-        } else if ("Project".equals(tagKey)) {
-          project.setValue(tagValue);
-        } else if ("Service".equals(tagKey)) {
-          service.setValue(tagValue);
-        } else if ("Owner".equals(tagKey)) {
-          owner.setValue(tagValue);
-        } else if ("ChargeLine".equals(tagKey)) {
-          chargeLine.setValue(tagValue);
-        } else if ("Environment".equals(tagKey)) {
-          environment.setValue(tagValue);
-        } else if ("Env".equals(tagKey)) {
-          environment.setValue(tagValue);
-        }
-      } catch (BadObjectAttributeValue | BadObjectAttributeKey badAttr) {
-        tagValueErrors.add(badAttr.getMessage());
-      }
+  private static ObjectAttribute newAttribute(Policy policy, Policy.Slot slot) {
+    return new ObjectAttribute(slot.getTagName(), policy.getAllowedValues(slot));
+  }
 
+  private ObjectAttribute attribute(Policy.Slot slot) {
+    switch (slot) {
+      case LIFECYCLE:
+        return lifecycle;
+      case PROJECT:
+        return project;
+      case SERVICE:
+        return service;
+      case OWNER:
+        return owner;
+      case CHARGE_LINE:
+        return chargeLine;
+      case ENVIRONMENT:
+        return environment;
+      default:
+        return null;
     }
+  }
 
+  /**
+   * Getter for instance name.
+   *
+   * @return name tag, the instance id if it has none
+   */
+  @Override
+  public final String getName() {
+    return name;
   }
 
-  private String getInstanceARN(DBInstance inst) {
+  /**
+   * Get value of a policy tag.
+   *
+   * @param slot attribute the tag is stored in
+   * @return tag value, null if the instance has no valid value for it
+   */
+  @Override
+  public final String getTagValue(Policy.Slot slot) {
+    if (slot == Policy.Slot.NAME) {
+      return name;
+    }
+    final ObjectAttribute attr = attribute(slot);
+    return attr == null ? null : attr.getValue();
+  }
 
-     String azone = inst.getAvailabilityZone();
-     String region = azone.substring(0, azone.length() - 1);
+  private void processTag(Policy policy, String tagKey, String tagValue) {
 
-     String arn = "arn:aws:rds:" + region + ":" + AWSInfo.getAcc() + ":db:" + inst.getDBInstanceIdentifier();
+    final Policy.Slot slot = policy.slotOf(tagKey);
 
-     return arn;
+    if (slot == null) {
+      addViolation(TagViolation.Kind.INVALID_KEY, tagKey, tagValue);
+    } else if (slot == Policy.Slot.NAME) {
+      this.name = tagValue;
+    } else if (slot != Policy.Slot.OTHER) {
+      final ObjectAttribute attr = attribute(slot);
+      if (!attr.trySetValue(tagValue)) {
+        addViolation(TagViolation.Kind.INVALID_VALUE, attr.getName(), tagValue);
+      }
+    }
 
   }
 
-
-  private void processTags(final Instance inst) {
-
-    final List<Tag> tags = inst.getTags();
-    for (final Tag tag : tags) {
-
-      final String tagKey = tag.getKey();
-      final String tagValue = tag.getValue();
-
-      try {
-
-        checkAllowedTag(tagKey);
-
-        if ("Name".equals(tagKey)) {
-          this.name = tagValue;
-        } else if ("Lifecycle".equals(tagKey)) {
-          lifecycle.setValue(tagValue);
-        } else if ("Project".equals(tagKey)) {
-          project.setValue(tagValue);
-        } else if ("Service".equals(tagKey)) {
-          service.setValue(tagValue);
-        } else if ("Owner".equals(tagKey)) {
-          owner.setValue(tagValue);
-        } else if ("ChargeLine".equals(tagKey)) {
-          chargeLine.setValue(tagValue);
-        } else if ("Environment".equals(tagKey)) {
-          environment.setValue(tagValue);
-        } else if ("Env".equals(tagKey)) {
-          environment.setValue(tagValue);
-        }
-      } catch (BadObjectAttributeValue | BadObjectAttributeKey badAttr) {
-        tagValueErrors.add(badAttr.getMessage());
-      }
-
-    }
+  void restoreValue(Policy.Slot slot, String value) {
+    attribute(slot).trySetValue(value);
   }
 
-  private void checkAllowedTag(String tagKey) throws BadObjectAttributeKey {
-    if (!allowedTags.contains(tagKey)) {
-      throw new BadObjectAttributeKey("Invalid tag key '" + tagKey + "'");
+  void addViolation(TagViolation.Kind kind, String key, String value) {
+    if (violations == null) {
+      violations = new ArrayList<>(2);
     }
+    violations.add(new TagViolation(kind, key, value));
   }
 
   /**
@@ -215,6 +222,7 @@ public class InstanceData {
    *
    * @return true if instance is currently running
    */
+  @Override
   public final boolean isRunning() {
     return running;
   }
@@ -231,11 +239,31 @@ public class InstanceData {
     return (Date) launchTime.clone();
   }
 
+  /**
+   * Getter for launch time without a copy.
+   *
+   * @return launch time in epoch milliseconds, Long.MAX_VALUE if unknown
+   */
+  @Override
+  public final long getLaunchMillis() {
+    return launchTime == null ? Long.MAX_VALUE : launchTime.getTime();
+  }
+
+  /**
+   * Getter for policy tags were checked against.
+   *
+   * @return policy
+   */
+  Policy getPolicy() {
+    return policy;
+  }
+
   /**
    * Getter for region.
    *
    * @return region
    */
+  @Override
   public String getRegion() {
     return region;
   }
@@ -250,11 +278,57 @@ public class InstanceData {
   }
 
   /**
-   * Getter for tag value errors.
+   * Getter for account.
+   *
+   * @return account id, null outside multi-account mode
+   */
+  @Override
+  public String getAccount() {
+    return account;
+  }
+
+  /**
+   * Setter for account.
+   *
+   * @param account account id
+   */
+  public void setAccount(String account) {
+    this.account = account;
+  }
+
+  /**
+   * Check whether any tag problem was found.
+   *
+   * @return true if there are tag violations
+   */
+  @Override
+  public boolean hasTagViolations() {
+    return violations != null;
+  }
+
+  /**
+   * Getter for tag violations.
+   *
+   * @return tag problems in the order tags were processed
+   */
+  @Override
+  public List<TagViolation> getTagViolations() {
+    if (violations == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(violations);
+  }
+
+  /**
+   * Getter for tag value errors, formatted on every call.
    *
    * @return list that contains tag value errors
    */
   public List<String> getTagValueErrors() {
-    return tagValueErrors;
+    final List<String> messages = new ArrayList<>();
+    for (TagViolation violation : getTagViolations()) {
+      messages.add(violation.getMessage());
+    }
+    return messages;
   }
 }
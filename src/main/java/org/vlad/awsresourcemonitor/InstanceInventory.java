@@ -0,0 +1,316 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compact list of collected instances.
+ * Every instance is kept as a row of dictionary codes in a few primitive arrays rather
+ * than as an InstanceData with its attribute objects. get returns a fresh InstanceData
+ * built from the row, so changes to it are not stored back unless passed to set.
+ * Passes that only read go through the row getters or a {@link Row} cursor instead,
+ * which read the columns in place.
+ * Not thread safe, callers collecting from several threads wrap it or merge per thread
+ * inventories.
+ */
+public final class InstanceInventory extends AbstractList<InstanceData> {
+
+  private static final Policy.Slot[] SLOTS = {
+    Policy.Slot.LIFECYCLE, Policy.Slot.PROJECT, Policy.Slot.SERVICE,
+    Policy.Slot.OWNER, Policy.Slot.CHARGE_LINE, Policy.Slot.ENVIRONMENT};
+  private static final TagViolation.Kind[] KINDS = TagViolation.Kind.values();
+  // what getLaunchMillis reports for an unknown launch time
+  private static final long NO_LAUNCH_TIME = Long.MAX_VALUE;
+
+  private final TagDictionary dictionary;
+  // nearly always a single policy per run, rows refer to it by index
+  private final List<Policy> policies = new ArrayList<>(1);
+
+  private int size;
+  private int[] names = new int[16];
+  private int[] regions = new int[16];
+  private int[] accounts = new int[16];
+  private int[] policyIds = new int[16];
+  private long[] launchTimes = new long[16];
+  private final BitSet running = new BitSet();
+  private int[] tags = new int[16 * SLOTS.length];
+  // kind, key and value of every violation, row i owns [violationEnd[i - 1], violationEnd[i])
+  private int[] violationEnd = new int[16];
+  private int[] violations = new int[16];
+
+  /**
+   * Create empty inventory.
+   *
+   * @param dictionary dictionary shared by the inventories of a run
+   */
+  public InstanceInventory(TagDictionary dictionary) {
+    this.dictionary = dictionary;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean add(InstanceData data) {
+    if (size == names.length) {
+      grow();
+    }
+    size++;
+    write(size - 1, data);
+    modCount++;
+    return true;
+  }
+
+  @Override
+  public InstanceData set(int index, InstanceData data) {
+    final InstanceData previous = get(index);
+    final int start = index == 0 ? 0 : violationEnd[index - 1];
+    if (index == size - 1 || violationEnd[index] - start == 3 * data.getTagViolations().size()) {
+      write(index, data);
+    } else {
+      // violation lists are packed in row order, rewrite the tail
+      final List<InstanceData> tail = new ArrayList<>(subList(index + 1, size));
+      size = index;
+      add(data);
+      addAll(tail);
+    }
+    return previous;
+  }
+
+  @Override
+  public InstanceData get(int index) {
+    checkIndex(index);
+
+    final long launch = launchTimes[index];
+    final InstanceData data = new InstanceData(policies.get(policyIds[index]),
+      dictionary.decode(names[index]), running.get(index),
+      launch == NO_LAUNCH_TIME ? null : new Date(launch));
+    data.setRegion(dictionary.decode(regions[index]));
+    data.setAccount(dictionary.decode(accounts[index]));
+
+    final int base = index * SLOTS.length;
+    for (int i = 0; i < SLOTS.length; i++) {
+      if (tags[base + i] != 0) {
+        data.restoreValue(SLOTS[i], dictionary.decode(tags[base + i]));
+      }
+    }
+
+    for (int i = index == 0 ? 0 : violationEnd[index - 1]; i < violationEnd[index]; i += 3) {
+      data.addViolation(KINDS[violations[i]], dictionary.decode(violations[i + 1]),
+        dictionary.decode(violations[i + 2]));
+    }
+    return data;
+  }
+
+  /**
+   * Get a cursor for reading rows in place, one per thread.
+   *
+   * @return cursor, positioned on no row until moved
+   */
+  public Row row() {
+    return new Row();
+  }
+
+  public String getName(int index) {
+    return dictionary.decode(names[checkIndex(index)]);
+  }
+
+  public String getRegion(int index) {
+    return dictionary.decode(regions[checkIndex(index)]);
+  }
+
+  public String getAccount(int index) {
+    return dictionary.decode(accounts[checkIndex(index)]);
+  }
+
+  public boolean isRunning(int index) {
+    return running.get(checkIndex(index));
+  }
+
+  public long getLaunchMillis(int index) {
+    return launchTimes[checkIndex(index)];
+  }
+
+  /**
+   * Get value of a policy tag of a row.
+   *
+   * @param index row index
+   * @param slot  attribute the tag is stored in
+   * @return tag value, null if the instance has no valid value for it
+   */
+  public String getTag(int index, Policy.Slot slot) {
+    checkIndex(index);
+    if (slot == Policy.Slot.NAME) {
+      return dictionary.decode(names[index]);
+    }
+    for (int i = 0; i < SLOTS.length; i++) {
+      if (SLOTS[i] == slot) {
+        return dictionary.decode(tags[index * SLOTS.length + i]);
+      }
+    }
+    return null;
+  }
+
+  public boolean hasTagViolations(int index) {
+    return violationEnd[checkIndex(index)] > (index == 0 ? 0 : violationEnd[index - 1]);
+  }
+
+  /**
+   * Get tag violations of a row, built on every call.
+   *
+   * @param index row index
+   * @return tag problems in the order tags were processed
+   */
+  public List<TagViolation> getTagViolations(int index) {
+    final int start = index == 0 ? 0 : violationEnd[checkIndex(index) - 1];
+    if (violationEnd[index] == start) {
+      return Collections.emptyList();
+    }
+    final List<TagViolation> list = new ArrayList<>((violationEnd[index] - start) / 3);
+    for (int i = start; i < violationEnd[index]; i += 3) {
+      list.add(new TagViolation(KINDS[violations[i]], dictionary.decode(violations[i + 1]),
+        dictionary.decode(violations[i + 2])));
+    }
+    return Collections.unmodifiableList(list);
+  }
+
+  /**
+   * Tag every row with an account, in place.
+   *
+   * @param account account id
+   */
+  public void setAccount(String account) {
+    Arrays.fill(accounts, 0, size, dictionary.encode(account));
+  }
+
+  private int checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return index;
+  }
+
+  /**
+   * Cursor reading one row at a time through the row getters.
+   * Moving it allocates nothing, so a pass over the inventory costs no object per row.
+   */
+  public final class Row implements InstanceView {
+
+    private int index = -1;
+
+    private Row() {
+    }
+
+    /**
+     * Move to a row.
+     *
+     * @param rowIndex row index
+     * @return this cursor
+     */
+    public Row moveTo(int rowIndex) {
+      this.index = checkIndex(rowIndex);
+      return this;
+    }
+
+    @Override
+    public String getName() {
+      return InstanceInventory.this.getName(index);
+    }
+
+    @Override
+    public String getRegion() {
+      return InstanceInventory.this.getRegion(index);
+    }
+
+    @Override
+    public String getAccount() {
+      return InstanceInventory.this.getAccount(index);
+    }
+
+    @Override
+    public boolean isRunning() {
+      return InstanceInventory.this.isRunning(index);
+    }
+
+    @Override
+    public long getLaunchMillis() {
+      return InstanceInventory.this.getLaunchMillis(index);
+    }
+
+    @Override
+    public String getTagValue(Policy.Slot slot) {
+      return getTag(index, slot);
+    }
+
+    @Override
+    public boolean hasTagViolations() {
+      return InstanceInventory.this.hasTagViolations(index);
+    }
+
+    @Override
+    public List<TagViolation> getTagViolations() {
+      return InstanceInventory.this.getTagViolations(index);
+    }
+  }
+
+  private void write(int index, InstanceData data) {
+    names[index] = dictionary.encode(data.name);
+    regions[index] = dictionary.encode(data.getRegion());
+    accounts[index] = dictionary.encode(data.getAccount());
+    policyIds[index] = policyId(data.getPolicy());
+    launchTimes[index] = data.getLaunchMillis();
+    running.set(index, data.isRunning());
+
+    final int base = index * SLOTS.length;
+    for (int i = 0; i < SLOTS.length; i++) {
+      tags[base + i] = dictionary.encode(data.getTagValue(SLOTS[i]));
+    }
+
+    int end = index == 0 ? 0 : violationEnd[index - 1];
+    for (TagViolation violation : data.getTagViolations()) {
+      if (end + 3 > violations.length) {
+        violations = Arrays.copyOf(violations, Math.max(violations.length * 2, end + 3));
+      }
+      violations[end++] = violation.getKind().ordinal();
+      violations[end++] = dictionary.encode(violation.getKey());
+      violations[end++] = dictionary.encode(violation.getValue());
+    }
+    violationEnd[index] = end;
+  }
+
+  private int policyId(Policy policy) {
+    for (int i = 0; i < policies.size(); i++) {
+      if (policies.get(i) == policy) {
+        return i;
+      }
+    }
+    policies.add(policy);
+    return policies.size() - 1;
+  }
+
+  private void grow() {
+    final int capacity = names.length * 2;
+    names = Arrays.copyOf(names, capacity);
+    regions = Arrays.copyOf(regions, capacity);
+    accounts = Arrays.copyOf(accounts, capacity);
+    policyIds = Arrays.copyOf(policyIds, capacity);
+    launchTimes = Arrays.copyOf(launchTimes, capacity);
+    tags = Arrays.copyOf(tags, capacity * SLOTS.length);
+    violationEnd = Arrays.copyOf(violationEnd, capacity);
+  }
+}
@@ -0,0 +1,158 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which instances are assessed.
+ * Built once per run from --namePattern, --include and --exclude. A selector is either
+ * a name regular expression or a tag selector such as Project=Zebra or Environment!=Prod,
+ * whose value is a regular expression too. Selectors on the same tag are merged into
+ * one pattern set, so the cost of a check depends on the number of tags used, not on
+ * the number of selectors. Negated selectors on the same tag read as none of, so
+ * Environment!=Prod with Environment!=Stage selects instances in neither.
+ */
+public final class InstanceSelector {
+
+  private final PatternSet names;
+  private final Clause[] includes;
+  private final Clause[] excludes;
+
+  private InstanceSelector(PatternSet names, Clause[] includes, Clause[] excludes) {
+    this.names = names;
+    this.includes = includes;
+    this.excludes = excludes;
+  }
+
+  /**
+   * Compile selector.
+   *
+   * @param namePattern regular expression every name must match
+   * @param include     selectors of which at least one must match, empty to include all
+   * @param exclude     selectors of which none may match
+   * @return selector
+   * @throws IllegalArgumentException if a pattern is not a valid regular expression
+   */
+  public static InstanceSelector compile(String namePattern, List<String> include,
+                                         List<String> exclude) {
+    final PatternSet names = new PatternSet.Builder()
+      .add(namePattern == null ? ".*" : namePattern).build();
+    return new InstanceSelector(names, clauses(include), clauses(exclude));
+  }
+
+  private static Clause[] clauses(List<String> selectors) {
+    if (selectors == null) {
+      return new Clause[0];
+    }
+
+    // one pattern set per tag and comparison
+    final Map<String, ClauseBuilder> byTag = new LinkedHashMap<>();
+    for (String selector : selectors) {
+      Policy.Slot slot = Policy.Slot.NAME;
+      boolean negated = false;
+      String pattern = selector;
+
+      final int eq = selector.indexOf('=');
+      if (eq > 0) {
+        final boolean not = selector.charAt(eq - 1) == '!';
+        final Policy.Slot tagSlot = slotOf(selector.substring(0, not ? eq - 1 : eq));
+        if (tagSlot != null) {
+          slot = tagSlot;
+          negated = not;
+          pattern = selector.substring(eq + 1);
+        }
+      }
+
+      final String key = slot + (negated ? "!=" : "=");
+      ClauseBuilder builder = byTag.get(key);
+      if (builder == null) {
+        builder = new ClauseBuilder(slot, negated);
+        byTag.put(key, builder);
+      }
+      builder.values.add(pattern);
+    }
+
+    final List<Clause> clauses = new ArrayList<>(byTag.size());
+    for (ClauseBuilder builder : byTag.values()) {
+      clauses.add(new Clause(builder.slot, builder.negated, builder.values.build()));
+    }
+    return clauses.toArray(new Clause[clauses.size()]);
+  }
+
+  private static Policy.Slot slotOf(String tagName) {
+    if ("Env".equals(tagName)) {
+      return Policy.Slot.ENVIRONMENT;
+    }
+    for (Policy.Slot slot : Policy.Slot.values()) {
+      if (tagName.equals(slot.getTagName())) {
+        return slot;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Check if instance is to be assessed.
+   *
+   * @param data instance
+   * @return true if instance is selected
+   */
+  public boolean matches(InstanceView data) {
+    if (!names.matches(data.getName())) {
+      return false;
+    }
+    if (includes.length > 0 && !anyMatches(includes, data)) {
+      return false;
+    }
+    return !anyMatches(excludes, data);
+  }
+
+  private static boolean anyMatches(Clause[] clauses, InstanceView data) {
+    for (Clause clause : clauses) {
+      if (clause.matches(data)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Selectors on one tag, a missing tag never equals anything.
+   */
+  private static final class Clause {
+    private final Policy.Slot slot;
+    private final boolean negated;
+    private final PatternSet values;
+
+    private Clause(Policy.Slot slot, boolean negated, PatternSet values) {
+      this.slot = slot;
+      this.negated = negated;
+      this.values = values;
+    }
+
+    private boolean matches(InstanceView data) {
+      return values.matches(data.getTagValue(slot)) != negated;
+    }
+  }
+
+  private static final class ClauseBuilder {
+    private final Policy.Slot slot;
+    private final boolean negated;
+    private final PatternSet.Builder values = new PatternSet.Builder();
+
+    private ClauseBuilder(Policy.Slot slot, boolean negated) {
+      this.slot = slot;
+      this.negated = negated;
+    }
+  }
+}
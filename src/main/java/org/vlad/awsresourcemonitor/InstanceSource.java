@@ -0,0 +1,22 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+/**
+ * Producer of instances, such as a collector sweeping regions.
+ */
+public interface InstanceSource {
+
+  /**
+   * Collect instances handing every one of them to the consumer.
+   *
+   * @param out receiver of collected instances
+   */
+  void collect(InstanceConsumer out);
+}
@@ -0,0 +1,51 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.util.List;
+
+/**
+ * What assessment reads of a collected instance.
+ * Implemented by InstanceData and by the row cursor of an InstanceInventory, so an
+ * inventory is assessed without building an InstanceData per row.
+ */
+public interface InstanceView {
+
+  String getName();
+
+  String getRegion();
+
+  String getAccount();
+
+  boolean isRunning();
+
+  /**
+   * Getter for launch time.
+   *
+   * @return launch time in epoch milliseconds, Long.MAX_VALUE if unknown
+   */
+  long getLaunchMillis();
+
+  /**
+   * Get value of a policy tag.
+   *
+   * @param slot attribute the tag is stored in
+   * @return tag value, null if the instance has no valid value for it
+   */
+  String getTagValue(Policy.Slot slot);
+
+  boolean hasTagViolations();
+
+  /**
+   * Getter for tag violations.
+   *
+   * @return tag problems in the order tags were processed, safe to keep
+   */
+  List<TagViolation> getTagViolations();
+}
@@ -14,16 +14,29 @@ import org.xml.sax.SAXException;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
+import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Various utility methods to make working with JAXB bit easier.
+ * Contexts and compiled schemas are thread safe and costly to build, so they are made
+ * once per class and per class loader and schema file and kept for the life of the process.
+ * Marshallers are not thread safe and are still created on every call.
  */
 
 public final class JaxbUtil {
 
+  private static final ConcurrentMap<Class<?>, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<ClassLoader, ConcurrentMap<String, Schema>> SCHEMAS =
+    new ConcurrentHashMap<>();
+
   private JaxbUtil() {
 
   }
@@ -51,17 +64,18 @@ public final class JaxbUtil {
   /**
    * Create marshaller for specified class loader, schema and class.
    * @param cL  class loader to use
-   * @param schema schema
+   * @param schema schema, null to marshal without validation
    * @param clazz  class
    * @return marshaller
    */
   public static Marshaller createMarshaller(final ClassLoader cL, final String schema, final Class<?> clazz)
     throws JAXBException, SAXException {
 
-    final JAXBContext jaxbContext = JAXBContext.newInstance(clazz);
-    final Marshaller marshaller = jaxbContext.createMarshaller();
+    final Marshaller marshaller = getContext(clazz).createMarshaller();
 
-    marshaller.setSchema(getSchema(cL, schema));
+    if (schema != null) {
+      marshaller.setSchema(getSchema(cL, schema));
+    }
     marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
 
 
@@ -69,16 +83,72 @@ public final class JaxbUtil {
   }
 
   /**
-   * Load schema from app resources.
+   * Get JAXB context for class, creating it on first use.
+   * @param clazz class bound by the context
+   * @return shared context
+   */
+  public static JAXBContext getContext(final Class<?> clazz) throws JAXBException {
+    JAXBContext context = CONTEXTS.get(clazz);
+    if (context == null) {
+      // two threads may both build one, the first stored wins
+      final JAXBContext created = JAXBContext.newInstance(clazz);
+      context = CONTEXTS.putIfAbsent(clazz, created);
+      if (context == null) {
+        context = created;
+      }
+    }
+    return context;
+  }
+
+  /**
+   * Load schema from app resources, compiling it on first use.
    * @param cL   class loader to use
    * @param schema schema file
    * @return  loaded JAXB schema
    */
   public static Schema getSchema(final ClassLoader cL, final String schema) throws SAXException {
 
-    final SchemaFactory schemaFactory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
-    final URL schemaFile = cL.getResource(schema);
-    return schemaFactory.newSchema(schemaFile);
+    ConcurrentMap<String, Schema> loaded = SCHEMAS.get(cL);
+    if (loaded == null) {
+      final ConcurrentMap<String, Schema> created = new ConcurrentHashMap<>();
+      loaded = SCHEMAS.putIfAbsent(cL, created);
+      if (loaded == null) {
+        loaded = created;
+      }
+    }
+
+    Schema compiled = loaded.get(schema);
+    if (compiled == null) {
+      // SchemaFactory is not thread safe, every miss gets its own
+      final SchemaFactory schemaFactory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
+      final URL schemaFile = cL.getResource(schema);
+      final Schema created = schemaFactory.newSchema(schemaFile);
+      compiled = loaded.putIfAbsent(schema, created);
+      if (compiled == null) {
+        compiled = created;
+      }
+    }
+    return compiled;
+  }
+
+  /**
+   * Validate written XML file against schema as a separate pass.
+   * @param file   XML file
+   * @param schema schema file
+   */
+  public static void validate(final File file, final String schema)
+    throws SAXException, IOException {
+    validate(new StreamSource(file), schema);
+  }
+
+  /**
+   * Validate XML source against schema as a separate pass.
+   * @param source XML source
+   * @param schema schema file
+   */
+  public static void validate(final Source source, final String schema)
+    throws SAXException, IOException {
+    getSchema(getDefaultClassLoader(), schema).newValidator().validate(source);
   }
 
 }
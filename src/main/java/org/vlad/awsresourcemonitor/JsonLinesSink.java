@@ -0,0 +1,99 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+
+package org.vlad.awsresourcemonitor;
+
+import com.jaxb.junit.Testcase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes every test case as a JSON object on its own line.
+ */
+public class JsonLinesSink implements ReportSink {
+
+  private final Writer out;
+  private final StringBuilder line = new StringBuilder(256);
+
+  /**
+   * Create sink.
+   *
+   * @param file output file
+   */
+  public JsonLinesSink(File file) throws IOException {
+    out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void write(Testcase testCase) throws IOException {
+    line.setLength(0);
+    line.append('{');
+    field("classname", testCase.getClassname()).append(',');
+    field("name", testCase.getName()).append(',');
+    field("status", PolicyReport.getOutcome(testCase)).append(',');
+    field("message", PolicyReport.getMessage(testCase)).append("}\n");
+    out.append(line);
+  }
+
+  private StringBuilder field(String name, String value) {
+    line.append('"').append(name).append("\":");
+    return quote(line, value);
+  }
+
+  /**
+   * Append JSON string literal.
+   *
+   * @param json  text to append to
+   * @param value string, null appends null
+   * @return json
+   */
+  static StringBuilder quote(StringBuilder json, String value) {
+    if (value == null) {
+      return json.append("null");
+    }
+
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            json.append(String.format("\\u%04x", (int) c));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+    return json.append('"');
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,265 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.jaxb.junit.Error;
+import com.jaxb.junit.Failure;
+import com.jaxb.junit.Testcase;
+import org.vlad.awsresourcemonitor.exception.XmlException;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a JUnit report one test case at a time.
+ * Test cases go through a StAX writer straight to a buffered file channel, so neither
+ * a JAXB tree nor the report text is ever held in memory. The layout is the same as the
+ * formatted JAXB output. When the counts aren't known up front, the suite start tag
+ * gets blank room that close fills in with the tests and failures attributes. Writers
+ * over a plain stream, e.g. a gzip one, can't go back and need the counts up front.
+ */
+public class JunitReportWriter implements Closeable {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // fits tests and failures attributes with the largest int values
+  private static final int COUNTS_WIDTH = 48;
+  private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+
+  private final FileChannel channel;
+  private final OutputStream out;
+  private final XMLStreamWriter xml;
+  private final long countsOffset;
+  private int tests;
+  private int failures;
+
+  /**
+   * Start report whose counts are filled in on close.
+   *
+   * @param file      report file
+   * @param suiteName test suite name
+   */
+  public JunitReportWriter(File file, String suiteName) throws IOException, XmlException {
+    this(file, suiteName, -1, -1);
+  }
+
+  /**
+   * Start report.
+   *
+   * @param file      report file
+   * @param suiteName test suite name
+   * @param tests     number of test cases that will be written, -1 if not known yet
+   * @param failures  number of failing test cases, -1 if not known yet
+   */
+  public JunitReportWriter(File file, String suiteName, int tests, int failures)
+    throws IOException, XmlException {
+
+    this(FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+      StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), null, suiteName,
+      tests, failures);
+  }
+
+  /**
+   * Start report on a stream, which is closed with the writer.
+   *
+   * @param stream    stream to write to
+   * @param suiteName test suite name
+   * @param tests     number of test cases that will be written
+   * @param failures  number of failing test cases
+   */
+  public JunitReportWriter(OutputStream stream, String suiteName, int tests, int failures)
+    throws IOException, XmlException {
+
+    this(null, stream, suiteName, tests, failures);
+  }
+
+  private JunitReportWriter(FileChannel channel, OutputStream stream, String suiteName,
+                            int tests, int failures) throws IOException, XmlException {
+
+    if (channel == null && (tests < 0 || failures < 0)) {
+      stream.close();
+      throw new IllegalArgumentException("Counts are required when writing to a stream");
+    }
+    this.channel = channel;
+    out = new BufferedOutputStream(channel == null ? stream : Channels.newOutputStream(channel),
+      BUFFER_SIZE);
+
+    final StringBuilder header = new StringBuilder(128)
+      .append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+      .append("<testsuites>\n")
+      .append("    <testsuite name=\"").append(escape(suiteName)).append('"');
+
+    if (tests < 0 || failures < 0) {
+      countsOffset = header.toString().getBytes(StandardCharsets.UTF_8).length;
+      for (int i = 0; i < COUNTS_WIDTH; i++) {
+        header.append(' ');
+      }
+    } else {
+      countsOffset = -1;
+      header.append(counts(tests, failures));
+    }
+    header.append('>');
+    out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+
+    try {
+      xml = FACTORY.createXMLStreamWriter(out, "UTF-8");
+    } catch (XMLStreamException e) {
+      out.close();
+      throw new XmlException(e);
+    }
+  }
+
+  private static String counts(int tests, int failures) {
+    return " tests=\"" + tests + "\" failures=\"" + failures + '"';
+  }
+
+  private static String escape(String value) {
+    return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+      .replace("\"", "&quot;");
+  }
+
+  /**
+   * Append test case.
+   *
+   * @param testCase test case
+   */
+  public void write(Testcase testCase) throws XmlException {
+    try {
+      xml.writeCharacters("\n        ");
+      final boolean empty = testCase.getSkipped() == null && testCase.getError().isEmpty()
+        && testCase.getFailure().isEmpty() && testCase.getSystemOut().isEmpty()
+        && testCase.getSystemErr().isEmpty();
+      if (empty) {
+        xml.writeEmptyElement("testcase");
+      } else {
+        xml.writeStartElement("testcase");
+      }
+      attribute("name", testCase.getName());
+      attribute("assertions", testCase.getAssertions());
+      attribute("time", testCase.getTime());
+      attribute("classname", testCase.getClassname());
+      attribute("status", testCase.getStatus());
+
+      if (!empty) {
+        if (testCase.getSkipped() != null) {
+          text("skipped", testCase.getSkipped());
+        }
+        for (Error error : testCase.getError()) {
+          problem("error", error.getType(), error.getMessage(), error.getContent());
+        }
+        for (Failure failure : testCase.getFailure()) {
+          problem("failure", failure.getType(), failure.getMessage(), failure.getContent());
+        }
+        for (String line : testCase.getSystemOut()) {
+          text("system-out", line);
+        }
+        for (String line : testCase.getSystemErr()) {
+          text("system-err", line);
+        }
+        xml.writeCharacters("\n        ");
+        xml.writeEndElement();
+      }
+    } catch (XMLStreamException e) {
+      throw new XmlException(e);
+    }
+
+    tests++;
+    if (!testCase.getFailure().isEmpty()) {
+      failures++;
+    }
+  }
+
+  private void attribute(String name, String value) throws XMLStreamException {
+    if (value != null) {
+      xml.writeAttribute(name, value);
+    }
+  }
+
+  private void problem(String element, String type, String message, String content)
+    throws XMLStreamException {
+
+    xml.writeCharacters("\n            ");
+    if (content == null || content.isEmpty()) {
+      xml.writeEmptyElement(element);
+    } else {
+      xml.writeStartElement(element);
+    }
+    attribute("type", type);
+    attribute("message", message);
+    if (content != null && !content.isEmpty()) {
+      xml.writeCharacters(content);
+      xml.writeEndElement();
+    }
+  }
+
+  private void text(String element, String value) throws XMLStreamException {
+    xml.writeCharacters("\n            ");
+    xml.writeStartElement(element);
+    xml.writeCharacters(value);
+    xml.writeEndElement();
+  }
+
+  /**
+   * Get number of test cases written so far.
+   *
+   * @return test case count
+   */
+  public int getTests() {
+    return tests;
+  }
+
+  /**
+   * Get number of failing test cases written so far.
+   *
+   * @return failing test case count
+   */
+  public int getFailures() {
+    return failures;
+  }
+
+  /**
+   * Finish the document and fill in the counts if they weren't known up front.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      xml.writeCharacters("\n    ");
+      xml.flush();
+      xml.close();
+      out.write("</testsuite>\n</testsuites>\n".getBytes(StandardCharsets.UTF_8));
+      out.flush();
+
+      if (countsOffset >= 0) {
+        final ByteBuffer patch = ByteBuffer.wrap(
+          counts(tests, failures).getBytes(StandardCharsets.UTF_8));
+        while (patch.hasRemaining()) {
+          channel.write(patch, countsOffset + patch.position());
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Failed to finish JUnit report", e);
+    } finally {
+      if (channel != null) {
+        channel.close();
+      } else {
+        out.close();
+      }
+    }
+  }
+}
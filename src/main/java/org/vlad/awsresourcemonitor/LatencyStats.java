@@ -0,0 +1,91 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulates call latencies grouped by key.
+ */
+public class LatencyStats {
+
+  private final String name;
+  private final Map<String, Entry> entries = new TreeMap<>();
+
+  public LatencyStats(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Record single call.
+   *
+   * @param key   group key, usually region name
+   * @param nanos call duration in nanoseconds
+   */
+  public synchronized void record(String key, long nanos) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry();
+      entries.put(key, entry);
+    }
+    entry.count++;
+    entry.totalNanos += nanos;
+    entry.maxNanos = Math.max(entry.maxNanos, nanos);
+  }
+
+  /**
+   * Get number of calls recorded for the key.
+   *
+   * @param key group key
+   * @return number of calls
+   */
+  public synchronized long getCount(String key) {
+    final Entry entry = entries.get(key);
+    return entry == null ? 0 : entry.count;
+  }
+
+  /**
+   * Get total time spent in calls for the key.
+   *
+   * @param key group key
+   * @return total time in milliseconds
+   */
+  public synchronized long getTotalMillis(String key) {
+    final Entry entry = entries.get(key);
+    return entry == null ? 0 : TimeUnit.NANOSECONDS.toMillis(entry.totalNanos);
+  }
+
+  /**
+   * Get one summary line per key.
+   *
+   * @return summary lines ordered by key
+   */
+  public synchronized List<String> getSummary() {
+    final List<String> lines = new ArrayList<>(entries.size());
+    for (Map.Entry<String, Entry> e : entries.entrySet()) {
+      final Entry entry = e.getValue();
+      lines.add(String.format("%s %s: calls=%d total=%dms avg=%dms max=%dms",
+        name, e.getKey(), entry.count,
+        TimeUnit.NANOSECONDS.toMillis(entry.totalNanos),
+        TimeUnit.NANOSECONDS.toMillis(entry.totalNanos / entry.count),
+        TimeUnit.NANOSECONDS.toMillis(entry.maxNanos)));
+    }
+    return lines;
+  }
+
+  private static final class Entry {
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+  }
+}
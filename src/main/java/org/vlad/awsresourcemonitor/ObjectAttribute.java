@@ -22,18 +22,46 @@ public class ObjectAttribute {
   private final String name;
 
 
+  /**
+   * Create attribute.
+   *
+   * @param name          tag name used in error messages
+   * @param allowedValues allowed values, shared and never modified, null to allow any value
+   */
   public ObjectAttribute(String name, Set<String> allowedValues) {
     this.allowedValues = allowedValues;
     this.name = name;
   }
 
+  /**
+   * Set value if it is allowed.
+   *
+   * @param value tag value
+   * @throws BadObjectAttributeValue if the value is not allowed
+   */
   public final void setValue(final String value) throws BadObjectAttributeValue {
-    if (!allowedValues.contains(value)) {
+    if (!trySetValue(value)) {
       throw new BadObjectAttributeValue("Invalid " + name + " tag value '" + value + '\'');
     }
+  }
+
+  /**
+   * Set value if it is allowed, without throwing.
+   *
+   * @param value tag value
+   * @return false if the value is not allowed, the attribute is left unchanged
+   */
+  public final boolean trySetValue(final String value) {
+    if (allowedValues != null && !allowedValues.contains(value)) {
+      return false;
+    }
 
     this.value = value;
+    return true;
+  }
 
+  public final String getName() {
+    return name;
   }
 
   public final String getValue() {
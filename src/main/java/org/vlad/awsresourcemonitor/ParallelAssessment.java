@@ -0,0 +1,123 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Assesses a list of collected instances on a fork/join pool.
+ * The list is cut into fixed chunks, every chunk fills its own result log, so workers
+ * share nothing while they run. Logs are joined in chunk order afterwards, which gives
+ * the same order as assessing the list on one thread.
+ */
+public class ParallelAssessment {
+
+  private static final int CHUNK_SIZE = 256;
+
+  private final AWSResourceMonitor monitor;
+  private final int parallelism;
+  private final int chunkSize;
+
+  /**
+   * Create assessment.
+   *
+   * @param monitor     monitor evaluating instances
+   * @param parallelism number of workers
+   */
+  public ParallelAssessment(AWSResourceMonitor monitor, int parallelism) {
+    this(monitor, parallelism, CHUNK_SIZE);
+  }
+
+  /**
+   * Create assessment.
+   *
+   * @param monitor     monitor evaluating instances
+   * @param parallelism number of workers
+   * @param chunkSize   number of instances a worker assesses in one go
+   */
+  public ParallelAssessment(AWSResourceMonitor monitor, int parallelism, int chunkSize) {
+    this.monitor = monitor;
+    this.parallelism = Math.max(1, parallelism);
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  /**
+   * Assess instances and hand results to the monitor in list order.
+   *
+   * @param instances instances to assess, an inventory is read in place
+   */
+  public void run(List<InstanceData> instances) {
+
+    final int chunks = (instances.size() + chunkSize - 1) / chunkSize;
+    if (chunks == 0) {
+      return;
+    }
+    final ResultLog[] buffers = new ResultLog[chunks];
+
+    final ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      pool.invoke(new Chunks(instances, buffers, 0, chunks));
+    } finally {
+      pool.shutdown();
+    }
+
+    // join completed before this point, so every slot is visible here
+    for (ResultLog buffer : buffers) {
+      monitor.addResults(buffer);
+    }
+  }
+
+  /**
+   * Range of chunks, split in halves until a single chunk is left.
+   */
+  private final class Chunks extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<InstanceData> instances;
+    private final ResultLog[] buffers;
+    private final int from;
+    private final int to;
+
+    Chunks(List<InstanceData> instances, ResultLog[] buffers, int from, int to) {
+      this.instances = instances;
+      this.buffers = buffers;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        final int mid = (from + to) >>> 1;
+        invokeAll(new Chunks(instances, buffers, from, mid),
+          new Chunks(instances, buffers, mid, to));
+        return;
+      }
+
+      final int start = from * chunkSize;
+      final int end = Math.min(instances.size(), start + chunkSize);
+      final ResultLog buffer = new ResultLog(end - start);
+      if (instances instanceof InstanceInventory) {
+        // each chunk reads rows through its own cursor, nothing is built per instance
+        final InstanceInventory.Row row = ((InstanceInventory) instances).row();
+        for (int i = start; i < end; i++) {
+          monitor.evaluate(row.moveTo(i), buffer);
+        }
+      } else {
+        for (int i = start; i < end; i++) {
+          monitor.evaluate(instances.get(i), buffer);
+        }
+      }
+      buffers[from] = buffer;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Set of regular expressions matched against whole values.
+ * Literal patterns go into a hash set and literal prefixes followed by .* into a trie,
+ * so adding such patterns doesn't make matching slower. Everything else is merged into
+ * a single regular expression compiled once, except patterns with capturing groups.
+ * Merging renumbers groups and would break their backreferences, so those are compiled
+ * and matched on their own.
+ */
+public final class PatternSet {
+
+  private static final String REGEX_META = ".[](){}|+*?^$\\";
+
+  private final boolean any;
+  private final Set<String> literals;
+  private final Node prefixes;
+  private final Pattern regex;
+  private final Pattern[] grouped;
+
+  private PatternSet(Builder builder) {
+    any = builder.any;
+    literals = new HashSet<>(builder.literals);
+    prefixes = builder.prefixes;
+    regex = builder.regexes.isEmpty() ? null : Pattern.compile(join(builder.regexes));
+    grouped = builder.grouped.toArray(new Pattern[builder.grouped.size()]);
+  }
+
+  private static String join(List<String> regexes) {
+    if (regexes.size() == 1) {
+      return regexes.get(0);
+    }
+    final StringBuilder joined = new StringBuilder();
+    for (String regex : regexes) {
+      if (joined.length() > 0) {
+        joined.append('|');
+      }
+      joined.append("(?:").append(regex).append(')');
+    }
+    return joined.toString();
+  }
+
+  /**
+   * Check value against the patterns.
+   *
+   * @param value value to check, may be null
+   * @return true if any pattern matches the whole value, never for null
+   */
+  public boolean matches(String value) {
+    if (value == null) {
+      return false;
+    }
+    if (any || literals.contains(value) || hasPrefix(value)) {
+      return true;
+    }
+    if (regex != null && regex.matcher(value).matches()) {
+      return true;
+    }
+    for (Pattern pattern : grouped) {
+      if (pattern.matcher(value).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean hasPrefix(String value) {
+    Node node = prefixes;
+    for (int i = 0; i < value.length(); i++) {
+      if (node.terminal) {
+        return true;
+      }
+      node = node.next.get(value.charAt(i));
+      if (node == null) {
+        return false;
+      }
+    }
+    return node.terminal;
+  }
+
+  /**
+   * Trie node, terminal when a prefix ends here.
+   */
+  private static final class Node {
+    private final Map<Character, Node> next = new HashMap<>();
+    private boolean terminal;
+  }
+
+  /**
+   * Collects patterns and sorts them by the cheapest way to match them.
+   */
+  public static final class Builder {
+    private boolean any;
+    private final Set<String> literals = new HashSet<>();
+    private final Node prefixes = new Node();
+    private final List<String> regexes = new ArrayList<>();
+    private final List<Pattern> grouped = new ArrayList<>();
+
+    /**
+     * Add pattern.
+     *
+     * @param pattern regular expression the whole value must match
+     * @return this object
+     */
+    public Builder add(String pattern) {
+
+      // validate up front, so a bad pattern is reported on its own
+      final Pattern compiled = Pattern.compile(pattern);
+
+      // anchors are implied, matching always covers the whole value
+      String body = pattern;
+      if (body.startsWith("^")) {
+        body = body.substring(1);
+      }
+      if (body.endsWith("$") && !body.endsWith("\\$")) {
+        body = body.substring(0, body.length() - 1);
+      }
+
+      if (isLiteral(body)) {
+        literals.add(body);
+      } else if (body.endsWith(".*") && isLiteral(body.substring(0, body.length() - 2))) {
+        addPrefix(body.substring(0, body.length() - 2));
+      } else if (compiled.matcher("").groupCount() > 0) {
+        grouped.add(compiled);
+      } else {
+        regexes.add(pattern);
+      }
+      return this;
+    }
+
+    private void addPrefix(String prefix) {
+      if (prefix.isEmpty()) {
+        any = true;
+        return;
+      }
+
+      Node node = prefixes;
+      for (int i = 0; i < prefix.length(); i++) {
+        Node child = node.next.get(prefix.charAt(i));
+        if (child == null) {
+          child = new Node();
+          node.next.put(prefix.charAt(i), child);
+        }
+        node = child;
+      }
+      node.terminal = true;
+    }
+
+    public PatternSet build() {
+      return new PatternSet(this);
+    }
+  }
+
+  private static boolean isLiteral(String pattern) {
+    for (int i = 0; i < pattern.length(); i++) {
+      if (REGEX_META.indexOf(pattern.charAt(i)) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -8,115 +8,221 @@
 
 package org.vlad.awsresourcemonitor;
 
+import org.apache.commons.io.IOUtils;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Contains AWS resource policy.
+ * A loaded policy is immutable, so any number of threads may evaluate against it
+ * and several policies may be in use at once.
  */
 public final class Policy {
 
-  private static Policy instance;
-  private String envTagName;
+  /**
+   * Instance attribute a tag is stored in.
+   */
+  public enum Slot {
+    NAME("Name"),
+    LIFECYCLE("Lifecycle"),
+    PROJECT("Project"),
+    SERVICE("Service"),
+    OWNER("Owner"),
+    CHARGE_LINE("ChargeLine"),
+    ENVIRONMENT("Environment"),
+    /** Allowed tag without an attribute. */
+    OTHER(null);
+
+    private final String tagName;
+
+    Slot(String tagName) {
+      this.tagName = tagName;
+    }
+
+    public String getTagName() {
+      return tagName;
+    }
+  }
 
-  private Set<String> allowedRegions;
-  private Set<String> environments;
-  private Set<String> allowedTags;
-  private Set<String> chargeLines;
-  private Set<String> owners;
-  private Set<String> lifecycle;
-  private Set<String> projects;
-  private Set<String> services;
+  private static final Set<String> DEFAULT_LIFECYCLE = Collections.unmodifiableSet(new HashSet<>(
+    Arrays.asList("Permanent", "OnDemand", "POC", "Spot")));
+  private static final List<String> DEFAULT_ALLOWED_TAGS = Arrays.asList(
+    "aws:autoscaling:groupName", "aws:cloudformation:logical-id", "VPCStackPrefix",
+    "Name", "Lifecycle");
+  private static final Map<String, Slot> SLOT_BY_TAG = slotsByTag();
 
+  private static volatile Policy instance;
 
-  private Policy() {
+  private final Set<String> allowedRegions;
+  private final Set<String> environments;
+  private final Set<String> allowedTags;
+  private final Set<String> chargeLines;
+  private final Set<String> owners;
+  private final Set<String> projects;
+  private final Set<String> services;
+  private final Map<String, Slot> dispatch;
+  private final Map<Slot, Set<String>> allowedValues;
+  private final List<RuntimeRule> runtimeRules;
 
-    allowedTags = new HashSet<>();
-    lifecycle = new HashSet<>();
-    allowedRegions = new HashSet<>();
 
-    lifecycle.add("Permanent");
-    lifecycle.add("OnDemand");
-    lifecycle.add("POC");
-    lifecycle.add("Spot");
+  private Policy(Map<String, List<String>> map) throws ParseException {
 
-    allowedTags.add("aws:autoscaling:groupName");
-    allowedTags.add("aws:cloudformation:logical-id");
-    allowedTags.add("VPCStackPrefix");
+    final Set<String> tags = new HashSet<>(DEFAULT_ALLOWED_TAGS);
+    if (map.get("AllowedTags") != null) {
+      tags.addAll(map.get("AllowedTags"));
+    }
+
+    allowedRegions = freeze(section(map, "Region"));
+    projects       = loadTag(map, "Project", tags);
+    environments   = loadTag(map, map.containsKey("Environment") ? "Environment" : "Env", tags);
+    chargeLines    = loadTag(map, "ChargeLine", tags);
+    owners         = map.containsKey("Owner") ? loadTag(map, "Owner", tags) : null;
+    services       = loadTag(map, "Service", tags);
+    allowedTags    = freeze(tags);
+
+    // one lookup per tag both checks the key and finds where its value goes
+    final Map<String, Slot> table = new HashMap<>();
+    for (String tag : allowedTags) {
+      final Slot slot = SLOT_BY_TAG.get(tag);
+      table.put(tag, slot == null ? Slot.OTHER : slot);
+    }
+    dispatch = Collections.unmodifiableMap(table);
 
-    allowedTags.add("Name");
-    allowedTags.add("Lifecycle");
+    final Map<Slot, Set<String>> values = new EnumMap<>(Slot.class);
+    values.put(Slot.LIFECYCLE, DEFAULT_LIFECYCLE);
+    values.put(Slot.PROJECT, projects);
+    values.put(Slot.SERVICE, services);
+    values.put(Slot.OWNER, owners);
+    values.put(Slot.CHARGE_LINE, chargeLines);
+    values.put(Slot.ENVIRONMENT, environments);
+    allowedValues = Collections.unmodifiableMap(values);
 
-    envTagName = "Environment";
+    // entries of this section are maps, not strings
+    final List<?> maxRuntime = map.get("MaxRuntime");
+    runtimeRules = RuntimeRule.parse(maxRuntime, DEFAULT_LIFECYCLE, environments);
 
   }
 
+  private static Map<String, Slot> slotsByTag() {
+    final Map<String, Slot> map = new HashMap<>();
+    for (Slot slot : Slot.values()) {
+      if (slot.getTagName() != null) {
+        map.put(slot.getTagName(), slot);
+      }
+    }
+    map.put("Env", Slot.ENVIRONMENT);
+    return Collections.unmodifiableMap(map);
+  }
+
+  /**
+   * Get policy loaded last.
+   *
+   * @return policy
+   */
   public static Policy getInstance() {
 
-    if (instance.projects == null) {
+    final Policy current = instance;
+    if (current == null) {
       throw new IllegalStateException("Policy must be loaded first");
     }
 
-    return instance;
+    return current;
   }
 
-  public static void load(File yamlFile) throws FileNotFoundException, ParseException {
+  /**
+   * Compile policy file and make it the one returned by getInstance.
+   *
+   * @param yamlFile policy file
+   * @return compiled policy
+   */
+  public static Policy load(File yamlFile) throws FileNotFoundException, ParseException {
 
-    Yaml yaml = new Yaml();
+    final Policy policy = compile(yamlFile);
+    instance = policy;
+    return policy;
 
-    HashMap<String, List<String>> map = yaml.load(new FileReader(yamlFile));
-
-    instance.owners = null;
-
-    instance.allowedTags.addAll(map.get("AllowedTags"));
-    List<String> regions = map.get("Region");
-    instance.allowedRegions.addAll(regions);
+  }
 
-    instance.projects     = loadTag(map, "Project");
-    instance.environments = loadTag(map, "Environment");
-    instance.chargeLines  = loadTag(map, "ChargeLine");
-    if ( map.containsKey("Owner")) {
-      instance.owners = loadTag(map, "Owner");
+  /**
+   * Compile policy file without making it the current one.
+   *
+   * @param yamlFile policy file
+   * @return compiled policy
+   */
+  public static Policy compile(File yamlFile) throws FileNotFoundException, ParseException {
+
+    final FileReader reader = new FileReader(yamlFile);
+    try {
+      final Map<String, List<String>> map = new Yaml().load(reader);
+      if (map == null) {
+        throw new ParseException("Empty policy file " + yamlFile, 0);
+      }
+      return new Policy(map);
+    } finally {
+      IOUtils.closeQuietly(reader);
     }
-    instance.services     = loadTag(map, "Service");
-
 
   }
 
-  private static Set<String> loadTag(HashMap<String, List<String>> map, String name) throws ParseException {
-
-    if ((!map.containsKey(name)) && name.equals("Environment"))
-    {
-      name = "Env";
-      instance.envTagName = "Env";
-    }
+  private static List<String> section(Map<String, List<String>> map, String name)
+    throws ParseException {
 
-    List<String> valueList = map.get(name);
+    final List<String> valueList = map.get(name);
 
     if (valueList == null) {
       throw new ParseException("Missing section '" + name + "' in the policy file", 0);
     }
 
-    Set<String> set = new HashSet<>();
-    set.addAll(valueList);
-    instance.allowedTags.add(name);
-    return set;
+    return valueList;
   }
 
+  private static Set<String> loadTag(Map<String, List<String>> map, String name, Set<String> tags)
+    throws ParseException {
+
+    final Set<String> set = freeze(section(map, name));
+    tags.add(name);
+    return set;
+  }
 
-  static {
-    instance = new Policy();
+  private static Set<String> freeze(Iterable<String> values) {
+    final Set<String> set = new HashSet<>();
+    for (String value : values) {
+      set.add(value);
+    }
+    return Collections.unmodifiableSet(set);
   }
 
+  /**
+   * Find attribute a tag is stored in.
+   *
+   * @param tagKey tag key
+   * @return slot, null if the tag is not allowed
+   */
+  public Slot slotOf(String tagKey) {
+    return dispatch.get(tagKey);
+  }
 
+  /**
+   * Get values allowed for an attribute.
+   *
+   * @param slot attribute slot
+   * @return allowed values, null if any value is allowed
+   */
+  public Set<String> getAllowedValues(Slot slot) {
+    return allowedValues.get(slot);
+  }
 
   public Set<String> getAllowedRegion() {
     return allowedRegions;
@@ -147,7 +253,16 @@ public final class Policy {
   }
 
   public Set<String> getLifecycle() {
-    return lifecycle;
+    return DEFAULT_LIFECYCLE;
+  }
+
+  /**
+   * Get max runtime rules in the order they are checked.
+   *
+   * @return rules from the MaxRuntime section, empty if there is none
+   */
+  public List<RuntimeRule> getRuntimeRules() {
+    return runtimeRules;
   }
 
 }
@@ -9,7 +9,6 @@
 package org.vlad.awsresourcemonitor;
 
 import com.jaxb.junit.*;
-import org.apache.commons.io.FileUtils;
 import org.vlad.awsresourcemonitor.exception.XmlException;
 import org.xml.sax.SAXException;
 
@@ -17,24 +16,93 @@ import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamSource;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Report describing objects and policy violations.
  */
 public class PolicyReport {
 
+  /**
+   * When written reports are checked against the JUnit schema.
+   */
+  public enum Validation {
+    /** Reports are not validated, tests validate what they write. */
+    OFF,
+    /** Reports are validated as they are written. */
+    INLINE,
+    /** Written report is validated on a background thread, see awaitValidation. */
+    BACKGROUND
+  }
+
   static ObjectFactory of = new ObjectFactory();
+  private static final String SUITE_NAME = "AwsResources";
+  private static final String REPORT_NAME = "AWSResourceMonitorReport";
+  private static final String DELTA_NAME = "AWSResourceMonitorDelta";
   private final String reportPath;
+  private Validation validation = Validation.OFF;
+  private List<ReportFormat> formats = new ArrayList<>();
+  private boolean shardByAccount;
+  private boolean shardByRegion;
+  private boolean compress;
+  private FutureTask<Void> pendingValidation;
 
   public PolicyReport(String reportPath) {
 
     this.reportPath = reportPath;
   }
 
+  /**
+   * Set formats written next to the JUnit report.
+   *
+   * @param formats report formats, empty for the JUnit report alone
+   */
+  public void setFormats(List<ReportFormat> formats) {
+    this.formats = new ArrayList<>(formats);
+  }
+
+  /**
+   * Split the JUnit report into a file per account and/or region.
+   * Sharded reports are listed in an index file.
+   *
+   * @param byAccount shard by account
+   * @param byRegion  shard by region
+   */
+  public void setSharding(boolean byAccount, boolean byRegion) {
+    this.shardByAccount = byAccount;
+    this.shardByRegion = byRegion;
+  }
+
+  /**
+   * Gzip the JUnit report, or each of its shards, as it is written.
+   *
+   * @param compress true to gzip
+   */
+  public void setCompress(boolean compress) {
+    this.compress = compress;
+  }
+
+  /**
+   * Set when reports are validated.
+   *
+   * @param validation validation mode
+   */
+  public void setValidation(Validation validation) {
+    this.validation = validation;
+  }
+
   /**
    * Generate passing test case for report insertion.
    *
@@ -67,6 +135,51 @@ public class PolicyReport {
     return testCase;
   }
 
+  /**
+   * Generate testcase recording a region abandoned at the collection deadline.
+   *
+   * @param region  - region name
+   * @param sources - collectors that did not finish, e.g. EC2
+   * @return test case
+   */
+  public static Testcase getCollectionTimeoutTestCase(String region, List<String> sources) {
+    final String message = "Collection of " + sources
+      + " did not finish before the deadline, results for this region are partial";
+    return getFailingTestCase(region, "CollectionTimeout", message);
+  }
+
+  /**
+   * Get outcome of a test case as reported by the non JUnit formats.
+   *
+   * @param testCase test case
+   * @return skipped, error, failed or passed
+   */
+  public static String getOutcome(Testcase testCase) {
+    if (testCase.getSkipped() != null) {
+      return "skipped";
+    }
+    if (!testCase.getError().isEmpty()) {
+      return "error";
+    }
+    return testCase.getFailure().isEmpty() ? "passed" : "failed";
+  }
+
+  /**
+   * Get message of the first error or failure of a test case.
+   *
+   * @param testCase test case
+   * @return message, null for a passing test case
+   */
+  public static String getMessage(Testcase testCase) {
+    if (!testCase.getError().isEmpty()) {
+      return testCase.getError().get(0).getMessage();
+    }
+    if (!testCase.getFailure().isEmpty()) {
+      return testCase.getFailure().get(0).getMessage();
+    }
+    return null;
+  }
+
   /**
    * This method creates a String output in the format of JUnit Report XML.
 
@@ -86,7 +199,7 @@ public class PolicyReport {
     TransformerException, ParserConfigurationException {
 
     Testsuite runningTimeSuite = of.createTestsuite();
-    runningTimeSuite.setName("AwsResources");
+    runningTimeSuite.setName(SUITE_NAME);
     runningTimeSuite.setFailures(String.valueOf(numFailing));
     runningTimeSuite.setTests(String.valueOf(testResults.size()));
 
@@ -108,35 +221,225 @@ public class PolicyReport {
    * @return report file obj
    */
   public File getJunitReportFile() {
+    return getReportFile("xml");
+  }
+
+  /**
+   * Get file object for writing report in a format.
+   *
+   * @param extension file extension of the format
+   * @return report file obj
+   */
+  public File getReportFile(String extension) {
     // if the directory does not exist, create it
-    File reportDir = new File(this.reportPath);
+    return new File(getReportDir(), REPORT_NAME + "." + extension);
+  }
+
+  /**
+   * Get index file listing the shards of a sharded or compressed report.
+   *
+   * @return index file
+   */
+  public File getIndexFile() {
+    return shardedWriter().getIndexFile();
+  }
+
+  private File getReportDir() {
+    final File reportDir = new File(this.reportPath);
     if (!reportDir.exists()) {
-      reportDir.mkdir();
+      reportDir.mkdirs();
     }
-    return new File(this.reportPath + "AWSResourceMonitorReport.xml");
+    return reportDir;
+  }
+
+  private ShardedReportWriter shardedWriter() {
+    return new ShardedReportWriter(getReportDir(), REPORT_NAME, SUITE_NAME, shardByAccount,
+      shardByRegion, compress);
   }
 
   /**
    * Verify whether JUnit output is desired and write it to the file.
+   * Test cases are streamed to the file one at a time, the file is then validated
+   * according to the validation mode. Every other format is written on its own thread
+   * at the same time, each reading the results independently. A sharded or compressed
+   * report is written as shard files and an index instead of the single report file.
    * @param numFailing
    * @param testResults
    */
-  public void writeJunitReport(int numFailing, List<Testcase> testResults) throws IOException, XmlException {
+  public void writeJunitReport(final int numFailing, final List<Testcase> testResults)
+    throws IOException, XmlException {
+
+    final boolean sharded = shardByAccount || shardByRegion || compress;
+    final List<File> reportFiles = Collections.synchronizedList(new ArrayList<File>());
+    if (formats.isEmpty() && !sharded) {
+      writeJunit(getJunitReportFile(), numFailing, testResults);
+      reportFiles.add(getJunitReportFile());
+    } else {
+      final List<Callable<Void>> tasks = new ArrayList<>(formats.size() + 1);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          if (sharded) {
+            reportFiles.addAll(shardedWriter().write(testResults,
+              Runtime.getRuntime().availableProcessors()));
+          } else {
+            writeJunit(getJunitReportFile(), numFailing, testResults);
+            reportFiles.add(getJunitReportFile());
+          }
+          return null;
+        }
+      });
+      for (final ReportFormat format : formats) {
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            try (ReportSink sink = format.open(getReportFile(format.getExtension()))) {
+              for (Testcase testCase : testResults) {
+                sink.write(testCase);
+              }
+            }
+            return null;
+          }
+        });
+      }
+
+      runAll(tasks, tasks.size());
+    }
+
+    if (validation == Validation.INLINE) {
+      validate(reportFiles);
+    } else if (validation == Validation.BACKGROUND) {
+      validateLater(new ArrayList<>(reportFiles));
+    }
+  }
+
+  /**
+   * Compare failures with the previous run and write what changed.
+   * The delta goes to a JUnit suite and a JSON file next to the report, then the
+   * fingerprints of this run replace the saved ones.
+   *
+   * @param stateFile   fingerprints saved by the previous run
+   * @param testResults results of this run
+   * @return delta
+   */
+  public DeltaReport writeDeltaReport(File stateFile, List<Testcase> testResults)
+    throws IOException, XmlException {
+
+    final ResultFingerprints current = ResultFingerprints.failing(testResults);
+    final DeltaReport delta = new DeltaReport(ResultFingerprints.load(stateFile), current);
+    delta.writeJunit(getDeltaFile("xml"));
+    delta.writeJson(getDeltaFile("json"));
+    current.save(stateFile);
+    return delta;
+  }
+
+  /**
+   * Get file object for writing delta report.
+   *
+   * @param extension xml or json
+   * @return delta report file obj
+   */
+  public File getDeltaFile(String extension) {
+    return new File(getReportDir(), DELTA_NAME + "." + extension);
+  }
 
-    String xmlReport = null;
+  /**
+   * Run report writing tasks concurrently, rethrowing the first failure as thrown.
+   *
+   * @param tasks       tasks to run
+   * @param parallelism maximum number of tasks running at once
+   */
+  static void runAll(List<Callable<Void>> tasks, int parallelism) throws IOException, XmlException {
     try {
-      xmlReport = outputJunitReportFormat(numFailing, testResults);
-    } catch (JAXBException | SAXException | TransformerException | ParserConfigurationException e) {
-      throw new XmlException(e);
+      ConcurrencyUtil.invokeAll(tasks, parallelism);
+    } catch (IllegalStateException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof XmlException) {
+        throw (XmlException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private static void writeJunit(File reportFile, int numFailing, List<Testcase> testResults)
+    throws IOException, XmlException {
+
+    try (JunitReportWriter writer = new JunitReportWriter(reportFile, SUITE_NAME,
+      testResults.size(), numFailing)) {
+      for (Testcase testCase : testResults) {
+        writer.write(testCase);
+      }
+    }
+  }
+
+  private static void validate(List<File> reportFiles) throws IOException, XmlException {
+    for (File reportFile : reportFiles) {
+      InputStream in = Files.newInputStream(reportFile.toPath());
+      try {
+        if (reportFile.getName().endsWith(".gz")) {
+          in = new GZIPInputStream(in);
+        }
+        JaxbUtil.validate(new StreamSource(in, reportFile.toURI().toString()),
+          Schemas.JUNIT_SCHEMA);
+      } catch (SAXException e) {
+        throw new XmlException(e);
+      } finally {
+        in.close();
+      }
     }
+  }
 
-    FileUtils.writeStringToFile(getJunitReportFile(), xmlReport);
+  private synchronized void validateLater(final List<File> reportFiles) {
+    pendingValidation = new FutureTask<>(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        validate(reportFiles);
+        return null;
+      }
+    });
+    final Thread thread = new Thread(pendingValidation, "report-validation");
+    thread.setDaemon(true);
+    thread.start();
+  }
 
+  /**
+   * Wait for background validation of the last written report, if one was started.
+   */
+  public void awaitValidation() throws IOException, XmlException {
+    final FutureTask<Void> pending;
+    synchronized (this) {
+      pending = pendingValidation;
+      pendingValidation = null;
+    }
+    if (pending == null) {
+      return;
+    }
 
+    try {
+      pending.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof XmlException) {
+        throw (XmlException) e.getCause();
+      }
+      throw new XmlException(e.getCause());
+    }
   }
 
+  /**
+   * Marshal report, validating it only in inline validation mode.
+   * @param report report
+   * @return report XML
+   */
   public String getXml(Testsuites report) throws JAXBException, SAXException {
-    Marshaller ms = JaxbUtil.createMarshaller(Schemas.JUNIT_SCHEMA, Testsuites.class);
+    Marshaller ms = JaxbUtil.createMarshaller(JaxbUtil.getDefaultClassLoader(),
+      validation == Validation.INLINE ? Schemas.JUNIT_SCHEMA : null, Testsuites.class);
     StringWriter sw = new StringWriter();
     ms.marshal(report, sw);
     return sw.toString();
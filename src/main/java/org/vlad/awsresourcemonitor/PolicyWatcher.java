@@ -0,0 +1,173 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps a compiled policy in sync with its file for long running monitors.
+ * Changes are compiled on the watcher thread and swapped in atomically. A file that
+ * fails to compile leaves the previous policy in place. Callers take a snapshot with
+ * {@link #current()} and keep evaluating against it while a newer one is swapped in.
+ */
+public class PolicyWatcher implements Closeable {
+
+  private static final long SETTLE_MILLIS = 200;
+
+  private final File policyFile;
+  private final AtomicReference<Policy> current;
+  private final LatencyStats reloadStats = new LatencyStats("PolicyReload");
+  private final WatchService watchService;
+  private final Thread thread;
+
+  /**
+   * Compile policy file and start watching it.
+   *
+   * @param policyFile policy file
+   */
+  public PolicyWatcher(File policyFile) throws IOException, ParseException {
+    this.policyFile = policyFile.getAbsoluteFile();
+    this.current = new AtomicReference<>(Policy.compile(this.policyFile));
+
+    final Path dir = this.policyFile.getParentFile().toPath();
+    watchService = FileSystems.getDefault().newWatchService();
+    dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+      StandardWatchEventKinds.ENTRY_MODIFY);
+
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        watch();
+      }
+    }, "policy-watcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Get the policy to evaluate against.
+   *
+   * @return latest successfully compiled policy
+   */
+  public Policy current() {
+    return current.get();
+  }
+
+  /**
+   * Compile the file now and swap it in if it is valid.
+   *
+   * @return true if the new policy was swapped in
+   */
+  public boolean reload() {
+    final long start = System.nanoTime();
+    try {
+      current.set(Policy.compile(policyFile));
+      reloadStats.record("ok", System.nanoTime() - start);
+      return true;
+    } catch (FileNotFoundException | ParseException | RuntimeException e) {
+      // half written or invalid file, keep evaluating against the previous policy
+      reloadStats.record("failed", System.nanoTime() - start);
+      return false;
+    }
+  }
+
+  /**
+   * Get number of policies swapped in after the first one.
+   *
+   * @return reload count
+   */
+  public long getReloadCount() {
+    return reloadStats.getCount("ok");
+  }
+
+  /**
+   * Get number of changes that did not compile.
+   *
+   * @return failed reload count
+   */
+  public long getFailedReloadCount() {
+    return reloadStats.getCount("failed");
+  }
+
+  /**
+   * Get time spent compiling changed policies.
+   *
+   * @return reload time in milliseconds
+   */
+  public long getReloadMillis() {
+    return reloadStats.getTotalMillis("ok") + reloadStats.getTotalMillis("failed");
+  }
+
+  /**
+   * Get one summary line per reload outcome.
+   *
+   * @return summary lines
+   */
+  public List<String> getSummary() {
+    return reloadStats.getSummary();
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        final WatchKey key = watchService.take();
+        boolean changed = isPolicyEvent(key);
+        key.reset();
+        if (!changed) {
+          continue;
+        }
+
+        // editors write in several steps, wait for the file to settle before compiling
+        WatchKey more;
+        while ((more = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+          isPolicyEvent(more);
+          more.reset();
+        }
+        reload();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      // watcher closed
+      return;
+    }
+  }
+
+  private boolean isPolicyEvent(WatchKey key) {
+    boolean match = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      final Object context = event.context();
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW
+          || context instanceof Path && policyFile.getName().equals(context.toString())) {
+        match = true;
+      }
+    }
+    return match;
+  }
+
+  @Override
+  public void close() throws IOException {
+    thread.interrupt();
+    watchService.close();
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+
+package org.vlad.awsresourcemonitor;
+
+import com.jaxb.junit.Testcase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes test case counts in the Prometheus text exposition format.
+ * Counts by check and outcome are the whole output, so only those are kept while test
+ * cases stream past and the samples are written on close.
+ */
+public class PrometheusSink implements ReportSink {
+
+  private final Writer out;
+  // check name, then outcome, sorted so the output is stable between runs
+  private final Map<String, Map<String, int[]>> counts = new TreeMap<>();
+  private int tests;
+  private int failures;
+
+  /**
+   * Create sink.
+   *
+   * @param file output file
+   */
+  public PrometheusSink(File file) throws IOException {
+    out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void write(Testcase testCase) throws IOException {
+    final String check = testCase.getName() == null ? "" : testCase.getName();
+    Map<String, int[]> byOutcome = counts.get(check);
+    if (byOutcome == null) {
+      byOutcome = new TreeMap<>();
+      counts.put(check, byOutcome);
+    }
+    final String outcome = PolicyReport.getOutcome(testCase);
+    int[] count = byOutcome.get(outcome);
+    if (count == null) {
+      count = new int[1];
+      byOutcome.put(outcome, count);
+    }
+    count[0]++;
+
+    tests++;
+    if (!testCase.getFailure().isEmpty()) {
+      failures++;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      out.write("# HELP awsmon_report_tests Number of test cases in the report.\n");
+      out.write("# TYPE awsmon_report_tests gauge\n");
+      out.write("awsmon_report_tests " + tests + "\n");
+      out.write("# HELP awsmon_report_failures Number of failing test cases in the report.\n");
+      out.write("# TYPE awsmon_report_failures gauge\n");
+      out.write("awsmon_report_failures " + failures + "\n");
+      out.write("# HELP awsmon_checks Number of test cases by check and outcome.\n");
+      out.write("# TYPE awsmon_checks gauge\n");
+      for (Map.Entry<String, Map<String, int[]>> check : counts.entrySet()) {
+        for (Map.Entry<String, int[]> outcome : check.getValue().entrySet()) {
+          out.write("awsmon_checks{check=\"" + label(check.getKey()) + "\",status=\""
+            + outcome.getKey() + "\"} " + outcome.getValue()[0] + "\n");
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static String label(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -13,11 +13,14 @@ import com.amazonaws.services.rds.AmazonRDS;
 import com.amazonaws.services.rds.model.DBInstance;
 import com.amazonaws.services.rds.model.DescribeDBInstancesRequest;
 import com.amazonaws.services.rds.model.DescribeDBInstancesResult;
+import com.amazonaws.services.rds.model.ListTagsForResourceRequest;
+import com.amazonaws.services.rds.model.Tag;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Collection class for EC2 instances.
@@ -25,12 +28,35 @@ import java.util.Set;
 public class RDSInstanceCollection {
 
   private final AmazonRDS rds;
+  private final CollectionSettings settings;
+  private final InstanceConsumer consumer;
+  private final LatencyStats pageStats = new LatencyStats("DescribeDBInstances");
+  private final LatencyStats tagStats = new LatencyStats("ListTagsForResource");
+  private ExecutorService tagPool;
   private List<InstanceData> objList;
 
   public RDSInstanceCollection(AmazonRDS rds) {
+    this(rds, new CollectionSettings(), null);
+  }
+
+  /**
+   * Collect database instances page by page handing each one to the consumer.
+   *
+   * @param rds      RDS client, re-pointed at each region in turn
+   * @param settings collection settings
+   * @param consumer receiver of collected instances, null to keep them in the object list
+   */
+  public RDSInstanceCollection(AmazonRDS rds, CollectionSettings settings, InstanceConsumer consumer) {
     this.rds = rds;
+    this.settings = settings;
 
-    this.objList = new ArrayList<>(1000);
+    this.objList = new InstanceInventory(settings.getDictionary());
+    this.consumer = consumer != null ? consumer : new InstanceConsumer() {
+      @Override
+      public void accept(InstanceData data) {
+        objList.add(data);
+      }
+    };
 
     getAllInstances();
 
@@ -40,6 +66,24 @@ public class RDSInstanceCollection {
     return objList;
   }
 
+  /**
+   * Getter for describe call latencies.
+   *
+   * @return per region latencies of DescribeDBInstances pages
+   */
+  public LatencyStats getPageStats() {
+    return pageStats;
+  }
+
+  /**
+   * Getter for tag fetch latencies.
+   *
+   * @return per region latencies of ListTagsForResource calls
+   */
+  public LatencyStats getTagStats() {
+    return tagStats;
+  }
+
 
   /**
    * Get all EC2 instances in all regions
@@ -48,17 +92,19 @@ public class RDSInstanceCollection {
   public final void getAllInstances() {
     // Find all running EC2 instances that match the regular expression
 
-    final Set<String> skipRegions = new HashSet<>();
-    skipRegions.add("us-gov-west-1");
-    skipRegions.add("cn-north-1");
+    if (settings.getTagThreads() > 1) {
+      tagPool = Executors.newFixedThreadPool(settings.getTagThreads());
+    }
 
-    for (final Regions reg : Regions.values()) {
-      String regName = reg.getName();
-      if (skipRegions.contains(regName)) {
-        continue;
+    try {
+      for (final Regions reg : settings.getRegions()) {
+        collectRegionInstances(reg);
+      }
+    } finally {
+      if (tagPool != null) {
+        tagPool.shutdownNow();
+        tagPool = null;
       }
-
-      collectRegionInstances(reg);
     }
 
   }
@@ -66,24 +112,123 @@ public class RDSInstanceCollection {
 
   /**
    * Get all instances in the region.
+   * Pages are converted and handed to the consumer before the next one is requested.
+   * When the deadline passes the region is abandoned and recorded as timed out.
    *
    * @param region   region
    */
   public final void collectRegionInstances(Regions region) {
 
     rds.setRegion(Region.getRegion(region));
+    final CollectionDeadline deadline = settings.getDeadline();
+    try {
+      collectRegionPages(region, deadline, deadline.regionEnd());
+    } catch (RuntimeException e) {
+      if (!CollectionDeadline.isTimeout(e)) {
+        throw e;
+      }
+      deadline.timedOut(region, "RDS");
+    }
+  }
+
+  private void collectRegionPages(Regions region, final CollectionDeadline deadline, final long end) {
     // Collect a list of running instances
     final DescribeDBInstancesRequest request = new DescribeDBInstancesRequest();
-    final DescribeDBInstancesResult result = rds.describeDBInstances(request);
+    if (settings.getRdsPageSize() > 0) {
+      request.setMaxRecords(settings.getRdsPageSize());
+    }
+
+    String marker;
+    do {
+      final long start = System.nanoTime();
+      final DescribeDBInstancesResult result = settings.getRateLimiter().call(region, "DescribeDBInstances",
+        end, new Callable<DescribeDBInstancesResult>() {
+          @Override
+          public DescribeDBInstancesResult call() {
+            return rds.describeDBInstances(deadline.bound(request, end));
+          }
+        });
+      pageStats.record(region.getName(), System.nanoTime() - start);
+
+      // fetch tags for the whole page before building any instance data
+      final List<DBInstance> instances = result.getDBInstances();
+      final List<List<Tag>> tags = fetchTags(region, instances, end);
+
+      // loop through each running resource
+      for (int i = 0; i < instances.size(); i++) {
+        final InstanceData data = new InstanceData(settings.getPolicy(), instances.get(i), tags.get(i));
+        data.setRegion(region.getName());
+        consumer.accept(data);
+      }
+
+      marker = result.getMarker();
+      request.setMarker(marker);
+    } while (marker != null && !marker.isEmpty());
+  }
 
+  /**
+   * Fetch tags for every instance of the page, several calls at once when allowed.
+   *
+   * @param region     region the instances belong to
+   * @param instances  database instances
+   * @param end        nano time the region has to finish by
+   * @return tag lists in the same order as instances
+   */
+  private List<List<Tag>> fetchTags(final Regions region, List<DBInstance> instances,
+                                    final long end) {
+
+    if (tagPool == null || instances.size() < 2) {
+      final List<List<Tag>> results = new ArrayList<>(instances.size());
+      for (DBInstance instance : instances) {
+        results.add(listTags(region, getInstanceARN(settings, region, instance), end));
+      }
+      return results;
+    }
 
-    // loop through each running resource
-    for (DBInstance instance : result.getDBInstances()) {
-      final InstanceData data = new InstanceData(instance);
-      data.setRegion(region.getName());
-      objList.add(data);
+    final List<Callable<List<Tag>>> tasks = new ArrayList<>(instances.size());
+    for (DBInstance instance : instances) {
+      final String arn = getInstanceARN(settings, region, instance);
+      tasks.add(new Callable<List<Tag>>() {
+        @Override
+        public List<Tag> call() {
+          return listTags(region, arn, end);
+        }
+      });
     }
+
+    return ConcurrencyUtil.invokeAll(tagPool, tasks);
   }
 
+  private List<Tag> listTags(Regions region, String arn, final long end) {
+    final long start = System.nanoTime();
+    final ListTagsForResourceRequest tagReq = new ListTagsForResourceRequest().withResourceName(arn);
+    final List<Tag> tagList = settings.getRateLimiter().call(region, "ListTagsForResource", end,
+      new Callable<List<Tag>>() {
+        @Override
+        public List<Tag> call() {
+          return rds.listTagsForResource(settings.getDeadline().bound(tagReq, end)).getTagList();
+        }
+      });
+    tagStats.record(region.getName(), System.nanoTime() - start);
+    return tagList;
+  }
 
+  /**
+   * Build ARN of database instance.
+   *
+   * @param settings collection settings holding account id
+   * @param region   region of the instance
+   * @param inst     database instance
+   * @return instance ARN
+   */
+  static String getInstanceARN(CollectionSettings settings, Regions region, DBInstance inst) {
+
+    String acc = settings.getAccountId();
+    if (acc == null) {
+      acc = AWSInfo.getAcc();
+    }
+
+    return "arn:aws:rds:" + region.getName() + ":" + acc + ":db:" + inst.getDBInstanceIdentifier();
+
+  }
 }
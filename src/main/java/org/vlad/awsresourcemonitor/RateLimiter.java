@@ -0,0 +1,338 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.retry.RetryUtils;
+import org.vlad.awsresourcemonitor.exception.CollectionTimeoutException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter with one bucket per region and API.
+ * A throttled call halves the bucket rate and is retried, every successful
+ * call raises the rate by a small fraction until it is back at the maximum.
+ */
+public class RateLimiter {
+
+  private static final double MIN_RATE = 0.1;
+  private static final double DECREASE_FACTOR = 0.5;
+  private static final double INCREASE_FACTOR = 1.05;
+  private static final int TOO_MANY_REQUESTS = 429;
+  private static final Set<String> EC2_THROTTLING_CODES = new HashSet<>(
+    Arrays.asList("RequestLimitExceeded", "RequestThrottled", "TooManyRequestsException"));
+
+  private final double maxRate;
+  private final int maxRetries;
+  private final Map<String, Bucket> buckets = new TreeMap<>();
+
+  /**
+   * Create rate limiter.
+   *
+   * @param maxRate    initial and maximum calls per second for each bucket, 0 to disable limiting
+   * @param maxRetries number of times a throttled call is retried
+   */
+  public RateLimiter(double maxRate, int maxRetries) {
+    this.maxRate = maxRate;
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * Rate limiter that passes every call straight through.
+   *
+   * @return pass through limiter
+   */
+  public static RateLimiter unlimited() {
+    return new RateLimiter(0, 0);
+  }
+
+  /**
+   * Check whether limiter actually limits calls.
+   *
+   * @return true if calls are rate limited
+   */
+  public boolean isEnabled() {
+    return maxRate > 0;
+  }
+
+  /**
+   * Make AWS call once the bucket for region and API allows it.
+   *
+   * @param region region the call goes to
+   * @param api    API name
+   * @param call   the call
+   * @param <T>    call result type
+   * @return call result
+   */
+  public <T> T call(Regions region, String api, Callable<T> call) {
+    return call(region, api, Long.MAX_VALUE, call);
+  }
+
+  /**
+   * Make AWS call once the bucket for region and API allows it, unless that is too late.
+   *
+   * @param region region the call goes to
+   * @param api    API name
+   * @param end    nano time the region has to finish by, see {@link CollectionDeadline}
+   * @param call   the call
+   * @param <T>    call result type
+   * @return call result
+   * @throws CollectionTimeoutException when the bucket allows the call only after end
+   */
+  public <T> T call(Regions region, String api, long end, Callable<T> call) {
+
+    if (!isEnabled()) {
+      return invoke(call);
+    }
+
+    int attempt = 0;
+    while (true) {
+      acquire(region, api, end);
+      try {
+        final T result = invoke(call);
+        onResult(region, api, null, attempt);
+        return result;
+      } catch (AmazonServiceException e) {
+        if (!onResult(region, api, e, attempt++)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Wait until the bucket for region and API allows a call.
+   * For callers that make the call themselves, they must report the outcome with onResult.
+   *
+   * @param region region the call goes to
+   * @param api    API name
+   */
+  public void acquire(Regions region, String api) {
+    acquire(region, api, Long.MAX_VALUE);
+  }
+
+  /**
+   * Wait until the bucket for region and API allows a call, but not past the region end.
+   * For callers that make the call themselves, they must report the outcome with onResult.
+   *
+   * @param region region the call goes to
+   * @param api    API name
+   * @param end    nano time the region has to finish by, see {@link CollectionDeadline}
+   * @throws CollectionTimeoutException when the bucket allows the call only after end
+   */
+  public void acquire(Regions region, String api, long end) {
+    sleepNanos(reserve(region, api, end));
+  }
+
+  /**
+   * Take a token for region and API without waiting.
+   * For callers that can't block, they must delay the call themselves and report the
+   * outcome with onResult.
+   *
+   * @param region region the call goes to
+   * @param api    API name
+   * @return nanoseconds to wait before making the call
+   */
+  public long reserve(Regions region, String api) {
+    if (!isEnabled()) {
+      return 0;
+    }
+    return getBucket(region.getName() + " " + api).reserve();
+  }
+
+  /**
+   * Take a token for region and API without waiting, unless the call would start too late.
+   * A call that can't make it hands its token back, so it doesn't hold up later callers.
+   *
+   * @param region region the call goes to
+   * @param api    API name
+   * @param end    nano time the region has to finish by, see {@link CollectionDeadline}
+   * @return nanoseconds to wait before making the call
+   * @throws CollectionTimeoutException when the bucket allows the call only after end
+   */
+  public long reserve(Regions region, String api, long end) {
+    if (!isEnabled()) {
+      return 0;
+    }
+    final Bucket bucket = getBucket(region.getName() + " " + api);
+    final long wait = bucket.reserve();
+    if (wait > 0 && end != Long.MAX_VALUE && wait >= end - System.nanoTime()) {
+      bucket.cancel();
+      throw new CollectionTimeoutException("Collection deadline passed waiting for rate limit");
+    }
+    return wait;
+  }
+
+  /**
+   * Report outcome of a call made after acquire.
+   *
+   * @param region  region the call went to
+   * @param api     API name
+   * @param error   call error, null if call succeeded
+   * @param attempt number of earlier attempts of the same call
+   * @return true if the call was throttled and should be retried
+   */
+  public boolean onResult(Regions region, String api, Exception error, int attempt) {
+    if (!isEnabled()) {
+      return false;
+    }
+
+    final Bucket bucket = getBucket(region.getName() + " " + api);
+    if (error == null) {
+      bucket.onSuccess();
+      return false;
+    }
+
+    if (!(error instanceof AmazonServiceException) || !isThrottling((AmazonServiceException) error)) {
+      return false;
+    }
+
+    bucket.onThrottle();
+    return attempt < maxRetries;
+  }
+
+  /**
+   * Get one statistics line per bucket.
+   *
+   * @return summary lines ordered by bucket key
+   */
+  public synchronized List<String> getSummary() {
+    final List<String> lines = new ArrayList<>(buckets.size());
+    for (Map.Entry<String, Bucket> e : buckets.entrySet()) {
+      lines.add("RateLimit " + e.getKey() + ": " + e.getValue());
+    }
+    return lines;
+  }
+
+  /**
+   * Get current rate for region and API.
+   *
+   * @param region region
+   * @param api    API name
+   * @return calls per second
+   */
+  public double getRate(Regions region, String api) {
+    return getBucket(region.getName() + " " + api).getRate();
+  }
+
+  /**
+   * Check whether error is a throttling response.
+   * EC2 reports throttling with its own error code the SDK helper doesn't know about.
+   *
+   * @param exc service exception
+   * @return true if call was throttled
+   */
+  public static boolean isThrottling(AmazonServiceException exc) {
+    return RetryUtils.isThrottlingException(exc)
+      || exc.getStatusCode() == TOO_MANY_REQUESTS
+      || EC2_THROTTLING_CODES.contains(exc.getErrorCode());
+  }
+
+  private synchronized Bucket getBucket(String key) {
+    Bucket bucket = buckets.get(key);
+    if (bucket == null) {
+      bucket = new Bucket(maxRate);
+      buckets.put(key, bucket);
+    }
+    return bucket;
+  }
+
+  private static <T> T invoke(Callable<T> call) {
+    try {
+      return call.call();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException("AWS call failed", e);
+    }
+  }
+
+  private static void sleepNanos(long nanos) {
+    if (nanos <= 0) {
+      return;
+    }
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for rate limiter", e);
+    }
+  }
+
+  /**
+   * Single token bucket, tokens may go negative to queue up callers.
+   */
+  private static final class Bucket {
+
+    private final double maxRate;
+    private double rate;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long calls;
+    private long throttled;
+    private double lowestRate;
+
+    private Bucket(double maxRate) {
+      this.maxRate = maxRate;
+      this.rate = maxRate;
+      this.tokens = 1;
+      this.lowestRate = maxRate;
+    }
+
+    /**
+     * Take a token.
+     *
+     * @return nanoseconds caller has to wait before making the call
+     */
+    private synchronized long reserve() {
+      final long now = System.nanoTime();
+      tokens = Math.min(Math.max(1, rate), tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+      lastRefill = now;
+      tokens -= 1;
+      calls++;
+      if (tokens >= 0) {
+        return 0;
+      }
+      return (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private synchronized void cancel() {
+      tokens += 1;
+      calls--;
+    }
+
+    private synchronized void onSuccess() {
+      rate = Math.min(maxRate, rate * INCREASE_FACTOR);
+    }
+
+    private synchronized void onThrottle() {
+      throttled++;
+      rate = Math.max(MIN_RATE, rate * DECREASE_FACTOR);
+      lowestRate = Math.min(lowestRate, rate);
+    }
+
+    private synchronized double getRate() {
+      return rate;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format("calls=%d throttled=%d rate=%.2f/s lowest=%.2f/s", calls, throttled, rate, lowestRate);
+    }
+  }
+}
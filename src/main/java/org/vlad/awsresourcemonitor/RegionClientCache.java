@@ -0,0 +1,73 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+
+package org.vlad.awsresourcemonitor;
+
+import com.amazonaws.regions.Regions;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Client factory keeping one client per region until closed.
+ * Every SDK client holds a connection pool registered with the SDK's idle connection
+ * reaper until it is shut down, so clients are reused across runs and shut down with
+ * the cache rather than created per run and dropped.
+ *
+ * @param <T> client type
+ */
+public abstract class RegionClientCache<T> implements RegionClientFactory<T>, Closeable {
+
+  private final ConcurrentMap<Regions, T> clients = new ConcurrentHashMap<>();
+
+  @Override
+  public T forRegion(Regions region) {
+    T client = clients.get(region);
+    if (client == null) {
+      final T created = create(region);
+      client = clients.putIfAbsent(region, created);
+      if (client == null) {
+        client = created;
+      } else {
+        // another thread won the race
+        shutdown(created);
+      }
+    }
+    return client;
+  }
+
+  /**
+   * Create client bound to region.
+   *
+   * @param region region
+   * @return new client
+   */
+  protected abstract T create(Regions region);
+
+  /**
+   * Release resources of a client.
+   *
+   * @param client client created by this cache
+   */
+  protected abstract void shutdown(T client);
+
+  /**
+   * Shut down every client created so far, later calls create new ones.
+   */
+  @Override
+  public void close() {
+    for (Regions region : clients.keySet()) {
+      final T client = clients.remove(region);
+      if (client != null) {
+        shutdown(client);
+      }
+    }
+  }
+}
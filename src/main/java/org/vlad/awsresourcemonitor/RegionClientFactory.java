@@ -0,0 +1,27 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.amazonaws.regions.Regions;
+
+/**
+ * Source of AWS API clients bound to a single region.
+ *
+ * @param <T> client type
+ */
+public interface RegionClientFactory<T> {
+
+  /**
+   * Get client for the region.
+   *
+   * @param region region
+   * @return client bound to the region
+   */
+  T forRegion(Regions region);
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeRegionsRequest;
+import com.amazonaws.services.ec2.model.Region;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds regions enabled for the account and keeps them cached on disk.
+ */
+public class RegionDiscovery {
+
+  private static final Set<String> SKIP_REGIONS = new HashSet<>(Arrays.asList("us-gov-west-1", "cn-north-1"));
+
+  private final AmazonEC2 ec2;
+  private final File cacheFile;
+  private final long ttlMillis;
+  private List<Regions> regions;
+
+  /**
+   * Create region discovery.
+   *
+   * @param ec2       EC2 client used for DescribeRegions
+   * @param cacheFile file to keep enabled region names in, null to disable disk cache
+   * @param ttlMillis how long cached region list stays valid
+   */
+  public RegionDiscovery(AmazonEC2 ec2, File cacheFile, long ttlMillis) {
+    this.ec2 = ec2;
+    this.cacheFile = cacheFile;
+    this.ttlMillis = ttlMillis;
+  }
+
+  /**
+   * Get all regions known to the SDK except the ones that need separate credentials.
+   *
+   * @return regions in SDK order
+   */
+  public static List<Regions> getDefaultRegions() {
+    final List<Regions> result = new ArrayList<>();
+    for (final Regions reg : Regions.values()) {
+      if (!SKIP_REGIONS.contains(reg.getName())) {
+        result.add(reg);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get regions enabled for the account, calling DescribeRegions at most once.
+   *
+   * @return enabled regions in SDK order
+   */
+  public synchronized List<Regions> getRegions() {
+
+    if (regions == null) {
+      List<String> names = readCache();
+      if (names == null) {
+        names = describeRegions();
+        writeCache(names);
+      }
+      regions = toRegions(names);
+    }
+
+    return regions;
+  }
+
+  private List<String> describeRegions() {
+    final List<String> names = new ArrayList<>();
+    for (Region reg : ec2.describeRegions(new DescribeRegionsRequest()).getRegions()) {
+      names.add(reg.getRegionName());
+    }
+    return names;
+  }
+
+  private List<String> readCache() {
+    if (cacheFile == null || !cacheFile.isFile()
+        || System.currentTimeMillis() - cacheFile.lastModified() > ttlMillis) {
+      return null;
+    }
+
+    try {
+      final List<String> names = FileUtils.readLines(cacheFile, "UTF-8");
+      return names.isEmpty() ? null : names;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void writeCache(List<String> names) {
+    if (cacheFile == null) {
+      return;
+    }
+
+    try {
+      FileUtils.writeLines(cacheFile, "UTF-8", names);
+    } catch (IOException e) {
+      // cache is an optimization only, next run will ask again
+      FileUtils.deleteQuietly(cacheFile);
+    }
+  }
+
+  /**
+   * Keep only regions the SDK knows about, in SDK order.
+   *
+   * @param names enabled region names
+   * @return regions
+   */
+  private static List<Regions> toRegions(List<String> names) {
+    final Set<String> enabled = new HashSet<>();
+    for (String name : names) {
+      enabled.add(name.trim());
+    }
+
+    final List<Regions> result = new ArrayList<>();
+    for (Regions reg : getDefaultRegions()) {
+      if (enabled.contains(reg.getName())) {
+        result.add(reg);
+      }
+    }
+    return result;
+  }
+}
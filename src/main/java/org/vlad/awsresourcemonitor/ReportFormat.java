@@ -0,0 +1,73 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+
+package org.vlad.awsresourcemonitor;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Report formats written next to the JUnit report.
+ */
+public enum ReportFormat {
+  /** One JSON object per test case. */
+  JSONL("jsonl") {
+    @Override
+    public ReportSink open(File file) throws IOException {
+      return new JsonLinesSink(file);
+    }
+  },
+  /** One CSV row per test case after a header row. */
+  CSV("csv") {
+    @Override
+    public ReportSink open(File file) throws IOException {
+      return new CsvSink(file);
+    }
+  },
+  /** Test case counts in Prometheus text exposition format. */
+  PROMETHEUS("prom") {
+    @Override
+    public ReportSink open(File file) throws IOException {
+      return new PrometheusSink(file);
+    }
+  };
+
+  private final String extension;
+
+  ReportFormat(String extension) {
+    this.extension = extension;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+
+  /**
+   * Open sink writing this format.
+   *
+   * @param file output file
+   * @return open sink
+   */
+  public abstract ReportSink open(File file) throws IOException;
+
+  /**
+   * Look up format by name or file extension, ignoring case.
+   *
+   * @param name format name, e.g. csv
+   * @return format
+   */
+  public static ReportFormat forName(String name) {
+    for (ReportFormat format : values()) {
+      if (format.name().equalsIgnoreCase(name) || format.extension.equalsIgnoreCase(name)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Unknown report format '" + name + "'");
+  }
+}
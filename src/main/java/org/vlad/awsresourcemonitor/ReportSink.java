@@ -0,0 +1,31 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+
+package org.vlad.awsresourcemonitor;
+
+import com.jaxb.junit.Testcase;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for the test cases of a report.
+ * A sink gets every test case once, in report order, and writes it out as it arrives.
+ * Closing the sink finishes its output. Each sink is used by a single thread, different
+ * sinks of a run may be fed concurrently.
+ */
+public interface ReportSink extends Closeable {
+
+  /**
+   * Write test case.
+   *
+   * @param testCase test case
+   */
+  void write(Testcase testCase) throws IOException;
+}
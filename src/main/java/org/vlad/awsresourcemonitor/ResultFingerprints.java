@@ -0,0 +1,340 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+
+package org.vlad.awsresourcemonitor;
+
+import com.jaxb.junit.Testcase;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Set of failing (instance, check, detail) results of a run, keyed by a 64 bit fingerprint.
+ * The instance is its name together with its account and region, so same named instances
+ * in two regions are two entries. The detail is the failure message, so two missing tags
+ * of one instance are two entries too.
+ * Lookups go through an open addressing table of the fingerprints, so comparing two runs
+ * costs one probe per entry. The set is saved between runs in a small binary file
+ * holding the fingerprints and what is needed to list resolved failures.
+ */
+public final class ResultFingerprints {
+
+  private static final int MAGIC = 0x41574d46;
+  private static final int VERSION = 3;
+  private static final String TIMEOUT_NAME = "CollectionTimeout";
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private long[] fingerprints = new long[16];
+  private String[] classnames = new String[16];
+  private String[] names = new String[16];
+  private String[] messages = new String[16];
+  // account/region of every entry, null if not known
+  private String[] scopes = new String[16];
+  private int size;
+  // entry index + 1 of every fingerprint, 0 marks a free slot
+  private int[] table = new int[32];
+  private final Set<String> timedOut = new HashSet<>();
+
+  /**
+   * Collect failing test cases of a run.
+   * Passing records of a result log are skipped without building their test cases.
+   * Collection timeouts are not entries, they mark their region as timed out.
+   *
+   * @param results run results
+   * @return fingerprints of failing results
+   */
+  public static ResultFingerprints failing(List<Testcase> results) {
+    final ResultFingerprints set = new ResultFingerprints();
+    final ResultLog log = results instanceof ResultLog ? (ResultLog) results : null;
+    for (int i = 0; i < results.size(); i++) {
+      if (log != null && !log.isFailing(i)) {
+        continue;
+      }
+      final Testcase testCase = results.get(i);
+      if (testCase.getFailure().isEmpty()) {
+        continue;
+      }
+      if (TIMEOUT_NAME.equals(testCase.getName())) {
+        // classname of a timeout is the region, prefixed by the account if any
+        set.timedOut.add(testCase.getClassname());
+      } else {
+        set.add(testCase.getClassname(), testCase.getName(), PolicyReport.getMessage(testCase),
+          log != null ? scope(log.getAccount(i), log.getRegion(i)) : null);
+      }
+    }
+    return set;
+  }
+
+  /**
+   * Get fingerprint of an instance, check and failure detail.
+   *
+   * @param classname test case class name, the instance
+   * @param name      test case name, the check
+   * @param detail    failure message, e.g. names the missing tag
+   * @param scope     region of the instance, see {@link #scope(String, String)}
+   * @return 64 bit FNV-1a hash
+   */
+  public static long fingerprint(String classname, String name, String detail, String scope) {
+    long hash = FNV_OFFSET;
+    hash = mix(hash, classname);
+    hash = (hash ^ '\n') * FNV_PRIME;
+    hash = mix(hash, name);
+    hash = (hash ^ '\n') * FNV_PRIME;
+    hash = mix(hash, detail);
+    hash = (hash ^ '\n') * FNV_PRIME;
+    return mix(hash, scope);
+  }
+
+  /**
+   * Get scope a collection timeout is reported under.
+   *
+   * @param account account id, null outside multi-account mode
+   * @param region  region name
+   * @return region prefixed by the account, null if the region is not known
+   */
+  public static String scope(String account, String region) {
+    if (region == null) {
+      return null;
+    }
+    return account == null ? region : account + "/" + region;
+  }
+
+  private static long mix(long hash, String value) {
+    if (value == null) {
+      return hash;
+    }
+    long result = hash;
+    for (int i = 0; i < value.length(); i++) {
+      result = (result ^ value.charAt(i)) * FNV_PRIME;
+    }
+    return result;
+  }
+
+  /**
+   * Add failing result of an unknown region, a repeated instance, check and message is
+   * ignored.
+   *
+   * @param classname test case class name
+   * @param name      test case name
+   * @param message   failure message
+   */
+  public void add(String classname, String name, String message) {
+    add(classname, name, message, null);
+  }
+
+  /**
+   * Add failing result, a repeated instance, region, check and message is ignored.
+   *
+   * @param classname test case class name
+   * @param name      test case name
+   * @param message   failure message
+   * @param scope     region of the result, see {@link #scope(String, String)}
+   */
+  public void add(String classname, String name, String message, String scope) {
+    add(fingerprint(classname, name, message, scope), classname, name, message, scope);
+  }
+
+  /**
+   * Copy entry of another set, e.g. a failure that could not be checked this run.
+   *
+   * @param other set to copy from
+   * @param index entry index in the other set
+   */
+  public void copy(ResultFingerprints other, int index) {
+    add(other.fingerprints[index], other.classnames[index], other.names[index],
+      other.messages[index], other.scopes[index]);
+  }
+
+  private void add(long fingerprint, String classname, String name, String message,
+                   String scope) {
+    if (indexOf(fingerprint) >= 0) {
+      return;
+    }
+    if (size == fingerprints.length) {
+      final int capacity = size * 2;
+      fingerprints = Arrays.copyOf(fingerprints, capacity);
+      classnames = Arrays.copyOf(classnames, capacity);
+      names = Arrays.copyOf(names, capacity);
+      messages = Arrays.copyOf(messages, capacity);
+      scopes = Arrays.copyOf(scopes, capacity);
+    }
+    fingerprints[size] = fingerprint;
+    classnames[size] = classname;
+    names[size] = name;
+    messages[size] = message;
+    scopes[size] = scope;
+    size++;
+
+    // keep the table at most half full
+    if (size * 2 > table.length) {
+      table = new int[table.length * 2];
+      for (int i = 0; i < size; i++) {
+        insert(i);
+      }
+    } else {
+      insert(size - 1);
+    }
+  }
+
+  private void insert(int index) {
+    final int mask = table.length - 1;
+    int slot = slot(fingerprints[index], mask);
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = index + 1;
+  }
+
+  private static int slot(long fingerprint, int mask) {
+    return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+  }
+
+  /**
+   * Find entry of a fingerprint.
+   *
+   * @param fingerprint fingerprint
+   * @return entry index, -1 if not in the set
+   */
+  public int indexOf(long fingerprint) {
+    final int mask = table.length - 1;
+    int slot = slot(fingerprint, mask);
+    while (table[slot] != 0) {
+      final int index = table[slot] - 1;
+      if (fingerprints[index] == fingerprint) {
+        return index;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long getFingerprint(int index) {
+    return fingerprints[index];
+  }
+
+  public String getClassname(int index) {
+    return classnames[index];
+  }
+
+  public String getName(int index) {
+    return names[index];
+  }
+
+  public String getMessage(int index) {
+    return messages[index];
+  }
+
+  public String getScope(int index) {
+    return scopes[index];
+  }
+
+  /**
+   * Check whether collection of a region was abandoned at the deadline.
+   *
+   * @param scope region, see {@link #scope(String, String)}
+   * @return true if the run has a collection timeout for it
+   */
+  public boolean isTimedOut(String scope) {
+    return scope != null && timedOut.contains(scope);
+  }
+
+  /**
+   * Load fingerprints saved by a previous run.
+   * Files of an older version hash different fields and load empty.
+   *
+   * @param file saved fingerprints
+   * @return saved set, empty if the file doesn't exist
+   */
+  public static ResultFingerprints load(File file) throws IOException {
+    final ResultFingerprints set = new ResultFingerprints();
+    if (!file.exists()) {
+      return set;
+    }
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+      Files.newInputStream(file.toPath())))) {
+      final int version = in.readInt() == MAGIC ? in.readInt() : -1;
+      if (version < 1 || version > VERSION) {
+        throw new IOException("Not a fingerprint file: " + file);
+      }
+      if (version < VERSION) {
+        return set;
+      }
+      final int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        final long fingerprint = in.readLong();
+        set.add(fingerprint, readString(in), readString(in), readString(in), readString(in));
+      }
+    }
+    return set;
+  }
+
+  /**
+   * Save fingerprints for the next run, replacing the file only once fully written.
+   *
+   * @param file file to save to
+   */
+  public void save(File file) throws IOException {
+    final File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.exists()) {
+      parent.mkdirs();
+    }
+    final File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      Files.newOutputStream(tmp.toPath())))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(size);
+      for (int i = 0; i < size; i++) {
+        out.writeLong(fingerprints[i]);
+        writeString(out, classnames[i]);
+        writeString(out, names[i]);
+        writeString(out, messages[i]);
+        writeString(out, scopes[i]);
+      }
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    final int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    final byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
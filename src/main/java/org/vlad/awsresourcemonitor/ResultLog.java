@@ -0,0 +1,309 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import com.jaxb.junit.Testcase;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assessment results kept as compact records.
+ * A record holds the check, the instance name and account and whatever the message needs,
+ * test cases and their messages are only built when the report reads them. Recording a
+ * passing instance fills one slot of each column and allocates nothing once the columns
+ * have grown to size.
+ */
+public final class ResultLog extends AbstractList<Testcase> {
+
+  /**
+   * Outcome of a check, names the test case and formats its failure message.
+   */
+  public enum Check {
+    /** Instance passed every check. */
+    PASSED("RunningTime"),
+    /** Detail is unused. */
+    RUNNING_TIME("RunningTime"),
+    /** Detail is the list of tag violations. */
+    INVALID_TAG_VALUE("InvalidTagValue"),
+    /** Detail is the tag name. */
+    MISSING_TAG("MissingTag"),
+    /** Detail is the set of allowed regions. */
+    WRONG_REGION("WrongRegion"),
+    /** Detail is a ready made test case. */
+    TESTCASE(null);
+
+    private final String testName;
+
+    Check(String testName) {
+      this.testName = testName;
+    }
+
+    public String getTestName() {
+      return testName;
+    }
+  }
+
+  private static final Check[] CHECKS = Check.values();
+
+  private int size;
+  private int failing;
+  private byte[] checks;
+  private String[] names;
+  private String[] accounts;
+  private String[] regions;
+  private Object[] details;
+
+  public ResultLog() {
+    this(16);
+  }
+
+  /**
+   * Create log.
+   *
+   * @param capacity number of records to make room for
+   */
+  public ResultLog(int capacity) {
+    final int initial = Math.max(1, capacity);
+    checks = new byte[initial];
+    names = new String[initial];
+    accounts = new String[initial];
+    regions = new String[initial];
+    details = new Object[initial];
+  }
+
+  /**
+   * Record passing instance.
+   *
+   * @param name    instance name
+   * @param account account id, null outside multi-account mode
+   */
+  public void pass(String name, String account) {
+    pass(name, account, null);
+  }
+
+  /**
+   * Record passing instance.
+   *
+   * @param name    instance name
+   * @param account account id, null outside multi-account mode
+   * @param region  instance region, null if not known
+   */
+  public void pass(String name, String account, String region) {
+    record(Check.PASSED, name, account, region, null);
+  }
+
+  /**
+   * Record failed check.
+   *
+   * @param check   failed check
+   * @param name    instance name
+   * @param account account id, null outside multi-account mode
+   * @param detail  what the message is built from, see Check
+   */
+  public void fail(Check check, String name, String account, Object detail) {
+    fail(check, name, account, null, detail);
+  }
+
+  /**
+   * Record failed check.
+   *
+   * @param check   failed check
+   * @param name    instance name
+   * @param account account id, null outside multi-account mode
+   * @param region  instance region, null if not known
+   * @param detail  what the message is built from, see Check
+   */
+  public void fail(Check check, String name, String account, String region, Object detail) {
+    failing++;
+    record(check, name, account, region, detail);
+  }
+
+  private void record(Check check, String name, String account, String region, Object detail) {
+    if (size == checks.length) {
+      grow(size * 2);
+    }
+    checks[size] = (byte) check.ordinal();
+    names[size] = name;
+    accounts[size] = account;
+    regions[size] = region;
+    details[size] = detail;
+    size++;
+  }
+
+  @Override
+  public boolean add(Testcase testCase) {
+    add(testCase, null, null);
+    return true;
+  }
+
+  /**
+   * Record ready made test case.
+   *
+   * @param testCase test case
+   * @param account  account id it belongs to, null if none
+   * @param region   region it belongs to, null if none
+   */
+  public void add(Testcase testCase, String account, String region) {
+    if (!testCase.getFailure().isEmpty()) {
+      failing++;
+    }
+    record(Check.TESTCASE, null, account, region, testCase);
+    modCount++;
+  }
+
+  /**
+   * Append records of another log without building test cases.
+   *
+   * @param other log to append
+   */
+  public void append(ResultLog other) {
+    if (size + other.size > checks.length) {
+      grow(Math.max(size * 2, size + other.size));
+    }
+    System.arraycopy(other.checks, 0, checks, size, other.size);
+    System.arraycopy(other.names, 0, names, size, other.size);
+    System.arraycopy(other.accounts, 0, accounts, size, other.size);
+    System.arraycopy(other.regions, 0, regions, size, other.size);
+    System.arraycopy(other.details, 0, details, size, other.size);
+    size += other.size;
+    failing += other.failing;
+    modCount++;
+  }
+
+  /**
+   * Append a range of records of another log without building test cases.
+   *
+   * @param other log to append from
+   * @param from  first record to append
+   * @param to    record after the last one to append
+   */
+  public void append(ResultLog other, int from, int to) {
+    final int count = to - from;
+    if (size + count > checks.length) {
+      grow(Math.max(size * 2, size + count));
+    }
+    System.arraycopy(other.checks, from, checks, size, count);
+    System.arraycopy(other.names, from, names, size, count);
+    System.arraycopy(other.accounts, from, accounts, size, count);
+    System.arraycopy(other.regions, from, regions, size, count);
+    System.arraycopy(other.details, from, details, size, count);
+    for (int i = from; i < to; i++) {
+      if (other.isFailing(i)) {
+        failing++;
+      }
+    }
+    size += count;
+    modCount++;
+  }
+
+  private void grow(int capacity) {
+    checks = Arrays.copyOf(checks, capacity);
+    names = Arrays.copyOf(names, capacity);
+    accounts = Arrays.copyOf(accounts, capacity);
+    regions = Arrays.copyOf(regions, capacity);
+    details = Arrays.copyOf(details, capacity);
+  }
+
+  /**
+   * Get number of failed checks.
+   *
+   * @return failing test case count
+   */
+  public int getFailing() {
+    return failing;
+  }
+
+  /**
+   * Check whether a record is a failure without building its test case.
+   *
+   * @param index record index
+   * @return true for a failed check
+   */
+  public boolean isFailing(int index) {
+    final Check check = CHECKS[checks[index]];
+    if (check == Check.TESTCASE) {
+      return !((Testcase) details[index]).getFailure().isEmpty();
+    }
+    return check != Check.PASSED;
+  }
+
+  /**
+   * Get account of a record.
+   *
+   * @param index record index
+   * @return account id, null outside multi-account mode
+   */
+  public String getAccount(int index) {
+    return accounts[index];
+  }
+
+  /**
+   * Get region of a record.
+   *
+   * @param index record index
+   * @return region name, null if not known
+   */
+  public String getRegion(int index) {
+    return regions[index];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Build test case of a record.
+   *
+   * @param index record index
+   * @return new test case
+   */
+  @Override
+  public Testcase get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    final Check check = CHECKS[checks[index]];
+    final Object detail = details[index];
+    if (check == Check.TESTCASE) {
+      return (Testcase) detail;
+    }
+
+    // in multi-account mode the same name may exist in several accounts
+    final String name = accounts[index] == null
+      ? names[index] : accounts[index] + "/" + names[index];
+    if (check == Check.PASSED) {
+      return PolicyReport.getPassingTestCase(name, check.getTestName());
+    }
+    return PolicyReport.getFailingTestCase(name, check.getTestName(), message(check, detail));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static String message(Check check, Object detail) {
+    switch (check) {
+      case RUNNING_TIME:
+        return "has been running longer than the allowable time.";
+      case INVALID_TAG_VALUE:
+        final StringBuilder errMsg = new StringBuilder("Tag Errors Detected :");
+        for (TagViolation violation : (List<TagViolation>) detail) {
+          errMsg.append(" [").append(violation.getMessage()).append("] ");
+        }
+        return errMsg.toString();
+      case MISSING_TAG:
+        return "Does not have required tag '" + detail + "'";
+      case WRONG_REGION:
+        return "Found instance outside of " + detail + " region";
+      default:
+        throw new IllegalStateException("No message for " + check);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Max runtime rules resolved against the start of a run.
+ * Every rule becomes the latest launch time that is still within its limit, so checking
+ * an instance is a walk over a short array and one comparison.
+ */
+public final class RuntimeCutoffs {
+
+  // checked after the policy rules, these instances were never subject to max runtime
+  private static final List<RuntimeRule> BUILT_IN = Arrays.asList(
+    new RuntimeRule("Permanent", null, RuntimeRule.UNLIMITED),
+    new RuntimeRule("Spot", null, RuntimeRule.UNLIMITED));
+
+  private final RuntimeRule[] rules;
+  private final long[] cutoffs;
+  private final long defaultCutoff;
+
+  /**
+   * Resolve rules.
+   *
+   * @param policyRules   rules from the policy
+   * @param defaultMillis max runtime of instances no rule applies to
+   * @param nowMillis     start of the run
+   */
+  public RuntimeCutoffs(List<RuntimeRule> policyRules, long defaultMillis, long nowMillis) {
+    final List<RuntimeRule> all = new ArrayList<>(policyRules);
+    all.addAll(BUILT_IN);
+
+    rules = all.toArray(new RuntimeRule[all.size()]);
+    cutoffs = new long[rules.length];
+    for (int i = 0; i < rules.length; i++) {
+      cutoffs[i] = cutoff(rules[i].getMaxMillis(), nowMillis);
+    }
+    defaultCutoff = cutoff(defaultMillis, nowMillis);
+  }
+
+  private static long cutoff(long maxMillis, long nowMillis) {
+    return maxMillis == RuntimeRule.UNLIMITED ? Long.MIN_VALUE : nowMillis - maxMillis;
+  }
+
+  /**
+   * Check if instance has been running longer than allowed.
+   *
+   * @param lifecycle    instance lifecycle
+   * @param environment  instance environment
+   * @param launchMillis instance launch time
+   * @return true if instance is overdue
+   */
+  public boolean isOverdue(String lifecycle, String environment, long launchMillis) {
+    for (int i = 0; i < rules.length; i++) {
+      if (rules[i].matches(lifecycle, environment)) {
+        return launchMillis < cutoffs[i];
+      }
+    }
+    return launchMillis < defaultCutoff;
+  }
+}
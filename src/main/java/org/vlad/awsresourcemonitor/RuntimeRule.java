@@ -0,0 +1,134 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maximum time a running instance with a given Lifecycle and Environment may run.
+ * Rules come from the MaxRuntime section of the policy, the first matching rule wins.
+ */
+public final class RuntimeRule {
+
+  /** Max runtime of a rule without a limit. */
+  public static final long UNLIMITED = -1;
+
+  private final String lifecycle;
+  private final String environment;
+  private final long maxMillis;
+
+  /**
+   * Create rule.
+   *
+   * @param lifecycle   lifecycle to match, null for any
+   * @param environment environment to match, null for any
+   * @param maxMillis   max runtime, UNLIMITED for no limit
+   */
+  public RuntimeRule(String lifecycle, String environment, long maxMillis) {
+    this.lifecycle = lifecycle;
+    this.environment = environment;
+    this.maxMillis = maxMillis;
+  }
+
+  /**
+   * Check if rule applies to an instance.
+   *
+   * @param lifecycleValue   instance lifecycle
+   * @param environmentValue instance environment
+   * @return true if rule applies
+   */
+  public boolean matches(String lifecycleValue, String environmentValue) {
+    return (lifecycle == null || lifecycle.equals(lifecycleValue))
+      && (environment == null || environment.equals(environmentValue));
+  }
+
+  public String getLifecycle() {
+    return lifecycle;
+  }
+
+  public String getEnvironment() {
+    return environment;
+  }
+
+  public long getMaxMillis() {
+    return maxMillis;
+  }
+
+  /**
+   * Parse the MaxRuntime section of the policy.
+   * Every entry may have Lifecycle and Environment to match and Hours allowed,
+   * an entry without Hours exempts matching instances.
+   *
+   * @param section      MaxRuntime section, may be null
+   * @param lifecycles   allowed lifecycle values
+   * @param environments allowed environment values
+   * @return rules in policy order
+   */
+  static List<RuntimeRule> parse(List<?> section, Set<String> lifecycles,
+                                 Set<String> environments) throws ParseException {
+
+    if (section == null) {
+      return Collections.emptyList();
+    }
+
+    final List<RuntimeRule> rules = new ArrayList<>(section.size());
+    for (Object entry : section) {
+      if (!(entry instanceof Map)) {
+        throw new ParseException("MaxRuntime entry must be a map: " + entry, 0);
+      }
+
+      String lifecycle = null;
+      String environment = null;
+      long maxMillis = UNLIMITED;
+      for (Map.Entry<?, ?> field : ((Map<?, ?>) entry).entrySet()) {
+        final String key = String.valueOf(field.getKey());
+        final String value = String.valueOf(field.getValue());
+        if ("Lifecycle".equals(key)) {
+          lifecycle = checkValue(key, value, lifecycles);
+        } else if ("Environment".equals(key)) {
+          environment = checkValue(key, value, environments);
+        } else if ("Hours".equals(key)) {
+          maxMillis = TimeUnit.HOURS.toMillis(parseHours(value));
+        } else {
+          throw new ParseException("Unknown MaxRuntime key '" + key + "'", 0);
+        }
+      }
+      rules.add(new RuntimeRule(lifecycle, environment, maxMillis));
+    }
+
+    return Collections.unmodifiableList(rules);
+  }
+
+  private static String checkValue(String key, String value, Set<String> allowed)
+    throws ParseException {
+
+    if (!allowed.contains(value)) {
+      throw new ParseException("MaxRuntime " + key + " '" + value + "' is not allowed", 0);
+    }
+    return value;
+  }
+
+  private static long parseHours(String value) throws ParseException {
+    try {
+      final long hours = Long.parseLong(value);
+      if (hours >= 0) {
+        return hours;
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new ParseException("MaxRuntime Hours must be a non-negative number: " + value, 0);
+  }
+}
@@ -0,0 +1,201 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+
+package org.vlad.awsresourcemonitor;
+
+import com.jaxb.junit.Testcase;
+import org.vlad.awsresourcemonitor.exception.XmlException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Splits a JUnit report by account and/or region and writes the parts in parallel.
+ * Results are grouped in one pass that only looks at accounts, regions and outcomes, so
+ * every shard knows its counts before it is written and can be streamed through gzip.
+ * An index file lists the shards with their counts.
+ */
+public class ShardedReportWriter {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File dir;
+  private final String baseName;
+  private final String suiteName;
+  private final boolean byAccount;
+  private final boolean byRegion;
+  private final boolean compress;
+
+  /**
+   * Create writer.
+   *
+   * @param dir       report directory
+   * @param baseName  report file name without extension
+   * @param suiteName test suite name of every shard
+   * @param byAccount shard by account
+   * @param byRegion  shard by region
+   * @param compress  gzip shards
+   */
+  public ShardedReportWriter(File dir, String baseName, String suiteName, boolean byAccount,
+                             boolean byRegion, boolean compress) {
+    this.dir = dir;
+    this.baseName = baseName;
+    this.suiteName = suiteName;
+    this.byAccount = byAccount;
+    this.byRegion = byRegion;
+    this.compress = compress;
+  }
+
+  /**
+   * Get index file.
+   *
+   * @return index file
+   */
+  public File getIndexFile() {
+    return new File(dir, baseName + "-index.json");
+  }
+
+  /**
+   * Write shards and index.
+   *
+   * @param results     test cases, accounts and regions are only known from a result log
+   * @param parallelism maximum number of shards written at once
+   * @return shard files in index order
+   */
+  public List<File> write(final List<Testcase> results, int parallelism)
+    throws IOException, XmlException {
+
+    final ResultLog log = results instanceof ResultLog ? (ResultLog) results : null;
+    // sorted by key so the index doesn't depend on collection order
+    final Map<String, Shard> shards = new TreeMap<>();
+    for (int i = 0; i < results.size(); i++) {
+      final String account = byAccount && log != null ? log.getAccount(i) : null;
+      final String region = byRegion && log != null ? log.getRegion(i) : null;
+      final String key = key(account, region);
+      Shard shard = shards.get(key);
+      if (shard == null) {
+        shard = new Shard(new File(dir, fileName(key)), account, region);
+        shards.put(key, shard);
+      }
+      shard.add(i, log != null ? log.isFailing(i) : !results.get(i).getFailure().isEmpty());
+    }
+    if (shards.isEmpty()) {
+      // a clean run still gets a report, JUnit publishers fail on a missing file
+      shards.put("", new Shard(new File(dir, fileName("")), null, null));
+    }
+
+    final List<Callable<Void>> tasks = new ArrayList<>(shards.size());
+    for (final Shard shard : shards.values()) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          shard.write(results);
+          return null;
+        }
+      });
+    }
+    PolicyReport.runAll(tasks, parallelism);
+
+    writeIndex(shards.values());
+
+    final List<File> files = new ArrayList<>(shards.size());
+    for (Shard shard : shards.values()) {
+      files.add(shard.file);
+    }
+    return files;
+  }
+
+  private static String key(String account, String region) {
+    if (account == null) {
+      return region == null ? "" : region;
+    }
+    return region == null ? account : account + "-" + region;
+  }
+
+  private String fileName(String key) {
+    final String name = key.isEmpty() ? baseName
+      : baseName + "-" + key.replaceAll("[^A-Za-z0-9._-]", "_");
+    return compress ? name + ".xml.gz" : name + ".xml";
+  }
+
+  private void writeIndex(Iterable<Shard> shards) throws IOException {
+    int tests = 0;
+    int failures = 0;
+    final StringBuilder entries = new StringBuilder();
+    for (Shard shard : shards) {
+      tests += shard.size;
+      failures += shard.failures;
+      entries.append(entries.length() == 0 ? "\n" : ",\n").append("    {\"file\":");
+      JsonLinesSink.quote(entries, shard.file.getName()).append(",\"account\":");
+      JsonLinesSink.quote(entries, shard.account).append(",\"region\":");
+      JsonLinesSink.quote(entries, shard.region).append(",\"tests\":").append(shard.size)
+        .append(",\"failures\":").append(shard.failures).append('}');
+    }
+
+    final StringBuilder index = new StringBuilder("{\"suite\":");
+    JsonLinesSink.quote(index, suiteName).append(",\"tests\":").append(tests)
+      .append(",\"failures\":").append(failures).append(",\"shards\":[")
+      .append(entries).append("\n]}\n");
+    try (Writer out = Files.newBufferedWriter(getIndexFile().toPath(), StandardCharsets.UTF_8)) {
+      out.write(index.toString());
+    }
+  }
+
+  /**
+   * Result indexes going into one file.
+   */
+  private final class Shard {
+
+    private final File file;
+    private final String account;
+    private final String region;
+    private int[] indexes = new int[16];
+    private int size;
+    private int failures;
+
+    Shard(File file, String account, String region) {
+      this.file = file;
+      this.account = account;
+      this.region = region;
+    }
+
+    void add(int index, boolean failing) {
+      if (size == indexes.length) {
+        indexes = Arrays.copyOf(indexes, size * 2);
+      }
+      indexes[size++] = index;
+      if (failing) {
+        failures++;
+      }
+    }
+
+    void write(List<Testcase> results) throws IOException, XmlException {
+      OutputStream stream = Files.newOutputStream(file.toPath());
+      if (compress) {
+        stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+      }
+      try (JunitReportWriter writer = new JunitReportWriter(stream, suiteName, size, failures)) {
+        for (int i = 0; i < size; i++) {
+          writer.write(results.get(indexes[i]));
+        }
+      }
+    }
+  }
+}
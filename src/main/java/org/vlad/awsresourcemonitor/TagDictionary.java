@@ -0,0 +1,79 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps every distinct string seen during a run to a small int.
+ * Tag keys and values repeat across instances, so storing codes instead of the strings
+ * copied out of the SDK model keeps one copy of each. Safe for concurrent use,
+ * code 0 always stands for null.
+ */
+public final class TagDictionary {
+
+  private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+  private volatile String[] values = new String[64];
+  private int size = 1;
+
+  /**
+   * Get code of a string, adding it if it is new.
+   *
+   * @param value string, may be null
+   * @return code
+   */
+  public int encode(String value) {
+    if (value == null) {
+      return 0;
+    }
+
+    final Integer code = codes.get(value);
+    if (code != null) {
+      return code;
+    }
+    return add(value);
+  }
+
+  private synchronized int add(String value) {
+    final Integer code = codes.get(value);
+    if (code != null) {
+      return code;
+    }
+
+    String[] table = values;
+    if (size == table.length) {
+      table = Arrays.copyOf(table, size * 2);
+    }
+    table[size] = value;
+    // volatile write publishes the new entry to decoding threads
+    values = table;
+    codes.put(value, size);
+    return size++;
+  }
+
+  /**
+   * Get string of a code.
+   *
+   * @param code code returned by encode
+   * @return string, null for code 0
+   */
+  public String decode(int code) {
+    return values[code];
+  }
+
+  /**
+   * Get number of distinct strings.
+   *
+   * @return dictionary size
+   */
+  public synchronized int size() {
+    return size - 1;
+  }
+}
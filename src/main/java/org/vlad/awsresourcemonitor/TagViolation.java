@@ -0,0 +1,78 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor;
+
+/**
+ * Tag problem found on an instance.
+ * Only the offending key and value are kept, the message is formatted when a report asks for it.
+ */
+public final class TagViolation {
+
+  /**
+   * Kind of tag problem.
+   */
+  public enum Kind {
+    /** Tag key is not allowed by the policy. */
+    INVALID_KEY,
+    /** Tag value is not one of the values allowed for the key. */
+    INVALID_VALUE,
+    /** Name tag is missing or empty, value holds the id used instead. */
+    MISSING_NAME
+  }
+
+  private final Kind kind;
+  private final String key;
+  private final String value;
+
+  /**
+   * Create violation.
+   *
+   * @param kind  kind of problem
+   * @param key   tag key, attribute name for invalid values
+   * @param value tag value
+   */
+  public TagViolation(Kind kind, String key, String value) {
+    this.kind = kind;
+    this.key = key;
+    this.value = value;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public String getKey() {
+    return key;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * Format message for the report.
+   *
+   * @return message
+   */
+  public String getMessage() {
+    switch (kind) {
+      case INVALID_KEY:
+        return "Invalid tag key '" + key + "'";
+      case INVALID_VALUE:
+        return "Invalid " + key + " tag value '" + value + '\'';
+      default:
+        return "Instance " + value + ": 'Name' tag is missing or empty";
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getMessage();
+  }
+}
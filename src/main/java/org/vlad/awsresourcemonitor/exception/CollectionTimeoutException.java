@@ -9,10 +9,10 @@
 package org.vlad.awsresourcemonitor.exception;
 
 /**
- * Exception to indicate bad object attribute key.
+ * Exception to indicate a collection deadline has passed.
  */
-public class BadObjectAttributeKey extends Throwable {
-  public BadObjectAttributeKey(final String msg) {
+public class CollectionTimeoutException extends RuntimeException {
+  public CollectionTimeoutException(final String msg) {
     super(msg);
   }
 }
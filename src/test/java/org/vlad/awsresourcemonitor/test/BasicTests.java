@@ -7,7 +7,9 @@
  **/
 package org.vlad.awsresourcemonitor.test;
 
+import com.amazonaws.http.timers.client.ClientExecutionTimeoutException;
 import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
 import com.amazonaws.services.ec2.AmazonEC2;
 import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
 import com.amazonaws.services.ec2.model.DescribeInstancesResult;
@@ -23,10 +25,16 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.vlad.awsresourcemonitor.AWSResourceMonitor;
+import org.vlad.awsresourcemonitor.CollectionSettings;
 import org.vlad.awsresourcemonitor.Ec2InstanceCollection;
+import org.vlad.awsresourcemonitor.InstanceConsumer;
 import org.vlad.awsresourcemonitor.InstanceData;
 import org.vlad.awsresourcemonitor.PolicyReport;
+import org.vlad.awsresourcemonitor.RDSInstanceCollection;
+import org.vlad.awsresourcemonitor.RegionClientFactory;
 import org.vlad.awsresourcemonitor.exception.XmlException;
 import org.xml.sax.SAXException;
 
@@ -39,6 +47,7 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -223,6 +232,135 @@ public class BasicTests {
     assertThat(tmpFileName).hasSameContentAs(basicSamplereport);
   }
 
+  @Test
+  public void pipelinedRunShouldProduceTheSameReport() throws SAXException, TransformerException, IOException, ParserConfigurationException, JAXBException, URISyntaxException, XmlException, ParseException {
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+
+    String reportPath = testFolder.getRoot().toPath().toString();
+    mon.setjUnitFormatReportPath(reportPath);
+    mon.setNamePattern("my.*");
+    mon.setMaxAllowedHoursToRun("2");
+    mon.setPipeline(1, 3);
+    mon.loadPolicy(policyFile);
+
+
+    AmazonRDS rds = mock(AmazonRDS.class);
+    DescribeDBInstancesResult rds_res = mock(DescribeDBInstancesResult.class);
+    when(rds.describeDBInstances((DescribeDBInstancesRequest) anyObject())).thenReturn(rds_res);
+
+
+    AmazonEC2 ec2 = mock(AmazonEC2.class);
+
+
+
+    DescribeInstancesResult result = mock(DescribeInstancesResult.class);
+
+    List<Reservation> reservations = new ArrayList<Reservation>();
+    when(result.getReservations())
+      .thenReturn(reservations)
+      .thenReturn(new ArrayList<Reservation>());
+    when(ec2.describeInstances((DescribeInstancesRequest) notNull())).thenReturn(result);
+
+    Reservation res1 = mock(Reservation.class);
+    reservations.add(res1);
+
+    List<Instance> list1 = new ArrayList<Instance>();
+    when(res1.getInstances()).thenReturn(list1);
+
+
+    Instance inst = TestUtil.getMockInstance("running", "myOrg-app1 Master");
+    TestUtil.addInstanceTag(inst, "Owner", "Vlad");
+    TestUtil.addInstanceTag(inst, "Project", "App1 (v1.0)");
+    TestUtil.addInstanceTag(inst, "Environment", "Dev");
+    TestUtil.addInstanceTag(inst, "Service", "VPN");
+    TestUtil.addInstanceTag(inst, "ChargeLine", "InternalDev");
+    list1.add(inst);
+
+
+    inst = TestUtil.getMockInstance("terminated", "myOrg-app1Services SSO Server", 1);
+    TestUtil.addInstanceTag(inst, "Owner", "Vlad");
+    TestUtil.addInstanceTag(inst, "Project", "App1 (v1.0)");
+    TestUtil.addInstanceTag(inst, "Service", "Build");
+    TestUtil.addInstanceTag(inst, "ChargeLine", "InternalDev");
+    list1.add(inst);
+
+    inst = TestUtil.getMockInstance("running", "myOrg-app2Services SSO Server", 4);
+    list1.add(inst);
+
+    mon.run(ec2, rds);
+
+    File basicSamplereport = TestUtil.getTestResource("testReportTagsMissing.xml");
+
+    PolicyReport pReport = new PolicyReport(reportPath);
+    File tmpFileName = pReport.getJunitReportFile();
+
+    assertThat(tmpFileName).hasSameContentAs(basicSamplereport);
+  }
+
+  @Test
+  public void pipelinedRegionThreadsShouldProduceTheSameReport() throws Exception {
+    File reference = testFolder.newFolder("reference");
+    File pipelined = testFolder.newFolder("pipelined");
+
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.setjUnitFormatReportPath(reference.getPath());
+    mon.setNamePattern("my.*");
+    mon.setRegionThreads(2);
+    mon.loadPolicy(policyFile);
+    mon.run(slowFirstRegionClients(), emptyRds());
+
+    mon = new AWSResourceMonitor();
+    mon.setjUnitFormatReportPath(pipelined.getPath());
+    mon.setNamePattern("my.*");
+    mon.setRegionThreads(2);
+    mon.setPipeline(2, 3);
+    mon.loadPolicy(policyFile);
+    mon.run(slowFirstRegionClients(), emptyRds());
+
+    assertThat(new PolicyReport(pipelined.getPath()).getJunitReportFile())
+      .hasSameContentAs(new PolicyReport(reference.getPath()).getJunitReportFile());
+  }
+
+  private static AmazonRDS emptyRds() {
+    AmazonRDS rds = mock(AmazonRDS.class);
+    DescribeDBInstancesResult rdsResult = mock(DescribeDBInstancesResult.class);
+    when(rds.describeDBInstances((DescribeDBInstancesRequest) anyObject())).thenReturn(rdsResult);
+    return rds;
+  }
+
+  /**
+   * Every region has a few instances, the first one answers last.
+   */
+  private static RegionClientFactory<AmazonEC2> slowFirstRegionClients() {
+    return new RegionClientFactory<AmazonEC2>() {
+      @Override
+      public synchronized AmazonEC2 forRegion(final Regions region) {
+        AmazonEC2 ec2 = mock(AmazonEC2.class);
+        Reservation res = mock(Reservation.class);
+        List<Instance> instances = new ArrayList<Instance>();
+        for (int i = 0; i < 3; i++) {
+          instances.add(TestUtil.getMockInstance(i == 1 ? "running" : "terminated",
+            "myOrg-" + region.getName() + "-" + i));
+        }
+        when(res.getInstances()).thenReturn(instances);
+        final DescribeInstancesResult result = mock(DescribeInstancesResult.class);
+        when(result.getReservations()).thenReturn(Collections.singletonList(res));
+        when(ec2.describeInstances((DescribeInstancesRequest) notNull())).thenAnswer(
+          new Answer<DescribeInstancesResult>() {
+            @Override
+            public DescribeInstancesResult answer(InvocationOnMock invocation)
+              throws InterruptedException {
+              if (region == Regions.US_EAST_1) {
+                Thread.sleep(200);
+              }
+              return result;
+            }
+          });
+        return ec2;
+      }
+    };
+  }
+
   @Test
   public void instanceDataMustHaveRegionFieldFilled() throws SAXException, TransformerException, IOException, ParserConfigurationException, JAXBException {
 
@@ -313,6 +451,214 @@ public class BasicTests {
   }
 
 
+  @Test
+  public void parallelCollectionShouldUseOneClientPerRegionAndKeepRegionOrder()
+    throws FileNotFoundException, ParseException {
+
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.loadPolicy(policyFile);
+
+    final List<AmazonEC2> clients = new ArrayList<AmazonEC2>();
+
+    RegionClientFactory<AmazonEC2> factory = new RegionClientFactory<AmazonEC2>() {
+      @Override
+      public synchronized AmazonEC2 forRegion(Regions region) {
+        AmazonEC2 ec2 = mock(AmazonEC2.class);
+        DescribeInstancesResult result = mock(DescribeInstancesResult.class);
+        Reservation res = mock(Reservation.class);
+        List<Instance> instances = new ArrayList<Instance>();
+        instances.add(TestUtil.getMockInstance("running", "myOrg-" + region.getName()));
+        when(res.getInstances()).thenReturn(instances);
+        when(result.getReservations()).thenReturn(Collections.singletonList(res));
+        when(ec2.describeInstances((DescribeInstancesRequest) notNull())).thenReturn(result);
+        clients.add(ec2);
+        return ec2;
+      }
+    };
+
+    List<InstanceData> list = new Ec2InstanceCollection(factory, 4).getObjList();
+
+    assertThat(list).hasSize(10);
+    assertThat(clients).hasSize(10);
+    assertThat(list.get(0).getRegion()).isEqualTo("us-east-1");
+    assertThat(list.get(1).getRegion()).isEqualTo("us-west-1");
+    for (InstanceData data : list) {
+      assertThat(data.name).isEqualTo("myOrg-" + data.getRegion());
+    }
+    for (AmazonEC2 ec2 : clients) {
+      verify(ec2, times(1)).describeInstances((DescribeInstancesRequest) anyObject());
+      verify(ec2, never()).setRegion((Region) anyObject());
+    }
+  }
+
+
+  @Test
+  public void regionMissingItsDeadlineShouldBeReportedWhileOthersAreCollected()
+    throws IOException, ParseException, XmlException {
+
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.setjUnitFormatReportPath(testFolder.getRoot().toPath().toString());
+    mon.setNamePattern("my.*");
+    mon.setRegionThreads(4);
+    mon.setTimeouts(30, 120);
+    mon.loadPolicy(policyFile);
+
+    final List<DescribeInstancesRequest> requests =
+      Collections.synchronizedList(new ArrayList<DescribeInstancesRequest>());
+
+    RegionClientFactory<AmazonEC2> factory = new RegionClientFactory<AmazonEC2>() {
+      @Override
+      public synchronized AmazonEC2 forRegion(final Regions region) {
+        AmazonEC2 ec2 = mock(AmazonEC2.class);
+        Reservation res = mock(Reservation.class);
+        List<Instance> instances = new ArrayList<Instance>();
+        instances.add(TestUtil.getMockInstance("terminated", "myOrg-" + region.getName()));
+        when(res.getInstances()).thenReturn(instances);
+        final DescribeInstancesResult result = mock(DescribeInstancesResult.class);
+        when(result.getReservations()).thenReturn(Collections.singletonList(res));
+        when(ec2.describeInstances((DescribeInstancesRequest) notNull())).thenAnswer(
+          new Answer<DescribeInstancesResult>() {
+            @Override
+            public DescribeInstancesResult answer(InvocationOnMock invocation) {
+              requests.add((DescribeInstancesRequest) invocation.getArguments()[0]);
+              if (region == Regions.US_WEST_1) {
+                throw new ClientExecutionTimeoutException();
+              }
+              return result;
+            }
+          });
+        return ec2;
+      }
+    };
+
+    AmazonRDS rds = mock(AmazonRDS.class);
+    when(rds.describeDBInstances((DescribeDBInstancesRequest) anyObject()))
+      .thenReturn(new DescribeDBInstancesResult());
+
+    mon.run(factory, rds);
+
+    List<Testcase> timeouts = new ArrayList<Testcase>();
+    for (Testcase testCase : mon.getTestResults()) {
+      if ("CollectionTimeout".equals(testCase.getName())) {
+        timeouts.add(testCase);
+      }
+    }
+    assertThat(mon.getTestResults()).hasSize(10);
+    assertThat(timeouts).hasSize(1);
+    assertThat(timeouts.get(0).getClassname()).isEqualTo("us-west-1");
+    assertThat(timeouts.get(0).getFailure().get(0).getMessage()).contains("[EC2]");
+    assertThat(mon.numFailing).isEqualTo(1);
+    for (DescribeInstancesRequest request : requests) {
+      assertThat(request.getSdkClientExecutionTimeout()).isBetween(1, 30000);
+    }
+  }
+
+
+  @Test
+  public void shouldFollowNextTokenAndHandOverEachPageBeforeRequestingTheNext()
+    throws FileNotFoundException, ParseException {
+
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.loadPolicy(policyFile);
+
+    final List<String> events = new ArrayList<String>();
+
+    final DescribeInstancesResult page1 = mock(DescribeInstancesResult.class);
+    Reservation res1 = mock(Reservation.class);
+    List<Instance> list1 = new ArrayList<Instance>();
+    list1.add(TestUtil.getMockInstance("running", "myOrg-page1"));
+    when(res1.getInstances()).thenReturn(list1);
+    when(page1.getReservations()).thenReturn(Collections.singletonList(res1));
+    when(page1.getNextToken()).thenReturn("token-2");
+
+    final DescribeInstancesResult page2 = mock(DescribeInstancesResult.class);
+    Reservation res2 = mock(Reservation.class);
+    List<Instance> list2 = new ArrayList<Instance>();
+    list2.add(TestUtil.getMockInstance("running", "myOrg-page2"));
+    when(res2.getInstances()).thenReturn(list2);
+    when(page2.getReservations()).thenReturn(Collections.singletonList(res2));
+
+    final DescribeInstancesResult empty = mock(DescribeInstancesResult.class);
+
+    AmazonEC2 ec2 = mock(AmazonEC2.class);
+    when(ec2.describeInstances((DescribeInstancesRequest) notNull())).thenAnswer(
+      new Answer<DescribeInstancesResult>() {
+        private int calls;
+
+        @Override
+        public DescribeInstancesResult answer(InvocationOnMock invocation) {
+          DescribeInstancesRequest rq = (DescribeInstancesRequest) invocation.getArguments()[0];
+          events.add("request " + rq.getMaxResults() + " " + rq.getNextToken());
+          calls++;
+          if (calls == 1) {
+            return page1;
+          }
+          return calls == 2 ? page2 : empty;
+        }
+      });
+
+    InstanceConsumer consumer = new InstanceConsumer() {
+      @Override
+      public void accept(InstanceData data) {
+        events.add("instance " + data.name);
+      }
+    };
+
+    List<InstanceData> list = new Ec2InstanceCollection(ec2,
+      new CollectionSettings().withPageSize(50), consumer).getObjList();
+
+    assertThat(list).isEmpty();
+    assertThat(events.subList(0, 4)).containsExactly(
+      "request 50 null", "instance myOrg-page1", "request 50 token-2", "instance myOrg-page2");
+    verify(ec2, times(11)).describeInstances((DescribeInstancesRequest) anyObject());
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectEc2PageSizeOutsideServiceLimits() {
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.setPageSize(1001);
+    mon.initialize();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectRdsPageSizeOutsideServiceLimits() {
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.setRdsPageSize(10);
+    mon.initialize();
+  }
+
+
+  @Test
+  public void shouldFollowRdsMarkerAndTimeEachPage() {
+
+    final List<String> markers = new ArrayList<String>();
+
+    final DescribeDBInstancesResult page1 = mock(DescribeDBInstancesResult.class);
+    when(page1.getMarker()).thenReturn("marker-2");
+    final DescribeDBInstancesResult page2 = mock(DescribeDBInstancesResult.class);
+
+    AmazonRDS rds = mock(AmazonRDS.class);
+    when(rds.describeDBInstances((DescribeDBInstancesRequest) notNull())).thenAnswer(
+      new Answer<DescribeDBInstancesResult>() {
+        @Override
+        public DescribeDBInstancesResult answer(InvocationOnMock invocation) {
+          DescribeDBInstancesRequest rq = (DescribeDBInstancesRequest) invocation.getArguments()[0];
+          markers.add(rq.getMaxRecords() + " " + rq.getMarker());
+          return rq.getMarker() == null ? page1 : page2;
+        }
+      });
+
+    RDSInstanceCollection coll = new RDSInstanceCollection(rds,
+      new CollectionSettings().withRdsPageSize(20), null);
+
+    assertThat(markers).hasSize(20);
+    assertThat(markers.subList(0, 2)).containsExactly("20 null", "20 marker-2");
+    assertThat(coll.getPageStats().getCount("us-east-1")).isEqualTo(2);
+    assertThat(coll.getPageStats().getSummary()).hasSize(10);
+  }
+
+
   @Test
   public void shouldHandlePoliciesWithNoOwnerTag() throws SAXException, TransformerException, IOException, ParserConfigurationException, JAXBException, URISyntaxException, XmlException, ParseException {
     AWSResourceMonitor mon = new AWSResourceMonitor();
@@ -502,6 +848,44 @@ public class BasicTests {
   }
 
 
+  @Test
+  public void maxRuntimeShouldFollowPolicyRuleForLifecycleAndEnvironment()
+    throws URISyntaxException, FileNotFoundException, ParseException {
+
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.loadPolicy(TestUtil.getTestResource("runtime-policy.yaml").getPath());
+
+    List<InstanceData> instList = new ArrayList<InstanceData>();
+    instList.add(onDemandInstance("myOrg-dev", "Dev", 10));
+    instList.add(onDemandInstance("myOrg-stage", "Stage", 10));
+    instList.add(onDemandInstance("myOrg-prod", "Prod", 480));
+
+    mon.initialize();
+    mon.assessInstances(instList);
+    List<Testcase> res = mon.getTestResults();
+
+    assertThat(res).hasSize(3);
+    assertThat(res.get(0).getClassname()).isEqualTo("myOrg-dev");
+    assertThat(res.get(0).getFailure().get(0).getMessage())
+      .isEqualTo("has been running longer than the allowable time.");
+    assertThat(res.get(1).getFailure()).isEmpty();
+    assertThat(res.get(2).getFailure()).isEmpty();
+  }
+
+  private static InstanceData onDemandInstance(String name, String environment, int hours) {
+    Instance inst = TestUtil.getMockInstance("running", name, hours);
+    TestUtil.addInstanceTag(inst, "ChargeLine", "InternalDev");
+    TestUtil.addInstanceTag(inst, "Lifecycle", "OnDemand");
+    TestUtil.addInstanceTag(inst, "Environment", environment);
+    TestUtil.addInstanceTag(inst, "Service", "VPN");
+    TestUtil.addInstanceTag(inst, "Owner", "Vlad");
+    TestUtil.addInstanceTag(inst, "Project", "App1 (v1.0)");
+
+    InstanceData instData = new InstanceData(inst);
+    instData.setRegion("us-east-1");
+    return instData;
+  }
+
   @Test
   public void weCanWriteBasicXMLReport() throws JAXBException, SAXException, IOException, TransformerException, ParserConfigurationException, URISyntaxException, XmlException {
 
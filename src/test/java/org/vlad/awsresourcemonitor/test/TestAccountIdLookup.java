@@ -0,0 +1,84 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.internal.StaticCredentialsProvider;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.model.GetCallerIdentityRequest;
+import com.amazonaws.services.securitytoken.model.GetCallerIdentityResult;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vlad.awsresourcemonitor.AccountIdLookup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestAccountIdLookup {
+
+  private static final long TTL = TimeUnit.HOURS.toMillis(1);
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void shouldCallStsOnceEvenWhenPrefetched() {
+    AWSSecurityTokenService sts = mockSts("123456789012");
+    AccountIdLookup lookup = new AccountIdLookup(sts, credentials("AKIAFIRST"), null, TTL);
+
+    lookup.prefetch();
+    assertThat(lookup.get()).isEqualTo("123456789012");
+    assertThat(lookup.get()).isEqualTo("123456789012");
+
+    verify(sts, times(1)).getCallerIdentity((GetCallerIdentityRequest) anyObject());
+  }
+
+  @Test
+  public void shouldReuseCachedAccountForSameCredentialsOnly() throws IOException {
+    File cache = new File(testFolder.getRoot(), "account");
+
+    new AccountIdLookup(mockSts("123456789012"), credentials("AKIAFIRST"), cache, TTL).get();
+    assertThat(FileUtils.readFileToString(cache)).doesNotContain("AKIAFIRST");
+
+    AWSSecurityTokenService sts = mockSts("999999999999");
+    assertThat(new AccountIdLookup(sts, credentials("AKIAFIRST"), cache, TTL).get())
+      .isEqualTo("123456789012");
+    verify(sts, never()).getCallerIdentity((GetCallerIdentityRequest) anyObject());
+
+    assertThat(new AccountIdLookup(sts, credentials("AKIASECOND"), cache, TTL).get())
+      .isEqualTo("999999999999");
+    verify(sts, times(1)).getCallerIdentity((GetCallerIdentityRequest) anyObject());
+  }
+
+  @Test
+  public void shouldIgnoreExpiredCache() {
+    File cache = new File(testFolder.getRoot(), "account");
+
+    new AccountIdLookup(mockSts("123456789012"), credentials("AKIAFIRST"), cache, TTL).get();
+    assertThat(cache.setLastModified(System.currentTimeMillis() - 2 * TTL)).isTrue();
+
+    AWSSecurityTokenService sts = mockSts("123456789012");
+    new AccountIdLookup(sts, credentials("AKIAFIRST"), cache, TTL).get();
+    verify(sts, times(1)).getCallerIdentity((GetCallerIdentityRequest) anyObject());
+  }
+
+  private static AWSSecurityTokenService mockSts(String account) {
+    AWSSecurityTokenService sts = mock(AWSSecurityTokenService.class);
+    when(sts.getCallerIdentity((GetCallerIdentityRequest) anyObject()))
+      .thenReturn(new GetCallerIdentityResult().withAccount(account));
+    return sts;
+  }
+
+  private static StaticCredentialsProvider credentials(String accessKey) {
+    return new StaticCredentialsProvider(new BasicAWSCredentials(accessKey, "secret"));
+  }
+}
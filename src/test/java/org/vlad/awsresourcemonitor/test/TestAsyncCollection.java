@@ -0,0 +1,201 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.ec2.AmazonEC2Async;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.rds.AmazonRDSAsync;
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DescribeDBInstancesRequest;
+import com.amazonaws.services.rds.model.DescribeDBInstancesResult;
+import com.amazonaws.services.rds.model.ListTagsForResourceRequest;
+import com.amazonaws.services.rds.model.ListTagsForResourceResult;
+import com.amazonaws.services.rds.model.Tag;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.vlad.awsresourcemonitor.AsyncInstanceCollection;
+import org.vlad.awsresourcemonitor.CollectionSettings;
+import org.vlad.awsresourcemonitor.InstanceData;
+import org.vlad.awsresourcemonitor.Policy;
+import org.vlad.awsresourcemonitor.RateLimiter;
+import org.vlad.awsresourcemonitor.RegionClientFactory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestAsyncCollection {
+
+  @BeforeClass
+  public static void setUp() throws URISyntaxException, FileNotFoundException, ParseException {
+
+    File yamlFile = TestUtil.getTestResource("policy.yaml");
+    Policy.load( yamlFile );
+
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldFollowPagesInEveryRegionAndKeepRegionOrder() {
+
+    final AmazonEC2Async east = mockEc2(
+      new DescribeInstancesResult().withNextToken("page-2").withReservations(
+        new Reservation().withInstances(TestUtil.getMockInstance("running", "myOrg-east-1"))),
+      new DescribeInstancesResult().withReservations(
+        new Reservation().withInstances(TestUtil.getMockInstance("running", "myOrg-east-2"))));
+    final AmazonEC2Async west = mockEc2(
+      new DescribeInstancesResult().withReservations(
+        new Reservation().withInstances(TestUtil.getMockInstance("stopped", "myOrg-west-1"))));
+
+    final AmazonRDSAsync eastRds = mockRds(
+      new DescribeDBInstancesResult().withMarker("next").withDBInstances(
+        new DBInstance().withDBInstanceIdentifier("db-1").withDBInstanceStatus("available"),
+        new DBInstance().withDBInstanceIdentifier("db-2").withDBInstanceStatus("available")),
+      new DescribeDBInstancesResult().withDBInstances(
+        new DBInstance().withDBInstanceIdentifier("db-3").withDBInstanceStatus("stopped")));
+    final AmazonRDSAsync westRds = mockRds(new DescribeDBInstancesResult());
+
+    final List<InstanceData> list = new AsyncInstanceCollection(
+      new RegionClientFactory<AmazonEC2Async>() {
+        @Override
+        public AmazonEC2Async forRegion(Regions region) {
+          return region == Regions.US_EAST_1 ? east : west;
+        }
+      },
+      new RegionClientFactory<AmazonRDSAsync>() {
+        @Override
+        public AmazonRDSAsync forRegion(Regions region) {
+          return region == Regions.US_EAST_1 ? eastRds : westRds;
+        }
+      },
+      new CollectionSettings().withAccountId("123456789012")
+        .withRegions(Arrays.asList(Regions.US_EAST_1, Regions.US_WEST_1))).getObjList();
+
+    assertThat(list).hasSize(6);
+    assertThat(list.get(0).name).isEqualTo("myOrg-east-1");
+    assertThat(list.get(1).name).isEqualTo("myOrg-east-2");
+    assertThat(list.get(2).name).isEqualTo("myOrg-west-1");
+    assertThat(list.get(2).getRegion()).isEqualTo("us-west-1");
+    assertThat(list.get(3).name).isEqualTo("myOrg-db-1");
+    assertThat(list.get(4).name).isEqualTo("myOrg-db-2");
+    assertThat(list.get(5).name).isEqualTo("myOrg-db-3");
+    assertThat(list.get(5).isRunning()).isFalse();
+
+    verify(east, times(2)).describeInstancesAsync((DescribeInstancesRequest) anyObject(),
+      any(AsyncHandler.class));
+    verify(eastRds).describeDBInstancesAsync(
+      eq(new DescribeDBInstancesRequest().withMarker("next")),
+      any(AsyncHandler.class));
+    verify(eastRds).listTagsForResourceAsync(
+      eq(new ListTagsForResourceRequest()
+        .withResourceName("arn:aws:rds:us-east-1:123456789012:db:db-2")),
+      any(AsyncHandler.class));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void rateLimitedCallsShouldBeScheduledRatherThanSleptOnCallbackThreads() {
+
+    final List<String> callers = Collections.synchronizedList(new ArrayList<String>());
+    final DescribeInstancesResult[] pages = {
+      new DescribeInstancesResult().withNextToken("page-2"),
+      new DescribeInstancesResult().withNextToken("page-3"),
+      new DescribeInstancesResult()};
+    final AmazonEC2Async ec2 = mock(AmazonEC2Async.class);
+    when(ec2.describeInstancesAsync((DescribeInstancesRequest) anyObject(),
+      any(AsyncHandler.class))).thenAnswer(new Answer<Future<DescribeInstancesResult>>() {
+        private int page;
+
+        @Override
+        public Future<DescribeInstancesResult> answer(InvocationOnMock invocation) {
+          callers.add(Thread.currentThread().getName());
+          final AsyncHandler<DescribeInstancesRequest, DescribeInstancesResult> handler =
+            (AsyncHandler<DescribeInstancesRequest, DescribeInstancesResult>) invocation.getArguments()[1];
+          handler.onSuccess((DescribeInstancesRequest) invocation.getArguments()[0], pages[page++]);
+          return null;
+        }
+      });
+
+    new AsyncInstanceCollection(
+      new RegionClientFactory<AmazonEC2Async>() {
+        @Override
+        public AmazonEC2Async forRegion(Regions region) {
+          return ec2;
+        }
+      }, null,
+      new CollectionSettings().withRateLimiter(new RateLimiter(10, 0))
+        .withRegions(Arrays.asList(Regions.US_EAST_1)));
+
+    // the first call has a token, the follow-up pages have to wait for theirs
+    assertThat(callers).containsExactly(Thread.currentThread().getName(),
+      "async-rate-limit", "async-rate-limit");
+  }
+
+  @SuppressWarnings("unchecked")
+  private static AmazonEC2Async mockEc2(final DescribeInstancesResult... pages) {
+    final AmazonEC2Async ec2 = mock(AmazonEC2Async.class);
+    when(ec2.describeInstancesAsync((DescribeInstancesRequest) anyObject(),
+      any(AsyncHandler.class))).thenAnswer(new Answer<Future<DescribeInstancesResult>>() {
+        private int page;
+
+        @Override
+        public Future<DescribeInstancesResult> answer(InvocationOnMock invocation) {
+          final AsyncHandler<DescribeInstancesRequest, DescribeInstancesResult> handler =
+            (AsyncHandler<DescribeInstancesRequest, DescribeInstancesResult>) invocation.getArguments()[1];
+          handler.onSuccess((DescribeInstancesRequest) invocation.getArguments()[0], pages[page++]);
+          return null;
+        }
+      });
+    return ec2;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static AmazonRDSAsync mockRds(final DescribeDBInstancesResult... pages) {
+    final AmazonRDSAsync rds = mock(AmazonRDSAsync.class);
+    when(rds.describeDBInstancesAsync((DescribeDBInstancesRequest) anyObject(),
+      any(AsyncHandler.class))).thenAnswer(new Answer<Future<DescribeDBInstancesResult>>() {
+        private int page;
+
+        @Override
+        public Future<DescribeDBInstancesResult> answer(InvocationOnMock invocation) {
+          final AsyncHandler<DescribeDBInstancesRequest, DescribeDBInstancesResult> handler =
+            (AsyncHandler<DescribeDBInstancesRequest, DescribeDBInstancesResult>) invocation.getArguments()[1];
+          handler.onSuccess((DescribeDBInstancesRequest) invocation.getArguments()[0], pages[page++]);
+          return null;
+        }
+      });
+    when(rds.listTagsForResourceAsync((ListTagsForResourceRequest) anyObject(),
+      any(AsyncHandler.class))).thenAnswer(new Answer<Future<ListTagsForResourceResult>>() {
+        @Override
+        public Future<ListTagsForResourceResult> answer(InvocationOnMock invocation) {
+          final ListTagsForResourceRequest request = (ListTagsForResourceRequest) invocation.getArguments()[0];
+          final String arn = request.getResourceName();
+          final AsyncHandler<ListTagsForResourceRequest, ListTagsForResourceResult> handler =
+            (AsyncHandler<ListTagsForResourceRequest, ListTagsForResourceResult>) invocation.getArguments()[1];
+          handler.onSuccess(request, new ListTagsForResourceResult().withTagList(
+            new Tag().withKey("Name").withValue("myOrg-" + arn.substring(arn.lastIndexOf(':') + 1))));
+          return null;
+        }
+      });
+    return rds;
+  }
+}
@@ -0,0 +1,171 @@
+package org.vlad.awsresourcemonitor.test;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vlad.awsresourcemonitor.DeltaReport;
+import org.vlad.awsresourcemonitor.JaxbUtil;
+import org.vlad.awsresourcemonitor.PolicyReport;
+import org.vlad.awsresourcemonitor.ResultFingerprints;
+import org.vlad.awsresourcemonitor.ResultLog;
+import org.vlad.awsresourcemonitor.Schemas;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestDeltaReport {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void fingerprintsShouldSurviveSaveAndLoad() throws Exception {
+    ResultFingerprints set = new ResultFingerprints();
+    for (int i = 0; i < 1000; i++) {
+      set.add("web-" + i, "MissingTag", "message");
+    }
+    set.add("web-1", "MissingTag", "message");
+    assertThat(set.size()).isEqualTo(1000);
+
+    File state = new File(testFolder.getRoot(), "state/fingerprints");
+    set.save(state);
+    ResultFingerprints loaded = ResultFingerprints.load(state);
+
+    assertThat(loaded.size()).isEqualTo(1000);
+    int index = loaded.indexOf(
+      ResultFingerprints.fingerprint("web-999", "MissingTag", "message", null));
+    assertThat(loaded.getClassname(index)).isEqualTo("web-999");
+    assertThat(loaded.getName(index)).isEqualTo("MissingTag");
+    assertThat(loaded.getMessage(index)).isEqualTo("message");
+    assertThat(loaded.indexOf(
+      ResultFingerprints.fingerprint("web-999", "RunningTime", "message", null))).isEqualTo(-1);
+  }
+
+  @Test
+  public void missingStateShouldLoadEmpty() throws Exception {
+    assertThat(ResultFingerprints.load(new File(testFolder.getRoot(), "none")).size())
+      .isEqualTo(0);
+  }
+
+  @Test
+  public void deltaShouldSplitNewUnchangedAndResolved() throws Exception {
+    File state = new File(testFolder.getRoot(), "fingerprints");
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath());
+
+    ResultLog first = new ResultLog();
+    first.fail(ResultLog.Check.MISSING_TAG, "web-1", null, "Owner");
+    first.fail(ResultLog.Check.RUNNING_TIME, "web-2", null, null);
+    first.pass("web-3", null);
+    DeltaReport delta = report.writeDeltaReport(state, first);
+    assertThat(delta.getNewCount()).isEqualTo(2);
+    assertThat(delta.getUnchangedCount()).isEqualTo(0);
+    assertThat(delta.getResolvedCount()).isEqualTo(0);
+
+    ResultLog second = new ResultLog();
+    second.fail(ResultLog.Check.MISSING_TAG, "web-1", null, "Owner");
+    second.pass("web-2", null);
+    second.fail(ResultLog.Check.WRONG_REGION, "web-3", null, "[us-east-1]");
+    delta = report.writeDeltaReport(state, second);
+    assertThat(delta.getNewCount()).isEqualTo(1);
+    assertThat(delta.getUnchangedCount()).isEqualTo(1);
+    assertThat(delta.getResolvedCount()).isEqualTo(1);
+
+    String xml = FileUtils.readFileToString(report.getDeltaFile("xml"), "UTF-8");
+    assertThat(xml).contains("name=\"AwsResourcesDelta\" tests=\"3\" failures=\"1\"")
+      .contains("classname=\"web-3\" status=\"new\"")
+      .contains("classname=\"web-1\" status=\"unchanged\"")
+      .contains("classname=\"web-2\" status=\"resolved\"");
+    JaxbUtil.validate(report.getDeltaFile("xml"), Schemas.JUNIT_SCHEMA);
+
+    assertThat(FileUtils.readFileToString(report.getDeltaFile("json"), "UTF-8")).isEqualTo(
+      "{\"new\":1,\"unchanged\":1,\"resolved\":1,\n"
+        + "\"newFailures\":[\n"
+        + "  {\"classname\":\"web-3\",\"name\":\"WrongRegion\","
+        + "\"message\":\"Found instance outside of [us-east-1] region\"}\n],\n"
+        + "\"unchangedFailures\":[\n"
+        + "  {\"classname\":\"web-1\",\"name\":\"MissingTag\","
+        + "\"message\":\"Does not have required tag 'Owner'\"}\n],\n"
+        + "\"resolvedFailures\":[\n"
+        + "  {\"classname\":\"web-2\",\"name\":\"RunningTime\","
+        + "\"message\":\"has been running longer than the allowable time.\"}\n]}\n");
+  }
+
+  @Test
+  public void eachMissingTagShouldBeTrackedOnItsOwn() throws Exception {
+    File state = new File(testFolder.getRoot(), "fingerprints");
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath());
+
+    ResultLog first = new ResultLog();
+    first.fail(ResultLog.Check.MISSING_TAG, "web-1", null, "Owner");
+    first.fail(ResultLog.Check.MISSING_TAG, "web-1", null, "Project");
+    assertThat(report.writeDeltaReport(state, first).getNewCount()).isEqualTo(2);
+
+    ResultLog second = new ResultLog();
+    second.fail(ResultLog.Check.MISSING_TAG, "web-1", null, "Project");
+    DeltaReport delta = report.writeDeltaReport(state, second);
+    assertThat(delta.getNewCount()).isEqualTo(0);
+    assertThat(delta.getUnchangedCount()).isEqualTo(1);
+    assertThat(delta.getResolvedCount()).isEqualTo(1);
+    assertThat(FileUtils.readFileToString(report.getDeltaFile("json"), "UTF-8"))
+      .contains("\"resolvedFailures\":[\n  {\"classname\":\"web-1\",\"name\":\"MissingTag\","
+        + "\"message\":\"Does not have required tag 'Owner'\"}");
+
+    ResultLog third = new ResultLog();
+    third.fail(ResultLog.Check.MISSING_TAG, "web-1", null, "Owner");
+    delta = report.writeDeltaReport(state, third);
+    assertThat(delta.getNewCount()).isEqualTo(1);
+    assertThat(delta.getUnchangedCount()).isEqualTo(0);
+    assertThat(delta.getResolvedCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void sameNamedInstancesShouldBeTrackedPerRegion() throws Exception {
+    File state = new File(testFolder.getRoot(), "fingerprints");
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath());
+
+    ResultLog first = new ResultLog();
+    first.fail(ResultLog.Check.MISSING_TAG, "web-1", null, "us-east-1", "Owner");
+    first.fail(ResultLog.Check.MISSING_TAG, "web-1", null, "us-west-2", "Owner");
+    assertThat(report.writeDeltaReport(state, first).getNewCount()).isEqualTo(2);
+
+    ResultLog second = new ResultLog();
+    second.fail(ResultLog.Check.MISSING_TAG, "web-1", null, "us-west-2", "Owner");
+    second.add(PolicyReport.getCollectionTimeoutTestCase("us-west-2",
+      Collections.singletonList("EC2")), null, "us-west-2");
+    DeltaReport delta = report.writeDeltaReport(state, second);
+    assertThat(delta.getUnchangedCount()).isEqualTo(1);
+    assertThat(delta.getResolvedCount()).isEqualTo(1);
+    assertThat(delta.getCarriedCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void timedOutRegionShouldNotResolveFailures() throws Exception {
+    File state = new File(testFolder.getRoot(), "fingerprints");
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath());
+
+    ResultLog first = new ResultLog();
+    first.fail(ResultLog.Check.MISSING_TAG, "web-1", "1111", "us-east-1", "Owner");
+    first.fail(ResultLog.Check.MISSING_TAG, "web-2", "1111", "us-west-2", "Owner");
+    report.writeDeltaReport(state, first);
+
+    ResultLog second = new ResultLog();
+    second.add(PolicyReport.getCollectionTimeoutTestCase("1111/us-east-1",
+      Collections.singletonList("EC2")), "1111", "us-east-1");
+    DeltaReport delta = report.writeDeltaReport(state, second);
+    assertThat(delta.getNewCount()).isEqualTo(0);
+    assertThat(delta.getResolvedCount()).isEqualTo(1);
+    assertThat(delta.getCarriedCount()).isEqualTo(1);
+    assertThat(FileUtils.readFileToString(report.getDeltaFile("json"), "UTF-8"))
+      .contains("\"classname\":\"1111/web-2\"").doesNotContain("web-1");
+
+    // once the region is collected again the carried failure is still known
+    ResultLog third = new ResultLog();
+    third.fail(ResultLog.Check.MISSING_TAG, "web-1", "1111", "us-east-1", "Owner");
+    delta = report.writeDeltaReport(state, third);
+    assertThat(delta.getNewCount()).isEqualTo(0);
+    assertThat(delta.getUnchangedCount()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,57 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.services.ec2.model.Filter;
+import org.junit.Test;
+import org.vlad.awsresourcemonitor.CollectionSettings;
+import org.vlad.awsresourcemonitor.Ec2Filters;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestEc2Filters {
+
+  @Test
+  public void shouldTranslatePrefixPatternIntoWildcard() {
+    assertThat(Ec2Filters.toNameGlob("my.*")).isEqualTo("my*");
+    assertThat(Ec2Filters.toNameGlob("^myOrg-app1 Master$")).isEqualTo("myOrg-app1 Master");
+    assertThat(Ec2Filters.toNameGlob("myOrg-app.-web.*")).isEqualTo("myOrg-app?-web*");
+    assertThat(Ec2Filters.toNameGlob("build\\.server\\*")).isEqualTo("build.server\\*");
+  }
+
+  @Test
+  public void shouldUseLiteralPrefixWhenRestOfPatternCanNotBeTranslated() {
+    assertThat(Ec2Filters.toNameGlob("myOrg-app[12] .*")).isEqualTo("myOrg-app*");
+    assertThat(Ec2Filters.toNameGlob("myOrg-apps?")).isEqualTo("myOrg-app*");
+    assertThat(Ec2Filters.toNameGlob("web\\d+")).isEqualTo("web*");
+  }
+
+  @Test
+  public void shouldNotFilterWhenPatternCouldMatchUntaggedInstances() {
+    assertThat(Ec2Filters.toNameGlob(".*")).isNull();
+    assertThat(Ec2Filters.toNameGlob("i-.*")).isNull();
+    assertThat(Ec2Filters.toNameGlob("i.*")).isNull();
+    assertThat(Ec2Filters.toNameGlob("(?i)my.*")).isNull();
+    assertThat(Ec2Filters.toNameGlob("web|db")).isNull();
+  }
+
+  @Test
+  public void shouldAddStateFilterForRunningOnly() {
+    List<Filter> filters = Ec2Filters.build(new CollectionSettings()
+      .withNamePattern("myOrg.*").withRunningOnly(true));
+
+    assertThat(filters).containsExactly(
+      new Filter("tag:Name").withValues("myOrg*"),
+      new Filter("instance-state-name").withValues("running"));
+
+    assertThat(Ec2Filters.build(new CollectionSettings().withNamePattern(".*"))).isEmpty();
+  }
+}
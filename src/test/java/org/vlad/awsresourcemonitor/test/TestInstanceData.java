@@ -18,6 +18,7 @@ import org.joda.time.ReadablePeriod;
 import org.joda.time.Seconds;
 import org.junit.Test;
 import org.vlad.awsresourcemonitor.Policy;
+import org.vlad.awsresourcemonitor.TagViolation;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -252,4 +253,40 @@ public class TestInstanceData {
 
   }
 
+  @Test
+  public void ShouldRecordTagViolationsWithoutFormattingMessages() {
+
+    Instance inst = TestUtil.getMockInstance("running", "My EC2 Instance");
+    TestUtil.addInstanceTag(inst, "Color", "red");
+    TestUtil.addInstanceTag(inst, "Service", "bob");
+    TestUtil.addInstanceTag(inst, "Project", "Zebra");
+
+    InstanceData iData = new InstanceData(inst);
+
+    assertThat(iData.hasTagViolations()).isTrue();
+    assertThat(iData.getTagViolations()).hasSize(2);
+    assertThat(iData.getTagViolations().get(0).getKind()).isEqualTo(TagViolation.Kind.INVALID_KEY);
+    assertThat(iData.getTagViolations().get(0).getKey()).isEqualTo("Color");
+    assertThat(iData.getTagViolations().get(1).getKind()).isEqualTo(TagViolation.Kind.INVALID_VALUE);
+    assertThat(iData.getTagViolations().get(1).getKey()).isEqualTo("Service");
+    assertThat(iData.getTagViolations().get(1).getValue()).isEqualTo("bob");
+    assertThat(iData.project.getValue()).isEqualTo("Zebra");
+    assertThat(iData.service.getValue()).isNull();
+
+  }
+
+  @Test
+  public void ShouldHaveNoViolationsForCleanTags() {
+
+    Instance inst = TestUtil.getMockInstance("running", "My EC2 Instance");
+    TestUtil.addInstanceTag(inst, "Owner", "Vlad");
+
+    InstanceData iData = new InstanceData(inst);
+
+    assertThat(iData.hasTagViolations()).isFalse();
+    assertThat(iData.getTagViolations()).isEmpty();
+    assertThat(iData.getTagValueErrors()).isEmpty();
+
+  }
+
 }
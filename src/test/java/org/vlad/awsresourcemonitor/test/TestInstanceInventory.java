@@ -0,0 +1,116 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.services.ec2.model.Instance;
+import org.junit.Before;
+import org.junit.Test;
+import org.vlad.awsresourcemonitor.InstanceData;
+import org.vlad.awsresourcemonitor.InstanceInventory;
+import org.vlad.awsresourcemonitor.Policy;
+import org.vlad.awsresourcemonitor.TagDictionary;
+
+import java.io.FileNotFoundException;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestInstanceInventory {
+
+  private Policy policy;
+  private TagDictionary dictionary;
+  private InstanceInventory inventory;
+
+  @Before
+  public void setUp() throws URISyntaxException, FileNotFoundException, ParseException {
+    policy = Policy.compile(TestUtil.getTestResource("policy.yaml"));
+    dictionary = new TagDictionary();
+    inventory = new InstanceInventory(dictionary);
+  }
+
+  @Test
+  public void storedInstanceShouldReadBackUnchanged() {
+    InstanceData original = instance("myOrg-app1", "Zebra", "Bogus", 5);
+    original.setRegion("us-east-1");
+    inventory.add(original);
+
+    InstanceData copy = inventory.get(0);
+
+    assertThat(copy.name).isEqualTo("myOrg-app1");
+    assertThat(copy.isRunning()).isTrue();
+    assertThat(copy.getLaunchTime()).isEqualTo(original.getLaunchTime());
+    assertThat(copy.getRegion()).isEqualTo("us-east-1");
+    assertThat(copy.getAccount()).isNull();
+    assertThat(copy.project.getValue()).isEqualTo("Zebra");
+    assertThat(copy.lifecycle.getValue()).isNull();
+    assertThat(copy.getTagValueErrors()).isEqualTo(original.getTagValueErrors())
+      .containsExactly("Invalid Lifecycle tag value 'Bogus'");
+  }
+
+  @Test
+  public void repeatedValuesShouldBeStoredOnce() {
+    for (int i = 0; i < 100; i++) {
+      InstanceData data = instance("myOrg-app" + (i % 2), "Zebra", "OnDemand", 1);
+      data.setRegion("us-east-1");
+      inventory.add(data);
+    }
+
+    assertThat(inventory).hasSize(100);
+    assertThat(dictionary.size()).isEqualTo(5);
+    assertThat(inventory.get(99).name).isEqualTo("myOrg-app1");
+    assertThat(inventory.get(98).project.getValue())
+      .isSameAs(inventory.get(3).project.getValue());
+  }
+
+  @Test
+  public void setShouldReplaceRowAndKeepFollowingRows() {
+    inventory.add(instance("myOrg-a", "Zebra", "OnDemand", 1));
+    inventory.add(instance("myOrg-b", "Zebra", "Bogus", 1));
+    inventory.add(instance("myOrg-c", "Athena", "Bogus", 1));
+
+    InstanceData tagged = inventory.get(1);
+    tagged.setAccount("123456789012");
+    inventory.set(1, tagged);
+    inventory.set(0, instance("myOrg-a", "Zebra", "Bogus", 1));
+
+    assertThat(inventory.get(0).getTagValueErrors()).hasSize(1);
+    assertThat(inventory.get(1).getAccount()).isEqualTo("123456789012");
+    assertThat(inventory.get(1).getTagValueErrors()).hasSize(1);
+    assertThat(inventory.get(2).name).isEqualTo("myOrg-c");
+    assertThat(inventory.get(2).project.getValue()).isEqualTo("Athena");
+    assertThat(inventory.get(2).getTagValueErrors()).hasSize(1);
+  }
+
+  @Test
+  public void rowCursorShouldReadColumnsInPlace() {
+    InstanceData first = instance("myOrg-app1", "Zebra", "Bogus", 5);
+    first.setRegion("us-east-1");
+    inventory.add(first);
+    inventory.add(instance("myOrg-app2", "Athena", "OnDemand", 1));
+    inventory.setAccount("123456789012");
+
+    InstanceInventory.Row row = inventory.row();
+    assertThat(row.moveTo(0).getName()).isEqualTo("myOrg-app1");
+    assertThat(row.getRegion()).isEqualTo("us-east-1");
+    assertThat(row.getAccount()).isEqualTo("123456789012");
+    assertThat(row.isRunning()).isTrue();
+    assertThat(row.getLaunchMillis()).isEqualTo(first.getLaunchMillis());
+    assertThat(row.getTagValue(Policy.Slot.PROJECT)).isEqualTo("Zebra");
+    assertThat(row.getTagValue(Policy.Slot.LIFECYCLE)).isNull();
+    assertThat(row.hasTagViolations()).isTrue();
+    assertThat(row.getTagViolations().get(0).getMessage())
+      .isEqualTo("Invalid Lifecycle tag value 'Bogus'");
+
+    assertThat(row.moveTo(1).getName()).isEqualTo("myOrg-app2");
+    assertThat(row.getTagValue(Policy.Slot.LIFECYCLE)).isEqualTo("OnDemand");
+    assertThat(row.hasTagViolations()).isFalse();
+    assertThat(row.getTagViolations()).isEmpty();
+    assertThat(inventory.get(1).getAccount()).isEqualTo("123456789012");
+  }
+
+  private InstanceData instance(String name, String project, String lifecycle, int hours) {
+    Instance inst = TestUtil.getMockInstance("running", name, hours);
+    TestUtil.addInstanceTag(inst, "Project", project);
+    TestUtil.addInstanceTag(inst, "Lifecycle", lifecycle);
+    return new InstanceData(policy, inst);
+  }
+}
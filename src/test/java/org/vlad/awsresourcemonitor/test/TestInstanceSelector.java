@@ -0,0 +1,125 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.services.ec2.model.Instance;
+import org.junit.Before;
+import org.junit.Test;
+import org.vlad.awsresourcemonitor.AWSResourceMonitor;
+import org.vlad.awsresourcemonitor.InstanceData;
+import org.vlad.awsresourcemonitor.InstanceSelector;
+import org.vlad.awsresourcemonitor.PatternSet;
+import org.vlad.awsresourcemonitor.Policy;
+
+import java.io.FileNotFoundException;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestInstanceSelector {
+
+  private static final List<String> NONE = Collections.emptyList();
+
+  private Policy policy;
+
+  @Before
+  public void setUp() throws URISyntaxException, FileNotFoundException, ParseException {
+    policy = Policy.compile(TestUtil.getTestResource("policy.yaml"));
+  }
+
+  @Test
+  public void patternSetShouldMatchLiteralsPrefixesAndRegexes() {
+    PatternSet set = new PatternSet.Builder()
+      .add("myOrg-app1")
+      .add("^build.*")
+      .add("bu.*")
+      .add("db-[0-9]+")
+      .add("web|api")
+      .build();
+
+    assertThat(set.matches("myOrg-app1")).isTrue();
+    assertThat(set.matches("myOrg-app10")).isFalse();
+    assertThat(set.matches("build-agent")).isTrue();
+    assertThat(set.matches("bu")).isTrue();
+    assertThat(set.matches("b")).isFalse();
+    assertThat(set.matches("db-42")).isTrue();
+    assertThat(set.matches("db-x")).isFalse();
+    assertThat(set.matches("api")).isTrue();
+    assertThat(set.matches(null)).isFalse();
+    assertThat(new PatternSet.Builder().add(".*").build().matches("")).isTrue();
+  }
+
+  @Test
+  public void backreferencesShouldSurviveOtherRegexes() {
+    PatternSet set = new PatternSet.Builder()
+      .add("(y)\\1")
+      .add("a+b")
+      .add("(?<x>z)\\k<x>-[0-9]+")
+      .build();
+
+    assertThat(set.matches("yy")).isTrue();
+    assertThat(set.matches("aab")).isTrue();
+    assertThat(set.matches("zz-12")).isTrue();
+    assertThat(set.matches("yz")).isFalse();
+  }
+
+  @Test(expected = PatternSyntaxException.class)
+  public void invalidPatternShouldBeRejectedAtCompileTime() {
+    InstanceSelector.compile(".*", Arrays.asList("Project=Zeb(ra"), NONE);
+  }
+
+  @Test
+  public void shouldCombineNamePatternIncludesAndExcludes() {
+    InstanceSelector selector = InstanceSelector.compile("myOrg.*",
+      Arrays.asList("Project=Zebra", "myOrg-build.*"),
+      Arrays.asList("Environment=Prod"));
+
+    assertThat(selector.matches(instance("myOrg-app1", "Zebra", "Dev"))).isTrue();
+    assertThat(selector.matches(instance("myOrg-build-1", "Athena", "Dev"))).isTrue();
+    assertThat(selector.matches(instance("myOrg-app1", "Athena", "Dev"))).isFalse();
+    assertThat(selector.matches(instance("myOrg-app1", "Zebra", "Prod"))).isFalse();
+    assertThat(selector.matches(instance("other-app1", "Zebra", "Dev"))).isFalse();
+  }
+
+  @Test
+  public void negatedSelectorsShouldReadAsNoneOf() {
+    InstanceSelector selector = InstanceSelector.compile(null,
+      Arrays.asList("Environment!=Prod", "Env!=Stage"), NONE);
+
+    assertThat(selector.matches(instance("app", "Zebra", "Dev"))).isTrue();
+    assertThat(selector.matches(instance("app", "Zebra", null))).isTrue();
+    assertThat(selector.matches(instance("app", "Zebra", "Prod"))).isFalse();
+    assertThat(selector.matches(instance("app", "Zebra", "Stage"))).isFalse();
+  }
+
+  @Test
+  public void monitorShouldAssessOnlySelectedInstances() {
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.setPolicy(policy);
+    mon.setSelectors(Arrays.asList("Project=Zebra"), Arrays.asList("myOrg-skip"));
+
+    List<InstanceData> instList = new ArrayList<InstanceData>();
+    instList.add(instance("myOrg-app1", "Zebra", "Dev"));
+    instList.add(instance("myOrg-skip", "Zebra", "Dev"));
+    instList.add(instance("myOrg-app2", "Athena", "Dev"));
+
+    mon.initialize();
+    mon.assessInstances(instList);
+
+    assertThat(mon.getTestResults()).hasSize(1);
+    assertThat(mon.getTestResults().get(0).getClassname()).isEqualTo("myOrg-app1");
+  }
+
+  private InstanceData instance(String name, String project, String environment) {
+    Instance inst = TestUtil.getMockInstance("stopped", name);
+    TestUtil.addInstanceTag(inst, "Project", project);
+    if (environment != null) {
+      TestUtil.addInstanceTag(inst, "Environment", environment);
+    }
+    return new InstanceData(policy, inst);
+  }
+}
@@ -0,0 +1,87 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.jaxb.junit.Testcase;
+import com.jaxb.junit.Testsuites;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vlad.awsresourcemonitor.JaxbUtil;
+import org.vlad.awsresourcemonitor.PolicyReport;
+import org.vlad.awsresourcemonitor.Schemas;
+import org.vlad.awsresourcemonitor.exception.XmlException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestJaxbUtil {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void contextsAndSchemasShouldBeCached() throws Exception {
+    assertThat(JaxbUtil.getContext(Testsuites.class))
+      .isSameAs(JaxbUtil.getContext(Testsuites.class));
+    assertThat(JaxbUtil.getSchema(JaxbUtil.getDefaultClassLoader(), Schemas.JUNIT_SCHEMA))
+      .isSameAs(JaxbUtil.getSchema(JaxbUtil.getDefaultClassLoader(), Schemas.JUNIT_SCHEMA));
+  }
+
+  @Test
+  public void marshallerWithoutSchemaShouldSkipValidation() throws Exception {
+    assertThat(JaxbUtil.createMarshaller(JaxbUtil.getDefaultClassLoader(), null,
+      Testsuites.class).getSchema()).isNull();
+    assertThat(JaxbUtil.createMarshaller(Schemas.JUNIT_SCHEMA, Testsuites.class).getSchema())
+      .isNotNull();
+  }
+
+  @Test
+  public void backgroundValidationShouldAcceptValidReport() throws Exception {
+    List<Testcase> testCases = new ArrayList<Testcase>();
+    testCases.add(PolicyReport.getPassingTestCase("web-1", "RunningTime"));
+    testCases.add(PolicyReport.getFailingTestCase("db-1", "MissingTag", "no Owner"));
+
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath() + File.separator);
+    report.setValidation(PolicyReport.Validation.BACKGROUND);
+    report.writeJunitReport(1, testCases);
+    report.awaitValidation();
+    // nothing left to wait for
+    report.awaitValidation();
+  }
+
+  @Test
+  public void backgroundValidationShouldReportInvalidReport() throws Exception {
+    List<Testcase> testCases = new ArrayList<Testcase>();
+    // test case name is required by the schema
+    testCases.add(PolicyReport.getPassingTestCase("web-1", null));
+
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath() + File.separator);
+    report.setValidation(PolicyReport.Validation.BACKGROUND);
+    report.writeJunitReport(0, testCases);
+    assertThat(report.getJunitReportFile()).exists();
+    try {
+      report.awaitValidation();
+      fail("invalid report passed validation");
+    } catch (XmlException e) {
+      assertThat(e.getCause()).isNotNull();
+    }
+  }
+
+  @Test
+  public void inlineValidationShouldRejectInvalidReport() throws Exception {
+    List<Testcase> testCases = new ArrayList<Testcase>();
+    testCases.add(PolicyReport.getPassingTestCase("web-1", null));
+
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath() + File.separator);
+    report.setValidation(PolicyReport.Validation.INLINE);
+    try {
+      report.writeJunitReport(0, testCases);
+      fail("invalid report passed validation");
+    } catch (XmlException e) {
+      assertThat(e.getCause()).isNotNull();
+    }
+  }
+}
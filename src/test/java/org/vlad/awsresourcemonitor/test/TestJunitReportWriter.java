@@ -0,0 +1,64 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.jaxb.junit.Testcase;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vlad.awsresourcemonitor.JaxbUtil;
+import org.vlad.awsresourcemonitor.JunitReportWriter;
+import org.vlad.awsresourcemonitor.PolicyReport;
+import org.vlad.awsresourcemonitor.Schemas;
+
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestJunitReportWriter {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void streamedReportShouldMatchJaxbOutput() throws Exception {
+    List<Testcase> testCases = new ArrayList<Testcase>();
+    testCases.add(PolicyReport.getPassingTestCase("web & <api> \"1\"", "RunningTime"));
+    testCases.add(PolicyReport.getFailingTestCase("db-1", "MissingTag",
+      "Does not have required tag 'Owner' & <more>"));
+    Testcase timeout = PolicyReport.getCollectionTimeoutTestCase("us-east-1",
+      Arrays.asList("EC2", "RDS"));
+    timeout.getFailure().get(0).setType("timeout");
+    timeout.getSystemOut().add("partial");
+    testCases.add(timeout);
+
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath() + File.separator);
+    String jaxb = report.outputJunitReportFormat(2, testCases);
+    report.writeJunitReport(2, testCases);
+
+    assertThat(FileUtils.readFileToString(report.getJunitReportFile(), "UTF-8")).isEqualTo(jaxb);
+  }
+
+  @Test
+  public void countsShouldBePatchedInOnClose() throws Exception {
+    File file = testFolder.newFile("report.xml");
+
+    JunitReportWriter writer = new JunitReportWriter(file, "AwsResources");
+    for (int i = 0; i < 1000; i++) {
+      writer.write(i % 4 == 0
+        ? PolicyReport.getFailingTestCase("inst-" + i, "RunningTime", "too long")
+        : PolicyReport.getPassingTestCase("inst-" + i, "RunningTime"));
+    }
+    writer.close();
+
+    String xml = FileUtils.readFileToString(file, "UTF-8");
+    assertThat(xml).contains("<testsuite name=\"AwsResources\" tests=\"1000\" failures=\"250\"");
+    assertThat(xml).endsWith("    </testsuite>\n</testsuites>\n");
+
+    JaxbUtil.getSchema(JaxbUtil.getDefaultClassLoader(), Schemas.JUNIT_SCHEMA).newValidator()
+      .validate(new StreamSource(file));
+  }
+}
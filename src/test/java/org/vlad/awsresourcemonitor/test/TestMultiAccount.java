@@ -0,0 +1,126 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+import com.amazonaws.services.rds.AmazonRDS;
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DescribeDBInstancesRequest;
+import com.amazonaws.services.rds.model.DescribeDBInstancesResult;
+import com.amazonaws.services.rds.model.ListTagsForResourceRequest;
+import com.amazonaws.services.rds.model.ListTagsForResourceResult;
+import com.jaxb.junit.Testcase;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vlad.awsresourcemonitor.AWSResourceMonitor;
+import org.vlad.awsresourcemonitor.AccountSession;
+import org.vlad.awsresourcemonitor.exception.XmlException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestMultiAccount {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private String policyFile;
+
+  @Before
+  public void setUp() throws URISyntaxException {
+    policyFile = TestUtil.getTestResource("policy.yaml").getAbsolutePath();
+  }
+
+  @Test
+  public void shouldTakeAccountIdFromRoleArn() {
+    assertThat(AccountSession.accountOf("arn:aws:iam::123456789012:role/Monitor"))
+      .isEqualTo("123456789012");
+    assertThat(AccountSession.accountOf("arn:aws-us-gov:iam::210987654321:role/path/Monitor"))
+      .isEqualTo("210987654321");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectArnsOtherThanRoles() {
+    AccountSession.accountOf("arn:aws:iam::123456789012:user/Monitor");
+  }
+
+  @Test
+  public void shouldSweepEveryAccountAndTagResultsWithAccountId()
+    throws IOException, ParseException, XmlException {
+
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.setjUnitFormatReportPath(testFolder.getRoot().toPath().toString());
+    mon.setNamePattern("my.*");
+    mon.setAccountThreads(2);
+    mon.loadPolicy(policyFile);
+
+    final AmazonRDS firstRds = mockRds("db-1");
+    final AmazonRDS secondRds = mockRds();
+
+    mon.runAccounts(Arrays.asList(
+      mockAccount("111111111111", "myOrg-app1", firstRds),
+      mockAccount("222222222222", "myOrg-app1", secondRds)));
+
+    List<String> names = new ArrayList<String>();
+    for (Testcase testCase : mon.getTestResults()) {
+      if (!names.contains(testCase.getClassname())) {
+        names.add(testCase.getClassname());
+      }
+    }
+    assertThat(names).containsExactly(
+      "111111111111/myOrg-app1", "111111111111/myOrg-db-1", "222222222222/myOrg-app1");
+    verify(firstRds).listTagsForResource(new ListTagsForResourceRequest()
+      .withResourceName("arn:aws:rds:us-east-1:111111111111:db:db-1"));
+  }
+
+  private static AccountSession mockAccount(String accountId, String instanceName,
+                                            final AmazonRDS rds) {
+    final AmazonEC2 ec2 = mock(AmazonEC2.class);
+    final Instance instance = TestUtil.getMockInstance("terminated", instanceName);
+    when(ec2.describeInstances((DescribeInstancesRequest) anyObject()))
+      .thenReturn(new DescribeInstancesResult().withReservations(
+        new Reservation().withInstances(instance)))
+      .thenReturn(new DescribeInstancesResult());
+
+    return new AccountSession(accountId, null) {
+      @Override
+      public AmazonEC2 getEc2() {
+        return ec2;
+      }
+
+      @Override
+      public AmazonRDS getRds() {
+        return rds;
+      }
+    };
+  }
+
+  private static AmazonRDS mockRds(String... ids) {
+    AmazonRDS rds = mock(AmazonRDS.class);
+    List<DBInstance> instances = new ArrayList<DBInstance>();
+    for (String id : ids) {
+      instances.add(new DBInstance().withDBInstanceIdentifier(id).withDBInstanceStatus("stopped"));
+    }
+    when(rds.describeDBInstances((DescribeDBInstancesRequest) anyObject()))
+      .thenReturn(new DescribeDBInstancesResult().withDBInstances(instances))
+      .thenReturn(new DescribeDBInstancesResult());
+    when(rds.listTagsForResource((ListTagsForResourceRequest) anyObject()))
+      .thenReturn(new ListTagsForResourceResult().withTagList(
+        new com.amazonaws.services.rds.model.Tag().withKey("Name").withValue("myOrg-db-1")));
+    return rds;
+  }
+}
@@ -0,0 +1,106 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.jaxb.junit.Testcase;
+import org.junit.Before;
+import org.junit.Test;
+import org.vlad.awsresourcemonitor.AWSResourceMonitor;
+import org.vlad.awsresourcemonitor.InstanceData;
+import org.vlad.awsresourcemonitor.InstanceInventory;
+import org.vlad.awsresourcemonitor.ParallelAssessment;
+import org.vlad.awsresourcemonitor.Policy;
+import org.vlad.awsresourcemonitor.PolicyReport;
+import org.vlad.awsresourcemonitor.TagDictionary;
+
+import java.io.FileNotFoundException;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestParallelAssessment {
+
+  private Policy policy;
+  private List<InstanceData> instances;
+
+  @Before
+  public void setUp() throws URISyntaxException, FileNotFoundException, ParseException {
+    policy = Policy.compile(TestUtil.getTestResource("policy.yaml"));
+
+    instances = new ArrayList<InstanceData>();
+    for (int i = 0; i < 1000; i++) {
+      Instance inst = TestUtil.getMockInstance(i % 3 == 0 ? "stopped" : "running", "myOrg-" + i, i % 20);
+      TestUtil.addInstanceTag(inst, "Project", "Zebra");
+      if (i % 2 == 0) {
+        TestUtil.addInstanceTag(inst, "Lifecycle", "OnDemand");
+        TestUtil.addInstanceTag(inst, "Environment", "Dev");
+        TestUtil.addInstanceTag(inst, "Service", "VPN");
+        TestUtil.addInstanceTag(inst, "ChargeLine", "Cust1");
+        TestUtil.addInstanceTag(inst, "Owner", "Greg");
+      }
+      InstanceData data = new InstanceData(policy, inst);
+      data.setRegion("us-east-1");
+      instances.add(data);
+    }
+  }
+
+  @Test
+  public void parallelAssessmentShouldMatchSequentialOrderAndCounts() {
+    AWSResourceMonitor sequential = monitor();
+    sequential.assessInstances(instances);
+
+    AWSResourceMonitor parallel = monitor();
+    parallel.setAssessThreads(4);
+    parallel.assessInstances(instances);
+
+    AWSResourceMonitor smallChunks = monitor();
+    new ParallelAssessment(smallChunks, 3, 7).run(instances);
+
+    assertThat(parallel.numFailing).isEqualTo(sequential.numFailing).isGreaterThan(0);
+    assertThat(smallChunks.numFailing).isEqualTo(sequential.numFailing);
+    assertThat(describe(parallel.getTestResults()))
+      .isEqualTo(describe(sequential.getTestResults()));
+    assertThat(describe(smallChunks.getTestResults()))
+      .isEqualTo(describe(sequential.getTestResults()));
+  }
+
+  @Test
+  public void inventoryRowsShouldAssessLikeInstances() {
+    AWSResourceMonitor fromList = monitor();
+    fromList.assessInstances(instances);
+
+    InstanceInventory inventory = new InstanceInventory(new TagDictionary());
+    inventory.addAll(instances);
+    AWSResourceMonitor sequential = monitor();
+    sequential.assessInstances(inventory);
+    AWSResourceMonitor parallel = monitor();
+    parallel.setAssessThreads(4);
+    parallel.assessInstances(inventory);
+
+    assertThat(sequential.numFailing).isEqualTo(fromList.numFailing);
+    assertThat(parallel.numFailing).isEqualTo(fromList.numFailing);
+    assertThat(describe(sequential.getTestResults()))
+      .isEqualTo(describe(fromList.getTestResults()));
+    assertThat(describe(parallel.getTestResults()))
+      .isEqualTo(describe(fromList.getTestResults()));
+  }
+
+  private AWSResourceMonitor monitor() {
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.setPolicy(policy);
+    mon.setMaxAllowedHoursToRun("10");
+    mon.initialize();
+    return mon;
+  }
+
+  private static List<String> describe(List<Testcase> testCases) {
+    List<String> lines = new ArrayList<String>();
+    for (Testcase testCase : testCases) {
+      lines.add(testCase.getClassname() + " " + testCase.getName() + " " + testCase.getFailure().size()
+        + " " + PolicyReport.getMessage(testCase));
+    }
+    return lines;
+  }
+}
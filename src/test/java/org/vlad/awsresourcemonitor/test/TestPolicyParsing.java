@@ -8,8 +8,13 @@
 
 package org.vlad.awsresourcemonitor.test;
 
+import com.amazonaws.services.ec2.model.Instance;
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
+import org.vlad.awsresourcemonitor.InstanceData;
 import org.vlad.awsresourcemonitor.Policy;
+import org.vlad.awsresourcemonitor.RuntimeCutoffs;
+import org.vlad.awsresourcemonitor.RuntimeRule;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.File;
@@ -19,6 +24,7 @@ import java.net.URISyntaxException;
 import java.text.ParseException;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -67,5 +73,88 @@ public class TestPolicyParsing {
 
   }
 
+  @Test
+  public void compiledPoliciesShouldBeIndependentAndFrozen() throws URISyntaxException, FileNotFoundException, ParseException {
+
+    Policy main = Policy.compile(TestUtil.getTestResource("policy.yaml"));
+    Policy alt = Policy.compile(TestUtil.getTestResource("alt-policy.yaml"));
+
+    assertThat(main.slotOf("Environment")).isEqualTo(Policy.Slot.ENVIRONMENT);
+    assertThat(main.slotOf("Env")).isNull();
+    assertThat(alt.slotOf("Env")).isEqualTo(Policy.Slot.ENVIRONMENT);
+    assertThat(alt.slotOf("Environment")).isNull();
+    assertThat(main.slotOf("Puppet")).isEqualTo(Policy.Slot.OTHER);
+    assertThat(main.slotOf("Name")).isEqualTo(Policy.Slot.NAME);
+
+    assertThat(main.getAllowedValues(Policy.Slot.ENVIRONMENT)).contains("Prod");
+    assertThat(alt.getAllowedValues(Policy.Slot.ENVIRONMENT)).contains("prod");
+    assertThat(alt.getAllowedRegion()).containsOnly("us-east-1");
+    assertThat(alt.getOwners()).isNull();
+
+    try {
+      main.getAllowedTags().add("Anything");
+      throw new AssertionError("allowed tags must not be modifiable");
+    } catch (UnsupportedOperationException expected) {
+      assertThat(main.slotOf("Anything")).isNull();
+    }
+  }
+
+  @Test
+  public void instanceDataShouldUseThePolicyItIsGiven() throws URISyntaxException, FileNotFoundException, ParseException {
+
+    Policy main = Policy.compile(TestUtil.getTestResource("policy.yaml"));
+    Policy alt = Policy.compile(TestUtil.getTestResource("alt-policy.yaml"));
+
+    Instance inst = TestUtil.getMockInstance("running", "myOrg-app1");
+    TestUtil.addInstanceTag(inst, "Env", "prod");
+
+    InstanceData underAlt = new InstanceData(alt, inst);
+    InstanceData underMain = new InstanceData(main, inst);
+
+    assertThat(underAlt.environment.getValue()).isEqualTo("prod");
+    assertThat(underAlt.getTagValueErrors()).isEmpty();
+    assertThat(underMain.environment.getValue()).isNull();
+    assertThat(underMain.getTagValueErrors()).containsExactly("Invalid tag key 'Env'");
+  }
+
+  @Test
+  public void maxRuntimeRulesShouldResolveToCutoffs() throws URISyntaxException, FileNotFoundException, ParseException {
+
+    Policy pol = Policy.compile(TestUtil.getTestResource("runtime-policy.yaml"));
+    List<RuntimeRule> rules = pol.getRuntimeRules();
+
+    assertThat(rules).hasSize(3);
+    assertThat(rules.get(0).matches("OnDemand", "Dev")).isTrue();
+    assertThat(rules.get(0).matches("OnDemand", "Prod")).isFalse();
+    assertThat(rules.get(1).matches("POC", null)).isTrue();
+    assertThat(rules.get(2).getMaxMillis()).isEqualTo(RuntimeRule.UNLIMITED);
+    assertThat(Policy.compile(TestUtil.getTestResource("policy.yaml")).getRuntimeRules()).isEmpty();
+
+    long now = System.currentTimeMillis();
+    long tenHoursAgo = now - TimeUnit.HOURS.toMillis(10);
+    RuntimeCutoffs cutoffs = new RuntimeCutoffs(rules, TimeUnit.HOURS.toMillis(12), now);
+
+    assertThat(cutoffs.isOverdue("OnDemand", "Dev", tenHoursAgo)).isTrue();
+    assertThat(cutoffs.isOverdue("OnDemand", "Stage", tenHoursAgo)).isFalse();
+    assertThat(cutoffs.isOverdue("OnDemand", "Prod", 0)).isFalse();
+    assertThat(cutoffs.isOverdue("POC", "Dev", tenHoursAgo)).isFalse();
+    assertThat(cutoffs.isOverdue("Spot", "Stage", 0)).isFalse();
+    assertThat(cutoffs.isOverdue("OnDemand", "Stage", 0)).isTrue();
+    assertThat(cutoffs.isOverdue("OnDemand", "Dev", Long.MAX_VALUE)).isFalse();
+  }
 
+  @Test(expected = ParseException.class)
+  public void maxRuntimeRuleWithUnknownLifecycleShouldBeRejected() throws Exception {
+
+    File yamlFile = tempPolicy("MaxRuntime:\n  - Lifecycle: Forever\n    Hours: 1\n");
+    Policy.compile(yamlFile);
+  }
+
+  private static File tempPolicy(String maxRuntime) throws Exception {
+    File yamlFile = File.createTempFile("policy", ".yaml");
+    yamlFile.deleteOnExit();
+    String base = FileUtils.readFileToString(TestUtil.getTestResource("policy.yaml"));
+    FileUtils.writeStringToFile(yamlFile, base + "\n" + maxRuntime);
+    return yamlFile;
+  }
 }
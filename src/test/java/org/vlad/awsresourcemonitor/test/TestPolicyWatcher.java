@@ -0,0 +1,70 @@
+package org.vlad.awsresourcemonitor.test;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vlad.awsresourcemonitor.Policy;
+import org.vlad.awsresourcemonitor.PolicyWatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestPolicyWatcher {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  @Test
+  public void invalidChangeShouldKeepPreviousPolicy()
+    throws IOException, ParseException, URISyntaxException {
+
+    File policyFile = testFolder.newFile("policy.yaml");
+    FileUtils.copyFile(TestUtil.getTestResource("policy.yaml"), policyFile);
+
+    try (PolicyWatcher watcher = new PolicyWatcher(policyFile)) {
+      Policy snapshot = watcher.current();
+
+      FileUtils.writeStringToFile(policyFile, "Region:\n  - us-east-1\n");
+      assertThat(watcher.reload()).isFalse();
+      assertThat(watcher.current()).isSameAs(snapshot);
+      assertThat(watcher.getFailedReloadCount()).isGreaterThanOrEqualTo(1);
+
+      FileUtils.copyFile(TestUtil.getTestResource("alt-policy.yaml"), policyFile);
+      assertThat(watcher.reload()).isTrue();
+      assertThat(watcher.current()).isNotSameAs(snapshot);
+      assertThat(watcher.current().getAllowedRegion()).containsOnly("us-east-1");
+      assertThat(watcher.getReloadCount()).isGreaterThanOrEqualTo(1);
+
+      // evaluation holding the old snapshot is unaffected
+      assertThat(snapshot.getAllowedRegion()).contains("us-west-2");
+    }
+  }
+
+  @Test
+  public void changedFileShouldBeSwappedInByWatcherThread()
+    throws IOException, ParseException, URISyntaxException, InterruptedException {
+
+    File policyFile = testFolder.newFile("policy.yaml");
+    FileUtils.copyFile(TestUtil.getTestResource("policy.yaml"), policyFile);
+
+    try (PolicyWatcher watcher = new PolicyWatcher(policyFile)) {
+      Policy snapshot = watcher.current();
+
+      FileUtils.copyFile(TestUtil.getTestResource("alt-policy.yaml"), policyFile);
+
+      long deadline = System.currentTimeMillis() + 20000;
+      while (watcher.current() == snapshot && System.currentTimeMillis() < deadline) {
+        Thread.sleep(50);
+      }
+
+      assertThat(watcher.current()).isNotSameAs(snapshot);
+      assertThat(watcher.current().getOwners()).isNull();
+      assertThat(watcher.getSummary()).isNotEmpty();
+    }
+  }
+}
@@ -1,18 +1,38 @@
 package org.vlad.awsresourcemonitor.test;
 
 
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
 import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.rds.AmazonRDS;
+import com.amazonaws.services.rds.model.DBInstance;
+import com.amazonaws.services.rds.model.DescribeDBInstancesRequest;
+import com.amazonaws.services.rds.model.DescribeDBInstancesResult;
+import com.amazonaws.services.rds.model.ListTagsForResourceRequest;
+import com.amazonaws.services.rds.model.ListTagsForResourceResult;
+import com.amazonaws.services.rds.model.Tag;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.vlad.awsresourcemonitor.CollectionSettings;
 import org.vlad.awsresourcemonitor.InstanceData;
 import org.vlad.awsresourcemonitor.Policy;
+import org.vlad.awsresourcemonitor.RDSInstanceCollection;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.net.URISyntaxException;
 import java.text.ParseException;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class TestRDSData {
 
@@ -34,4 +54,59 @@ public class TestRDSData {
     assertThat(iData.isRunning()).isTrue();
 
   }
+
+  @Test
+  public void ShouldFetchTagsForEveryDatabaseBeforeBuildingInstanceData() {
+
+    final AmazonRDS rds = mock(AmazonRDS.class);
+    final Region[] current = new Region[1];
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        current[0] = (Region) invocation.getArguments()[0];
+        return null;
+      }
+    }).when(rds).setRegion((Region) anyObject());
+
+    final DescribeDBInstancesResult east = new DescribeDBInstancesResult().withDBInstances(
+      new DBInstance().withDBInstanceIdentifier("db-1").withDBInstanceStatus("available"),
+      new DBInstance().withDBInstanceIdentifier("db-2").withDBInstanceStatus("available"),
+      new DBInstance().withDBInstanceIdentifier("db-3").withDBInstanceStatus("stopped"));
+
+    when(rds.describeDBInstances((DescribeDBInstancesRequest) anyObject())).thenAnswer(
+      new Answer<DescribeDBInstancesResult>() {
+        @Override
+        public DescribeDBInstancesResult answer(InvocationOnMock invocation) {
+          if (current[0] == Region.getRegion(Regions.US_EAST_1)) {
+            return east;
+          }
+          return new DescribeDBInstancesResult();
+        }
+      });
+
+    when(rds.listTagsForResource((ListTagsForResourceRequest) anyObject())).thenAnswer(
+      new Answer<ListTagsForResourceResult>() {
+        @Override
+        public ListTagsForResourceResult answer(InvocationOnMock invocation) {
+          String arn = ((ListTagsForResourceRequest) invocation.getArguments()[0]).getResourceName();
+          String id = arn.substring(arn.lastIndexOf(':') + 1);
+          return new ListTagsForResourceResult().withTagList(
+            new Tag().withKey("Name").withValue("myOrg-" + id),
+            new Tag().withKey("Service").withValue("Build"));
+        }
+      });
+
+    List<InstanceData> list = new RDSInstanceCollection(rds,
+      new CollectionSettings().withAccountId("123456789012").withTagThreads(3), null).getObjList();
+
+    assertThat(list).hasSize(3);
+    assertThat(list.get(0).name).isEqualTo("myOrg-db-1");
+    assertThat(list.get(1).name).isEqualTo("myOrg-db-2");
+    assertThat(list.get(2).name).isEqualTo("myOrg-db-3");
+    assertThat(list.get(1).service.getValue()).isEqualTo("Build");
+    assertThat(list.get(2).isRunning()).isFalse();
+    verify(rds, times(3)).listTagsForResource((ListTagsForResourceRequest) anyObject());
+    verify(rds).listTagsForResource(new ListTagsForResourceRequest()
+      .withResourceName("arn:aws:rds:us-east-1:123456789012:db:db-2"));
+  }
 }
@@ -0,0 +1,132 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.regions.Regions;
+import org.junit.Test;
+import org.vlad.awsresourcemonitor.CollectionDeadline;
+import org.vlad.awsresourcemonitor.RateLimiter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestRateLimiter {
+
+  private static AmazonServiceException throttling() {
+    AmazonServiceException exc = new AmazonServiceException("Rate exceeded");
+    exc.setErrorCode("RequestLimitExceeded");
+    exc.setStatusCode(503);
+    return exc;
+  }
+
+  private static Callable<String> failFirst(final int failures) {
+    return new Callable<String>() {
+      private int calls;
+
+      @Override
+      public String call() {
+        if (calls++ < failures) {
+          throw throttling();
+        }
+        return "ok";
+      }
+    };
+  }
+
+  @Test
+  public void shouldRetryThrottledCallAndLowerTheRate() {
+    RateLimiter limiter = new RateLimiter(1000, 3);
+
+    String res = limiter.call(Regions.US_EAST_1, "DescribeInstances", failFirst(2));
+
+    assertThat(res).isEqualTo("ok");
+    assertThat(limiter.getRate(Regions.US_EAST_1, "DescribeInstances")).isLessThan(300);
+    assertThat(limiter.getRate(Regions.US_WEST_2, "DescribeInstances")).isEqualTo(1000);
+    assertThat(limiter.getSummary()).contains(
+      "RateLimit us-east-1 DescribeInstances: calls=3 throttled=2 rate=262.50/s lowest=250.00/s");
+  }
+
+  @Test
+  public void shouldRaiseRateBackOnSuccess() {
+    RateLimiter limiter = new RateLimiter(1000, 3);
+    limiter.call(Regions.US_EAST_1, "DescribeInstances", failFirst(1));
+    double lowered = limiter.getRate(Regions.US_EAST_1, "DescribeInstances");
+
+    for (int i = 0; i < 20; i++) {
+      limiter.call(Regions.US_EAST_1, "DescribeInstances", failFirst(0));
+    }
+
+    assertThat(limiter.getRate(Regions.US_EAST_1, "DescribeInstances")).isGreaterThan(lowered);
+  }
+
+  @Test
+  public void shouldGiveUpAfterMaxRetries() {
+    RateLimiter limiter = new RateLimiter(1000, 1);
+    try {
+      limiter.call(Regions.US_EAST_1, "ListTagsForResource", failFirst(5));
+      fail("Expected throttling exception");
+    } catch (AmazonServiceException e) {
+      assertThat(e.getErrorCode()).isEqualTo("RequestLimitExceeded");
+    }
+  }
+
+  @Test
+  public void shouldNotRetryOtherErrors() {
+    RateLimiter limiter = new RateLimiter(1000, 3);
+    final int[] calls = new int[1];
+    try {
+      limiter.call(Regions.US_EAST_1, "DescribeDBInstances", new Callable<String>() {
+        @Override
+        public String call() {
+          calls[0]++;
+          throw new AmazonServiceException("Denied");
+        }
+      });
+      fail("Expected exception");
+    } catch (AmazonServiceException e) {
+      assertThat(calls[0]).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void shouldSpaceCallsAccordingToRate() {
+    RateLimiter limiter = new RateLimiter(20, 0);
+    long start = System.nanoTime();
+    for (int i = 0; i < 5; i++) {
+      limiter.call(Regions.US_EAST_1, "DescribeInstances", failFirst(0));
+    }
+    long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+    // first call uses the initial token, four more at 20/s take ~200ms
+    assertThat(elapsedMs).isGreaterThanOrEqualTo(150);
+  }
+
+  @Test
+  public void shouldNotWaitPastRegionEnd() {
+    RateLimiter limiter = new RateLimiter(0.5, 0);
+    limiter.call(Regions.US_EAST_1, "ListTagsForResource", failFirst(0));
+
+    long start = System.nanoTime();
+    long end = start + TimeUnit.MILLISECONDS.toNanos(200);
+    try {
+      limiter.call(Regions.US_EAST_1, "ListTagsForResource", end, failFirst(0));
+      fail("Expected timeout");
+    } catch (RuntimeException e) {
+      assertThat(CollectionDeadline.isTimeout(e)).isTrue();
+    }
+    // next token is two seconds away, the call gives up at once instead of sleeping
+    assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(1000));
+    assertThat(limiter.getSummary()).contains(
+      "RateLimit us-east-1 ListTagsForResource: calls=1 throttled=0 rate=0.50/s lowest=0.50/s");
+  }
+}
@@ -0,0 +1,58 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.ec2.AmazonEC2;
+import org.junit.Test;
+import org.vlad.awsresourcemonitor.AccountSession;
+import org.vlad.awsresourcemonitor.RegionClientCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class TestRegionClientCache {
+
+  @Test
+  public void clientsShouldBeCreatedOncePerRegionAndShutDownOnClose() {
+    final List<AmazonEC2> created = new ArrayList<AmazonEC2>();
+    RegionClientCache<AmazonEC2> cache = new RegionClientCache<AmazonEC2>() {
+      @Override
+      protected AmazonEC2 create(Regions region) {
+        AmazonEC2 client = mock(AmazonEC2.class);
+        created.add(client);
+        return client;
+      }
+
+      @Override
+      protected void shutdown(AmazonEC2 client) {
+        client.shutdown();
+      }
+    };
+
+    AmazonEC2 east = cache.forRegion(Regions.US_EAST_1);
+    assertThat(cache.forRegion(Regions.US_EAST_1)).isSameAs(east);
+    cache.forRegion(Regions.US_WEST_2);
+    assertThat(created).hasSize(2);
+
+    cache.close();
+    for (AmazonEC2 client : created) {
+      verify(client).shutdown();
+    }
+    assertThat(cache.forRegion(Regions.US_EAST_1)).isNotSameAs(east);
+  }
+
+  @Test
+  public void sessionShouldReuseClientsUntilClosed() {
+    AccountSession session = new AccountSession("123456789012", null);
+    AmazonEC2 ec2 = session.getEc2();
+    assertThat(session.getEc2()).isSameAs(ec2);
+    assertThat(session.getEc2Clients()).isSameAs(session.getEc2Clients());
+
+    session.close();
+    assertThat(session.getEc2()).isNotSameAs(ec2);
+    session.close();
+  }
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ * Copyright 2017 Vlad Korolev
+ * This source code is licensed under the MIT license found in the
+ * LICENSE file in the root directory of this source tree.
+ *
+ **/
+
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.regions.Region;
+import com.amazonaws.regions.Regions;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.DescribeRegionsRequest;
+import com.amazonaws.services.ec2.model.DescribeRegionsResult;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vlad.awsresourcemonitor.CollectionSettings;
+import org.vlad.awsresourcemonitor.Ec2InstanceCollection;
+import org.vlad.awsresourcemonitor.RegionDiscovery;
+
+import java.io.File;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestRegionDiscovery {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private AmazonEC2 ec2;
+
+  @Before
+  public void setUp() {
+    ec2 = mock(AmazonEC2.class);
+    when(ec2.describeRegions((DescribeRegionsRequest) anyObject())).thenReturn(
+      new DescribeRegionsResult().withRegions(
+        new com.amazonaws.services.ec2.model.Region().withRegionName("eu-west-1"),
+        new com.amazonaws.services.ec2.model.Region().withRegionName("us-east-1"),
+        new com.amazonaws.services.ec2.model.Region().withRegionName("xx-future-1")));
+  }
+
+  @Test
+  public void shouldReturnOnlyEnabledRegionsKnownToSdk() {
+    List<Regions> regions = new RegionDiscovery(ec2, null, 1000).getRegions();
+
+    assertThat(regions).containsExactly(Regions.US_EAST_1, Regions.EU_WEST_1);
+  }
+
+  @Test
+  public void shouldReuseCachedRegionsUntilTtlExpires() {
+    File cache = new File(testFolder.getRoot(), "regions");
+
+    new RegionDiscovery(ec2, cache, 60000).getRegions();
+    List<Regions> cached = new RegionDiscovery(ec2, cache, 60000).getRegions();
+
+    assertThat(cached).containsExactly(Regions.US_EAST_1, Regions.EU_WEST_1);
+    verify(ec2, times(1)).describeRegions((DescribeRegionsRequest) anyObject());
+
+    assertThat(cache.setLastModified(System.currentTimeMillis() - 120000)).isTrue();
+    new RegionDiscovery(ec2, cache, 60000).getRegions();
+
+    verify(ec2, times(2)).describeRegions((DescribeRegionsRequest) anyObject());
+  }
+
+  @Test
+  public void collectorShouldOnlyVisitDiscoveredRegions() {
+    AmazonEC2 client = mock(AmazonEC2.class);
+    when(client.describeInstances((DescribeInstancesRequest) anyObject()))
+      .thenReturn(new DescribeInstancesResult());
+
+    List<Regions> regions = new RegionDiscovery(ec2, null, 1000).getRegions();
+    new Ec2InstanceCollection(client, new CollectionSettings().withRegions(regions), null);
+
+    verify(client, times(2)).describeInstances((DescribeInstancesRequest) anyObject());
+    verify(client).setRegion(Region.getRegion(Regions.EU_WEST_1));
+  }
+}
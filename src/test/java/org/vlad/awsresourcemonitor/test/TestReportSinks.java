@@ -0,0 +1,90 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.jaxb.junit.Testcase;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vlad.awsresourcemonitor.PolicyReport;
+import org.vlad.awsresourcemonitor.ReportFormat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestReportSinks {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private List<Testcase> getTestCases() {
+    List<Testcase> testCases = new ArrayList<Testcase>();
+    testCases.add(PolicyReport.getPassingTestCase("web-1", "RunningTime"));
+    testCases.add(PolicyReport.getFailingTestCase("db-1", "MissingTag",
+      "Does not have required tag 'Owner', \"quoted\""));
+    testCases.add(PolicyReport.getFailingTestCase("web-2", "MissingTag", "line\nbreak"));
+    return testCases;
+  }
+
+  private PolicyReport writeReport(List<ReportFormat> formats) throws Exception {
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath() + File.separator);
+    report.setFormats(formats);
+    report.writeJunitReport(2, getTestCases());
+    return report;
+  }
+
+  @Test
+  public void jsonLinesShouldHoldOneObjectPerTestCase() throws Exception {
+    PolicyReport report = writeReport(Arrays.asList(ReportFormat.JSONL));
+
+    assertThat(FileUtils.readLines(report.getReportFile("jsonl"), "UTF-8")).containsExactly(
+      "{\"classname\":\"web-1\",\"name\":\"RunningTime\",\"status\":\"passed\",\"message\":null}",
+      "{\"classname\":\"db-1\",\"name\":\"MissingTag\",\"status\":\"failed\","
+        + "\"message\":\"Does not have required tag 'Owner', \\\"quoted\\\"\"}",
+      "{\"classname\":\"web-2\",\"name\":\"MissingTag\",\"status\":\"failed\","
+        + "\"message\":\"line\\nbreak\"}");
+  }
+
+  @Test
+  public void csvShouldQuoteOnlyWhenNeeded() throws Exception {
+    PolicyReport report = writeReport(Arrays.asList(ReportFormat.CSV));
+
+    assertThat(FileUtils.readFileToString(report.getReportFile("csv"), "UTF-8")).isEqualTo(
+      "classname,name,status,message\r\n"
+        + "web-1,RunningTime,passed,\r\n"
+        + "db-1,MissingTag,failed,\"Does not have required tag 'Owner', \"\"quoted\"\"\"\r\n"
+        + "web-2,MissingTag,failed,\"line\nbreak\"\r\n");
+  }
+
+  @Test
+  public void prometheusShouldCountByCheckAndOutcome() throws Exception {
+    PolicyReport report = writeReport(Arrays.asList(ReportFormat.PROMETHEUS));
+
+    assertThat(FileUtils.readLines(report.getReportFile("prom"), "UTF-8"))
+      .contains("awsmon_report_tests 3", "awsmon_report_failures 2",
+        "awsmon_checks{check=\"MissingTag\",status=\"failed\"} 2",
+        "awsmon_checks{check=\"RunningTime\",status=\"passed\"} 1");
+  }
+
+  @Test
+  public void allFormatsShouldBeWrittenAlongsideJunit() throws Exception {
+    PolicyReport report = writeReport(Arrays.asList(ReportFormat.values()));
+
+    assertThat(report.getJunitReportFile()).exists();
+    for (ReportFormat format : ReportFormat.values()) {
+      assertThat(report.getReportFile(format.getExtension())).exists();
+    }
+    assertThat(FileUtils.readFileToString(report.getJunitReportFile(), "UTF-8"))
+      .contains("tests=\"3\" failures=\"2\"");
+  }
+
+  @Test
+  public void formatsShouldBeFoundByNameOrExtension() {
+    assertThat(ReportFormat.forName("prometheus")).isEqualTo(ReportFormat.PROMETHEUS);
+    assertThat(ReportFormat.forName("prom")).isEqualTo(ReportFormat.PROMETHEUS);
+    assertThat(ReportFormat.forName("JSONL")).isEqualTo(ReportFormat.JSONL);
+  }
+}
@@ -0,0 +1,112 @@
+package org.vlad.awsresourcemonitor.test;
+
+import com.amazonaws.services.ec2.model.Instance;
+import com.jaxb.junit.Testcase;
+import org.junit.Assume;
+import org.junit.Test;
+import org.vlad.awsresourcemonitor.AWSResourceMonitor;
+import org.vlad.awsresourcemonitor.InstanceData;
+import org.vlad.awsresourcemonitor.Policy;
+import org.vlad.awsresourcemonitor.PolicyReport;
+import org.vlad.awsresourcemonitor.ResultLog;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestResultLog {
+
+  @Test
+  public void messagesShouldBeRenderedWhenRead() throws Exception {
+    Policy policy = Policy.compile(TestUtil.getTestResource("policy.yaml"));
+    ResultLog log = new ResultLog(1);
+
+    log.pass("myOrg-app1", null);
+    log.fail(ResultLog.Check.MISSING_TAG, "myOrg-app2", "123456789012", "Owner");
+    log.fail(ResultLog.Check.WRONG_REGION, "myOrg-app3", null, policy.getAllowedRegion());
+    log.add(PolicyReport.getFailingTestCase("us-east-1", "CollectionTimeout", "late"));
+
+    assertThat(log).hasSize(4);
+    assertThat(log.getFailing()).isEqualTo(3);
+
+    assertThat(log.get(0).getClassname()).isEqualTo("myOrg-app1");
+    assertThat(log.get(0).getFailure()).isEmpty();
+    assertThat(log.get(1).getClassname()).isEqualTo("123456789012/myOrg-app2");
+    assertThat(log.get(1).getName()).isEqualTo("MissingTag");
+    assertThat(log.get(1).getFailure().get(0).getMessage())
+      .isEqualTo("Does not have required tag 'Owner'");
+    assertThat(log.get(2).getFailure().get(0).getMessage())
+      .isEqualTo("Found instance outside of " + policy.getAllowedRegion() + " region");
+    assertThat(log.get(3).getName()).isEqualTo("CollectionTimeout");
+
+    ResultLog joined = new ResultLog(1);
+    joined.append(log);
+    joined.append(log);
+    assertThat(joined).hasSize(8);
+    assertThat(joined.getFailing()).isEqualTo(6);
+    assertThat(joined.get(5).getClassname()).isEqualTo("123456789012/myOrg-app2");
+
+    ResultLog range = new ResultLog(1);
+    range.append(log, 1, 3);
+    range.append(log, 0, 1);
+    assertThat(range).hasSize(3);
+    assertThat(range.getFailing()).isEqualTo(2);
+    assertThat(range.get(0).getName()).isEqualTo("MissingTag");
+    assertThat(range.get(2).getClassname()).isEqualTo("myOrg-app1");
+  }
+
+  @Test
+  public void passingInstancesShouldNotAllocate() throws Exception {
+    Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    Policy policy = Policy.compile(TestUtil.getTestResource("policy.yaml"));
+    AWSResourceMonitor mon = new AWSResourceMonitor();
+    mon.setPolicy(policy);
+    mon.setMaxAllowedHoursToRun("10");
+    mon.initialize();
+
+    List<InstanceData> instances = new ArrayList<InstanceData>();
+    for (int i = 0; i < 1000; i++) {
+      Instance inst = TestUtil.getMockInstance("running", "myOrg-" + i, 1);
+      TestUtil.addInstanceTag(inst, "Lifecycle", "OnDemand");
+      TestUtil.addInstanceTag(inst, "Environment", "Dev");
+      TestUtil.addInstanceTag(inst, "Project", "Zebra");
+      TestUtil.addInstanceTag(inst, "Service", "VPN");
+      TestUtil.addInstanceTag(inst, "ChargeLine", "Cust1");
+      TestUtil.addInstanceTag(inst, "Owner", "Greg");
+      InstanceData data = new InstanceData(policy, inst);
+      data.setRegion("us-east-1");
+      instances.add(data);
+    }
+
+    // warm up so the measured loop runs compiled code
+    for (int round = 0; round < 20; round++) {
+      ResultLog warmup = new ResultLog(instances.size());
+      for (int i = 0; i < instances.size(); i++) {
+        mon.evaluate(instances.get(i), warmup);
+      }
+    }
+
+    ResultLog log = new ResultLog(instances.size());
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < instances.size(); i++) {
+      mon.evaluate(instances.get(i), log);
+    }
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+    assertThat(log.getFailing()).isEqualTo(0);
+    assertThat(log).hasSize(1000);
+    // allow for the measurement itself, far below one byte per instance
+    assertThat(allocated).isLessThan(instances.size());
+
+    Testcase first = log.get(0);
+    assertThat(first.getClassname()).isEqualTo("myOrg-0");
+  }
+}
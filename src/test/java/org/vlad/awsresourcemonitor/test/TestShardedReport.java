@@ -0,0 +1,113 @@
+package org.vlad.awsresourcemonitor.test;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vlad.awsresourcemonitor.PolicyReport;
+import org.vlad.awsresourcemonitor.ResultLog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestShardedReport {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private ResultLog getResults() {
+    ResultLog log = new ResultLog();
+    log.pass("web-1", "111", "us-east-1");
+    log.fail(ResultLog.Check.MISSING_TAG, "web-2", "111", "us-west-2", "Owner");
+    log.pass("web-3", "222", "us-east-1");
+    log.fail(ResultLog.Check.RUNNING_TIME, "web-4", "222", "us-east-1", null);
+    log.add(PolicyReport.getCollectionTimeoutTestCase("222/us-west-2",
+      Arrays.asList("EC2")), "222", "us-west-2");
+    return log;
+  }
+
+  private static String gunzip(File file) throws Exception {
+    try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+      return IOUtils.toString(in, "UTF-8");
+    }
+  }
+
+  @Test
+  public void reportPathWithoutSeparatorShouldWriteIntoDirectory() {
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath());
+    assertThat(report.getJunitReportFile().getParentFile()).isEqualTo(testFolder.getRoot());
+  }
+
+  @Test
+  public void regionShardsShouldBeCompressedAndIndexed() throws Exception {
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath());
+    report.setSharding(false, true);
+    report.setCompress(true);
+    report.setValidation(PolicyReport.Validation.INLINE);
+    report.writeJunitReport(3, getResults());
+
+    File east = new File(testFolder.getRoot(), "AWSResourceMonitorReport-us-east-1.xml.gz");
+    File west = new File(testFolder.getRoot(), "AWSResourceMonitorReport-us-west-2.xml.gz");
+    assertThat(gunzip(east)).contains("tests=\"3\" failures=\"1\"")
+      .contains("classname=\"222/web-4\"").doesNotContain("web-2");
+    assertThat(gunzip(west)).contains("tests=\"2\" failures=\"2\"");
+    assertThat(report.getJunitReportFile()).doesNotExist();
+
+    assertThat(FileUtils.readFileToString(report.getIndexFile(), "UTF-8")).isEqualTo(
+      "{\"suite\":\"AwsResources\",\"tests\":5,\"failures\":3,\"shards\":[\n"
+        + "    {\"file\":\"AWSResourceMonitorReport-us-east-1.xml.gz\",\"account\":null,"
+        + "\"region\":\"us-east-1\",\"tests\":3,\"failures\":1},\n"
+        + "    {\"file\":\"AWSResourceMonitorReport-us-west-2.xml.gz\",\"account\":null,"
+        + "\"region\":\"us-west-2\",\"tests\":2,\"failures\":2}\n"
+        + "]}\n");
+  }
+
+  @Test
+  public void accountAndRegionShardsShouldMatchUnshardedTestCases() throws Exception {
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath());
+    report.setSharding(true, true);
+    report.setValidation(PolicyReport.Validation.INLINE);
+    report.writeJunitReport(3, getResults());
+
+    assertThat(testFolder.getRoot().list()).containsOnly(
+      "AWSResourceMonitorReport-111-us-east-1.xml",
+      "AWSResourceMonitorReport-111-us-west-2.xml",
+      "AWSResourceMonitorReport-222-us-east-1.xml",
+      "AWSResourceMonitorReport-222-us-west-2.xml",
+      "AWSResourceMonitorReport-index.json");
+    assertThat(FileUtils.readFileToString(
+      new File(testFolder.getRoot(), "AWSResourceMonitorReport-222-us-west-2.xml"), "UTF-8"))
+      .contains("tests=\"1\" failures=\"1\"").contains("CollectionTimeout");
+  }
+
+  @Test
+  public void compressedReportWithoutShardsShouldBeOneFile() throws Exception {
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath());
+    report.setCompress(true);
+    report.writeJunitReport(3, getResults());
+
+    assertThat(gunzip(new File(testFolder.getRoot(), "AWSResourceMonitorReport.xml.gz")))
+      .contains("tests=\"5\" failures=\"3\"");
+  }
+
+  @Test
+  public void emptyRunShouldStillWriteReport() throws Exception {
+    PolicyReport report = new PolicyReport(testFolder.getRoot().getPath());
+    report.setSharding(true, true);
+    report.setCompress(true);
+    report.setValidation(PolicyReport.Validation.INLINE);
+    report.writeJunitReport(0, new ResultLog());
+
+    assertThat(gunzip(new File(testFolder.getRoot(), "AWSResourceMonitorReport.xml.gz")))
+      .contains("tests=\"0\" failures=\"0\"");
+    assertThat(FileUtils.readFileToString(report.getIndexFile(), "UTF-8"))
+      .contains("{\"file\":\"AWSResourceMonitorReport.xml.gz\",\"account\":null,"
+        + "\"region\":null,\"tests\":0,\"failures\":0}");
+  }
+}